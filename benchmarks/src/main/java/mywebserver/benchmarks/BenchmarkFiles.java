@@ -0,0 +1,72 @@
+package mywebserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The Class BenchmarkFiles creates the server directory used by the benchmarks, with a small,
+ * a medium and a large HTML file. The small file has the size of the files in www/, the medium
+ * one is served from the file content cache, and the large one is sent with transferTo.
+ */
+public final class BenchmarkFiles {
+
+	//Server directory of the benchmarks, relative to the working directory like www/
+	public static final String SERVER_DIRECTORY = "target/benchmark-www";
+
+	//Paragraph the files are filled with
+	private static final String PARAGRAPH = "<p>Lorem ipsum dolor sit amet, commodo nunc sit arcu fusce, "
+			+ "praesent feugiat at lacus magna pede neque, purus magna magna viverra convallis neque.</p>\n";
+
+	/**
+	 * Instantiates a new BenchmarkFiles. Only the static methods are used.
+	 */
+	private BenchmarkFiles() {
+	}
+
+	/**
+	 * Creates the server directory with the benchmark files, if it does not exist yet.
+	 *
+	 * @return the server directory
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static String create() throws IOException {
+		Path directory = Paths.get(SERVER_DIRECTORY);
+		Files.createDirectories(directory);
+		createFile(directory.resolve("small.html"), 1 << 10);
+		createFile(directory.resolve("medium.html"), 32 << 10);
+		createFile(directory.resolve("large.html"), 1 << 20);
+		return SERVER_DIRECTORY;
+	}
+
+	/**
+	 * Gets the URL path of the file of the given size.
+	 *
+	 * @param fileSize small, medium or large
+	 * @return the URL path
+	 */
+	public static String path(String fileSize) {
+		return "/"+fileSize+".html";
+	}
+
+	/**
+	 * Creates an HTML file of about the given size.
+	 *
+	 * @param file the file
+	 * @param size the size in bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void createFile(Path file, int size) throws IOException {
+		if(Files.exists(file))
+			return;
+		StringBuilder content = new StringBuilder("<html>\n<title>Benchmark</title>\n<body>\n");
+		while(content.length()<size-16){
+			content.append(PARAGRAPH);
+		}
+		content.setLength(size-16);
+		content.append("\n</body></html>\n");
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,64 @@
+package mywebserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mywebserver.HttpRequest;
+import mywebserver.HttpRequestParser;
+
+/**
+ * The Class HttpRequestBenchmark measures the request side: formatting and validating the
+ * request on the Client, and parsing the received bytes on the server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpRequestBenchmark {
+
+	//Request as created by the Client
+	private HttpRequest request;
+
+	//Bytes of the request as received by the server
+	private byte[] requestBytes;
+
+	/**
+	 * Creates the request.
+	 */
+	@Setup
+	public void setUp() {
+		request = new HttpRequest("GET /subDir/subSubDir/SampleHTMLFile3.html HTTP/1.1",
+				"localhost/127.0.0.1:9008", "{\"KEY\":\"VALUE\"}", true);
+		requestBytes = request.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String requestToString() {
+		return request.toString();
+	}
+
+	@Benchmark
+	public boolean validateClientRequest() {
+		return request.validateClientRequest();
+	}
+
+	@Benchmark
+	public HttpRequest parseRequest() throws IOException {
+		return new HttpRequestParser().parse(ByteBuffer.wrap(requestBytes));
+	}
+}
@@ -0,0 +1,90 @@
+package mywebserver.benchmarks;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mywebserver.HttpResponse;
+import mywebserver.MultithreadedServer;
+
+/**
+ * The Class RequestProcessingBenchmark measures the request processing of the server, from the
+ * received request to the HTTP response object, and its parts: validating the request, looking
+ * up the file content and creating the response header fields.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestProcessingBenchmark {
+
+	//Size of the requested file
+	@Param({"small", "medium", "large"})
+	public String fileSize;
+
+	//Server processing the requests
+	private MultithreadedServer server;
+
+	//URL path of the requested file
+	private String filePath;
+
+	//Request as received from the Client
+	private String request;
+
+	//Length of the requested file
+	private long contentLength;
+
+	/**
+	 * Creates the benchmark files and the server.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		server = new MultithreadedServer(BenchmarkFiles.create());
+		filePath = BenchmarkFiles.path(fileSize);
+		request = "GET "+filePath+" HTTP/1.1\r\nHost: localhost\r\nAccept: text/html\r\n"
+				+ "Accept-Language: en\r\nConnection: Keep-Alive\r\n\r\n";
+		contentLength = server.getFileContent(filePath).length;
+	}
+
+	@Benchmark
+	public HttpResponse processRequest() throws IOException {
+		return server.processRequest(request);
+	}
+
+	@Benchmark
+	public boolean validateRequest() {
+		return server.validateRequest(request);
+	}
+
+	@Benchmark
+	public byte[] getFileContent() throws IOException {
+		return server.getFileContent(filePath);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dmywebserver.fileCache.maxBytes=0")
+	public byte[] getFileContentUncached() throws IOException {
+		return server.getFileContent(filePath);
+	}
+
+	@Benchmark
+	public Map<String, String> createResponseHeaderFields() {
+		return server.createResponseHeaderFields(contentLength);
+	}
+}
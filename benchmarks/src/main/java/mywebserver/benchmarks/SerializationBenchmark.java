@@ -0,0 +1,73 @@
+package mywebserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mywebserver.HttpResponse;
+import mywebserver.MultithreadedServer;
+
+/**
+ * The Class SerializationBenchmark measures turning an HTTP response into the format it is sent
+ * in: the String format of toString(), and the byte format of the response header and body.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+	//Size of the requested file
+	@Param({"small", "medium", "large"})
+	public String fileSize;
+
+	//Response to the request of the file
+	private HttpResponse response;
+
+	//Buffer the response is written to
+	private ByteBuffer buffer;
+
+	/**
+	 * Creates the benchmark files and the response.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		MultithreadedServer server = new MultithreadedServer(BenchmarkFiles.create());
+		response = server.processRequest("GET "+BenchmarkFiles.path(fileSize)+" HTTP/1.1\r\n"
+				+ "Host: localhost\r\n\r\n");
+		buffer = ByteBuffer.allocate(response.getHeaderLength() + (int) response.getBody().getContentLength());
+	}
+
+	@Benchmark
+	public String responseToString() {
+		return response.toString();
+	}
+
+	@Benchmark
+	public byte[] responseHeaderBytes() {
+		return response.getHeaderBytes();
+	}
+
+	@Benchmark
+	public ByteBuffer responseWriteTo() throws IOException {
+		buffer.clear();
+		response.writeTo(buffer);
+		return buffer;
+	}
+}
@@ -0,0 +1,542 @@
+package mywebserver;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Class AccessLog writes a line for each answered request to a log file, without making the
+ * connection threads wait for the file or for each other. A connection thread copies the fields
+ * of the request and the response into a record of a ring buffer of preallocated records, which
+ * it claims with a compare-and-set instead of a lock. A single writer thread formats the records
+ * in batches and writes each batch to the file at once.
+ *
+ * When the ring buffer is full, new records are dropped and counted, or the connection thread
+ * waits for a free record if the log is configured to block. The file is rotated when it reaches
+ * its maximum size: access.log is renamed to access.log.1, access.log.1 to access.log.2 and so on,
+ * and the oldest file is deleted.
+ *
+ * The line format is a pattern in the style of the Apache HTTP Server, eg. the common log format
+ * %h - - %t "%r" %s %b, with these directives:
+ * %h remote address, %t time of the request, %r request line, %m method, %U URL, %H protocol,
+ * %s status code, %b body bytes ("-" if unknown), %D processing time in microseconds,
+ * %{Name}i value of the request header Name, and %% for a percent sign.
+ * The values sent by the Client are escaped as Apache does, so they cannot forge other fields.
+ */
+public class AccessLog implements Runnable{
+
+	//Common log format
+	public static final String COMMON_FORMAT = "%h - - %t \"%r\" %s %b";
+
+	//Combined log format, the common one with the referring page and the user agent
+	public static final String COMBINED_FORMAT = COMMON_FORMAT+" \"%{Referer}i\" \"%{User-Agent}i\"";
+
+	//Most records formatted into one write
+	private static final int MAX_BATCH_SIZE = 512;
+
+	//Time the writer waits when there is no record, and a blocked connection thread waits for a free record
+	private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	//Formatter of the %t time, used only by the writer thread
+	private static final DateTimeFormatter TIME_FORMAT =
+			DateTimeFormatter.ofPattern("'['dd/MMM/yyyy:HH:mm:ss Z']'", Locale.US).withZone(ZoneId.systemDefault());
+
+	//Literal text and directives of the line format, a directive is a Character, or an Integer for a header
+	private final List<Object> formatItems = new ArrayList<Object>();
+
+	//Request headers written by the line format
+	private final List<String> headerNames = new ArrayList<String>();
+
+	//Records of the ring buffer
+	private final Record[] ring;
+
+	//Mask of the index of a sequence number in the ring buffer
+	private final int mask;
+
+	//Sequence number of the next record to be claimed by a connection thread
+	private final AtomicLong nextClaim = new AtomicLong();
+
+	//Sequence number of the next record to be written, used only by the writer thread
+	private long nextWrite = 0;
+
+	//Check if a connection thread waits for a free record instead of dropping its record
+	private final boolean blockWhenFull;
+
+	//Log file, or null if the lines are written to the standard output
+	private final Path file;
+
+	//Size at which the log file is rotated, 0 if it is not rotated
+	private final long maxFileBytes;
+
+	//Number of rotated files which are kept
+	private final int maxFiles;
+
+	//Stream the lines are written to
+	private OutputStream out;
+
+	//Size of the log file
+	private long fileBytes;
+
+	//Writer thread
+	private Thread writerThread = null;
+
+	//Check if the log has to stop
+	private volatile boolean stopped = false;
+
+	//Time of the last formatted %t, and its text
+	private long formattedSecond = Long.MIN_VALUE;
+	private String formattedTime = null;
+
+	//Counters of the log
+	private final LongAdder droppedCount = new LongAdder();
+	private volatile long writtenCount = 0;
+	private volatile long rotationCount = 0;
+
+	/**
+	 * Instantiates a new AccessLog.
+	 *
+	 * @param fileName the name of the log file, or - for the standard output
+	 * @param format the line format, or common or combined
+	 * @param bufferSize the number of records of the ring buffer, rounded up to a power of two
+	 * @param blockWhenFull true, if a connection thread waits for a free record when the ring buffer is full
+	 * @param maxFileBytes the size at which the log file is rotated, 0 if it is not rotated
+	 * @param maxFiles the number of rotated files which are kept
+	 * @throws IOException Signals that an I/O exception has occurred, eg. if the log file cannot be opened.
+	 */
+	public AccessLog(String fileName, String format, int bufferSize, boolean blockWhenFull,
+			long maxFileBytes, int maxFiles) throws IOException{
+		if(format.equals("common"))
+			format = COMMON_FORMAT;
+		else if(format.equals("combined"))
+			format = COMBINED_FORMAT;
+		parseFormat(format);
+
+		int capacity = Integer.highestOneBit(Math.max(2, Math.min(bufferSize, 1 << 30)) * 2 - 1);
+		this.ring = new Record[capacity];
+		for(int i=0; i<capacity; i++){
+			ring[i] = new Record(i, headerNames.size());
+		}
+		this.mask = capacity - 1;
+		this.blockWhenFull = blockWhenFull;
+		this.maxFiles = Math.max(0, maxFiles);
+		if(fileName.equals("-")){
+			this.file = null;
+			this.maxFileBytes = 0;
+			this.out = System.out;
+		}
+		else{
+			this.file = Paths.get(fileName);
+			this.maxFileBytes = Math.max(0, maxFileBytes);
+			this.fileBytes = Files.exists(file) ? Files.size(file) : 0;
+			this.out = new FileOutputStream(file.toFile(), true);
+		}
+	}
+
+	/**
+	 * Splits the line format into its literal text and its directives.
+	 *
+	 * @param format the line format
+	 */
+	private void parseFormat(String format){
+		StringBuilder literal = new StringBuilder();
+		for(int i=0; i<format.length(); i++){
+			char c = format.charAt(i);
+			if(c!='%' || i==format.length()-1){
+				literal.append(c);
+				continue;
+			}
+			char directive = format.charAt(++i);
+			if(directive=='%'){
+				literal.append('%');
+				continue;
+			}
+			if(literal.length()>0){
+				formatItems.add(literal.toString());
+				literal.setLength(0);
+			}
+			if(directive=='{'){
+				int end = format.indexOf("}i", i);
+				if(end<0)
+					throw new IllegalArgumentException("Unterminated header directive in the access log format "+format);
+				formatItems.add(Integer.valueOf(headerNames.size()));
+				headerNames.add(format.substring(i+1, end));
+				i = end+1;
+			}
+			else if("htrmUHsbD".indexOf(directive)>=0)
+				formatItems.add(Character.valueOf(directive));
+			else
+				throw new IllegalArgumentException("Unknown directive %"+directive+" in the access log format "+format);
+		}
+		if(literal.length()>0)
+			formatItems.add(literal.toString());
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	public void start(){
+		writerThread = new Thread(this, "access-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops the writer thread after it wrote the records logged so far, and closes the log file.
+	 */
+	public void stop(){
+		stopped = true;
+		if(writerThread==null)
+			return;
+		LockSupport.unpark(writerThread);
+		try{
+			writerThread.join(TimeUnit.SECONDS.toMillis(1));
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Logs an answered request.
+	 *
+	 * @param remoteAddress the address of the Client
+	 * @param request the request, or null if it could not be parsed
+	 * @param response the response
+	 * @param startTime the System.nanoTime() the processing of the request started at
+	 */
+	public void log(SocketAddress remoteAddress, HttpRequest request, HttpResponse response, long startTime){
+		Record record = claim();
+		if(record==null){
+			droppedCount.increment();
+			return;
+		}
+		record.time = System.currentTimeMillis();
+		record.duration = System.nanoTime() - startTime;
+		record.remoteAddress = remoteAddress;
+		RequestLine requestLine = request!=null ? request.getRequestLine() : null;
+		record.method = requestLine!=null ? requestLine.getHttpMethod() : null;
+		record.url = requestLine!=null ? requestLine.getURL() : null;
+		record.protocol = requestLine!=null ? requestLine.getHttpProtocol() : null;
+		for(int i=0; i<record.headerValues.length; i++){
+			record.headerValues[i] = request!=null ? request.getHeader(headerNames.get(i)) : null;
+		}
+		record.status = response.getResponseLine().getStatus().getCode();
+		record.bodyBytes = response.getBody().getContentLength();
+
+		//Hand the record to the writer
+		record.sequence = record.claimedSequence + 1;
+	}
+
+	/**
+	 * Claims the next free record of the ring buffer.
+	 *
+	 * @return the record, or null if the ring buffer is full and records are dropped
+	 */
+	private Record claim(){
+		while(true){
+			long sequence = nextClaim.get();
+			Record record = ring[(int) sequence & mask];
+
+			//A record is free for the sequence number once the writer wrote its previous lap
+			long lag = record.sequence - sequence;
+			if(lag==0){
+				if(nextClaim.compareAndSet(sequence, sequence + 1)){
+					record.claimedSequence = sequence;
+					return record;
+				}
+			}
+			else if(lag<0){
+				if(!blockWhenFull || stopped)
+					return null;
+				LockSupport.parkNanos(FULL_WAIT_NANOS);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+		StringBuilder batch = new StringBuilder(MAX_BATCH_SIZE * 128);
+		try{
+			while(true){
+				int count = formatBatch(batch);
+				if(count>0){
+					writeBatch(batch);
+					writtenCount += count;
+					batch.setLength(0);
+				}
+				else if(stopped)
+					break;
+				else
+					LockSupport.parkNanos(IDLE_WAIT_NANOS);
+			}
+		}
+		finally{
+			try{
+				if(file!=null)
+					out.close();
+				else
+					out.flush();
+			}
+			catch(IOException e){
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Formats the records handed to the writer, and frees them for the connection threads.
+	 *
+	 * @param batch the text the lines are appended to
+	 * @return the number of records formatted
+	 */
+	private int formatBatch(StringBuilder batch){
+		int count = 0;
+		while(count<MAX_BATCH_SIZE){
+			Record record = ring[(int) nextWrite & mask];
+			if(record.sequence!=nextWrite + 1)
+				break;
+			formatRecord(record, batch);
+			record.remoteAddress = null;
+			for(int i=0; i<record.headerValues.length; i++){
+				record.headerValues[i] = null;
+			}
+			record.sequence = nextWrite + ring.length;
+			nextWrite++;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Formats a record as a line of the log.
+	 *
+	 * @param record the record
+	 * @param line the text the line is appended to
+	 */
+	private void formatRecord(Record record, StringBuilder line){
+		for(Object item: formatItems){
+			if(item instanceof String){
+				line.append((String) item);
+				continue;
+			}
+			if(item instanceof Integer){
+				appendValue(line, record.headerValues[((Integer) item).intValue()]);
+				continue;
+			}
+			switch(((Character) item).charValue()){
+			case 'h':
+				if(record.remoteAddress instanceof InetSocketAddress)
+					line.append(((InetSocketAddress) record.remoteAddress).getAddress().getHostAddress());
+				else
+					appendValue(line, record.remoteAddress!=null ? record.remoteAddress.toString() : null);
+				break;
+			case 't':
+				line.append(formatTime(record.time));
+				break;
+			case 'r':
+				if(record.method==null)
+					line.append('-');
+				else
+					appendEscaped(appendEscaped(appendEscaped(line, record.method).append(' '), record.url).append(' '), record.protocol);
+				break;
+			case 'm':
+				appendValue(line, record.method);
+				break;
+			case 'U':
+				appendValue(line, record.url);
+				break;
+			case 'H':
+				appendValue(line, record.protocol);
+				break;
+			case 's':
+				line.append(record.status);
+				break;
+			case 'b':
+				if(record.bodyBytes<0)
+					line.append('-');
+				else
+					line.append(record.bodyBytes);
+				break;
+			case 'D':
+				line.append(TimeUnit.NANOSECONDS.toMicros(record.duration));
+				break;
+			default:
+				break;
+			}
+		}
+		line.append('\n');
+	}
+
+	/**
+	 * Appends a value of a line, or - if there is none. The value is escaped, as it comes from
+	 * the Client.
+	 *
+	 * @param line the line
+	 * @param value the value
+	 */
+	private static void appendValue(StringBuilder line, String value){
+		if(value!=null && value.length()>0)
+			appendEscaped(line, value);
+		else
+			line.append('-');
+	}
+
+	/**
+	 * Appends a value sent by the Client in the way of Apache: " and \ are escaped with a
+	 * backslash, and control characters are written as \xhh, so a value cannot end a quoted field
+	 * or the line, and forge the fields after it.
+	 *
+	 * @param line the line
+	 * @param value the value
+	 * @return the line
+	 */
+	private static StringBuilder appendEscaped(StringBuilder line, String value){
+		for(int i=0; i<value.length(); i++){
+			char c = value.charAt(i);
+			if(c=='"' || c=='\\')
+				line.append('\\').append(c);
+			else if(c<0x20 || c==0x7f)
+				line.append("\\x").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+			else
+				line.append(c);
+		}
+		return line;
+	}
+
+	/**
+	 * Formats the time of a record, at most once per second.
+	 *
+	 * @param time the milliseconds since the epoch
+	 * @return the time in the format [10/Oct/2000:13:55:36 -0700]
+	 */
+	private String formatTime(long time){
+		long second = time / 1000;
+		if(second!=formattedSecond){
+			formattedTime = TIME_FORMAT.format(Instant.ofEpochMilli(time));
+			formattedSecond = second;
+		}
+		return formattedTime;
+	}
+
+	/**
+	 * Writes a batch of lines to the log, after rotating the log file if it would grow beyond its maximum size.
+	 *
+	 * @param batch the lines
+	 */
+	private void writeBatch(StringBuilder batch){
+		byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+		try{
+			if(maxFileBytes>0 && fileBytes>0 && fileBytes + bytes.length>maxFileBytes)
+				rotate();
+			out.write(bytes);
+			out.flush();
+			fileBytes += bytes.length;
+		}
+		catch(IOException e){
+			System.out.println("The access log cannot be written: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Renames the log file to the first rotated file, shifts the rotated files, and opens a new log file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void rotate() throws IOException{
+		out.close();
+		for(int i=maxFiles-1; i>=1; i--){
+			Path rotatedFile = Paths.get(file+"."+i);
+			if(Files.exists(rotatedFile))
+				Files.move(rotatedFile, Paths.get(file+"."+(i+1)), StandardCopyOption.REPLACE_EXISTING);
+		}
+		if(maxFiles>0)
+			Files.move(file, Paths.get(file+".1"), StandardCopyOption.REPLACE_EXISTING);
+		else
+			Files.delete(file);
+		out = new FileOutputStream(file.toFile(), false);
+		fileBytes = 0;
+		rotationCount++;
+	}
+
+	/**
+	 * Gets the number of records dropped because the ring buffer was full.
+	 *
+	 * @return the dropped count
+	 */
+	public long getDroppedCount(){
+		return droppedCount.sum();
+	}
+
+	/**
+	 * Gets the number of lines written.
+	 *
+	 * @return the written count
+	 */
+	public long getWrittenCount(){
+		return writtenCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return "Access log: "+getWrittenCount()+" lines written, "+getDroppedCount()+" dropped, "
+				+rotationCount+" rotations, "+ring.length+" records buffered at most";
+	}
+
+	/**
+	 * The Class Record holds the fields of one line of the log. Its sequence number tells whose
+	 * turn it is: it is free for the connection thread claiming sequence number n while it is n,
+	 * and it is ready for the writer once it is n+1.
+	 */
+	private static class Record{
+
+		//Sequence number telling whether the record is free or ready to be written
+		volatile long sequence;
+
+		//Sequence number the record was claimed with
+		long claimedSequence;
+
+		//Fields of the line
+		long time;
+		long duration;
+		SocketAddress remoteAddress;
+		String method;
+		String url;
+		String protocol;
+		final String[] headerValues;
+		int status;
+		long bodyBytes;
+
+		/**
+		 * Instantiates a new record.
+		 *
+		 * @param sequence the sequence number it is first claimed with
+		 * @param headerCount the number of request headers written by the line format
+		 */
+		Record(long sequence, int headerCount){
+			this.sequence = sequence;
+			this.headerValues = new String[headerCount];
+		}
+	}
+}
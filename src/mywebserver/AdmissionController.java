@@ -0,0 +1,146 @@
+package mywebserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class AdmissionController decides whether the server takes on more work, in the way of the
+ * CoDel (controlled delay) queue management algorithm. It watches how long the tasks waited in
+ * the queue of the thread pool before a thread took them. A short burst which fills the queue
+ * drains quickly and is left alone; but when even the shortest wait stays above the target delay
+ * for a whole interval, the queue is standing and only adds latency. The server is then
+ * overloaded: new work is shed, first once per interval, and more often the longer the overload
+ * lasts, by the inverse square root of the number of shed tasks. Shedding stops as soon as a
+ * task waited less than the target delay, or the queue is empty.
+ */
+public class AdmissionController {
+
+	//Wait in the queue which is acceptable, in nanoseconds
+	private final long targetDelay;
+
+	//Time the wait has to stay above the target delay before work is shed, in nanoseconds
+	private final long interval;
+
+	//Time at which the wait has been above the target delay for an interval, 0 if it is below
+	private long firstAboveTime = 0;
+
+	//Check if work is shed
+	private boolean shedding = false;
+
+	//Time at which the next task is shed
+	private long nextShedTime = 0;
+
+	//Number of tasks shed since the overload started
+	private int shedCount = 0;
+
+	//Counters of the admission decisions
+	private final LongAdder admittedCount = new LongAdder();
+	private final LongAdder delayShedCount = new LongAdder();
+	private final LongAdder queueFullShedCount = new LongAdder();
+	private volatile long maxDelay = 0;
+
+	/**
+	 * Instantiates a new AdmissionController.
+	 *
+	 * @param targetDelayMillis the wait in the queue which is acceptable, 0 if work is only shed when the queue is full
+	 * @param intervalMillis the time the wait has to stay above the target delay before work is shed
+	 */
+	public AdmissionController(long targetDelayMillis, long intervalMillis){
+		this.targetDelay = TimeUnit.MILLISECONDS.toNanos(targetDelayMillis);
+		this.interval = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+	}
+
+	/**
+	 * Decides whether a new task is taken on.
+	 *
+	 * @param queueLength the number of tasks waiting in the queue
+	 * @return true, if the task is taken on; false, if it is shed
+	 */
+	public synchronized boolean admit(int queueLength){
+		if(queueLength==0){
+			//The queue drained, so there is no standing queue any more
+			firstAboveTime = 0;
+			shedding = false;
+		}
+		long now = System.nanoTime();
+		if(shedding && now - nextShedTime>=0){
+			shedCount++;
+			nextShedTime = now + controlLaw(shedCount);
+			delayShedCount.increment();
+			return false;
+		}
+		admittedCount.increment();
+		return true;
+	}
+
+	/**
+	 * Records how long a task waited in the queue, when a thread takes it.
+	 *
+	 * @param delay the wait in nanoseconds
+	 */
+	public synchronized void dequeued(long delay){
+		if(delay>maxDelay)
+			maxDelay = delay;
+		if(targetDelay<=0)
+			return;
+		long now = System.nanoTime();
+		if(delay<targetDelay){
+			firstAboveTime = 0;
+			shedding = false;
+			return;
+		}
+		if(firstAboveTime==0){
+			firstAboveTime = now + interval;
+			return;
+		}
+		if(!shedding && now - firstAboveTime>=0){
+			//The wait stayed above the target for an interval: shed the next task right away
+			shedding = true;
+			shedCount = 0;
+			nextShedTime = now;
+		}
+	}
+
+	/**
+	 * Counts a task which was shed because the queue was full.
+	 */
+	public void queueFull(){
+		queueFullShedCount.increment();
+	}
+
+	/**
+	 * Gets the time until the next task is shed.
+	 *
+	 * @param count the number of tasks shed since the overload started
+	 * @return the time in nanoseconds
+	 */
+	private long controlLaw(int count){
+		return (long) (interval / Math.sqrt(count));
+	}
+
+	/**
+	 * Checks if work is shed.
+	 *
+	 * @return true, if the server is overloaded
+	 */
+	public synchronized boolean isShedding(){
+		return shedding;
+	}
+
+	/**
+	 * Gets the number of tasks shed, because of their wait or because the queue was full.
+	 *
+	 * @return the shed count
+	 */
+	public long getShedCount(){
+		return delayShedCount.sum() + queueFullShedCount.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return "Admission control: "+admittedCount.sum()+" admitted, "+delayShedCount.sum()+" shed for queue delay, "
+				+queueFullShedCount.sum()+" shed for a full queue, "+TimeUnit.NANOSECONDS.toMillis(maxDelay)+" ms longest queue delay";
+	}
+}
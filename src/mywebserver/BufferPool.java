@@ -0,0 +1,383 @@
+package mywebserver;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class BufferPool hands out direct ByteBuffers for socket I/O and takes them back when they
+ * are released, so that reading requests and writing response headers does not allocate new
+ * buffers under load. Direct buffers are written to and read from sockets without being copied
+ * into a temporary buffer first.
+ *
+ * The buffers come in size classes of powers of two from 4 KB to 64 KB, and a request is served
+ * from the smallest class it fits into. Each thread keeps a few released buffers of each class in
+ * its own cache, which it takes from and releases to without synchronization; beyond that, the
+ * buffers go to a shared pool per class, bounded by the total number of pooled bytes. Larger
+ * buffers are not pooled. Virtual threads, which run a single connection and are not reused,
+ * have no cache and use the shared pools directly, so their buffers are not stranded when they end.
+ *
+ * With leak detection, each buffer which is handed out remembers where it was acquired, and a
+ * buffer which is garbage collected without being released is reported and taken back.
+ */
+public class BufferPool {
+
+	//Size of the smallest size class, as a power of two: 4 KB
+	private static final int MIN_SIZE_SHIFT = 12;
+
+	//Number of size classes: 4, 8, 16, 32 and 64 KB
+	private static final int SIZE_CLASS_COUNT = 5;
+
+	//Maximum number of released buffers of each size class kept by a thread
+	private static final int THREAD_CACHE_SIZE = 4;
+
+	//Method checking if a thread is a virtual thread, null before Java 21
+	private static final Method IS_VIRTUAL = getIsVirtualMethod();
+
+	//Maximum number of bytes of the buffers in the shared pools
+	private final long maxBytes;
+
+	//Released buffers of each size class shared by all threads
+	private final Queue<ByteBuffer>[] sharedPools;
+
+	//Number of bytes of the buffers in the shared pools
+	private final AtomicLong pooledBytes = new AtomicLong();
+
+	//Released buffers of each size class kept by each thread
+	private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<ThreadCache>(){
+		@Override
+		protected ThreadCache initialValue(){
+			return new ThreadCache();
+		}
+	};
+
+	//Check if the buffers which are not released are reported
+	private final boolean leakDetection;
+
+	//Trackers of the buffers which are handed out, with leak detection
+	private final Set<LeakTracker> leakTrackers = ConcurrentHashMap.newKeySet();
+
+	//Trackers of the buffers which were garbage collected
+	private final ReferenceQueue<PooledBuffer> collectedBuffers = new ReferenceQueue<PooledBuffer>();
+
+	//Counters for sizing the pool
+	private final LongAdder allocationCount = new LongAdder();
+	private final LongAdder reuseCount = new LongAdder();
+	private final LongAdder leakCount = new LongAdder();
+
+	/**
+	 * Instantiates a new BufferPool.
+	 *
+	 * @param maxBytes the maximum number of bytes of the buffers in the shared pools, 0 disables pooling
+	 * @param leakDetection true, to report the buffers which are not released
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BufferPool(long maxBytes, boolean leakDetection){
+		this.maxBytes = maxBytes;
+		this.leakDetection = leakDetection;
+		this.sharedPools = new Queue[SIZE_CLASS_COUNT];
+		for(int i=0; i<SIZE_CLASS_COUNT; i++){
+			this.sharedPools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+		}
+	}
+
+	/**
+	 * Looks up the method checking if a thread is a virtual thread.
+	 *
+	 * @return the method, or null if there are no virtual threads
+	 */
+	private static Method getIsVirtualMethod(){
+		try{
+			//Looked up reflectively, as the server is compiled for Java 8
+			return Thread.class.getMethod("isVirtual");
+		}
+		catch(NoSuchMethodException e){
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the buffer cache of the current thread.
+	 *
+	 * @return the cache, or null if the current thread is a virtual thread
+	 */
+	private ThreadCache getThreadCache(){
+		if(IS_VIRTUAL!=null){
+			try{
+				if((Boolean) IS_VIRTUAL.invoke(Thread.currentThread()))
+					return null;
+			}
+			catch(ReflectiveOperationException e){
+				return null;
+			}
+		}
+		return threadCaches.get();
+	}
+
+	/**
+	 * Acquires a buffer with room for at least the given number of bytes. Its position is 0 and
+	 * its limit is its capacity. The buffer has to be released when it is no longer used.
+	 * Without pooling, a heap buffer is allocated, which is cheaper than a direct one.
+	 *
+	 * @param size the number of bytes
+	 * @return the pooled buffer
+	 */
+	public PooledBuffer acquire(int size){
+		if(leakDetection)
+			reportLeaks();
+		int sizeClass = getSizeClass(size);
+		if(sizeClass<0 || maxBytes<=0){
+			allocationCount.increment();
+			return new PooledBuffer(ByteBuffer.allocate(sizeClass<0 ? size : 1 << (MIN_SIZE_SHIFT + sizeClass)), -1);
+		}
+
+		ThreadCache threadCache = getThreadCache();
+		ByteBuffer buffer = threadCache!=null ? threadCache.poll(sizeClass) : null;
+		if(buffer==null){
+			buffer = sharedPools[sizeClass].poll();
+			if(buffer!=null)
+				pooledBytes.addAndGet(-buffer.capacity());
+		}
+		if(buffer==null){
+			allocationCount.increment();
+			buffer = ByteBuffer.allocateDirect(1 << (MIN_SIZE_SHIFT + sizeClass));
+		}
+		else{
+			reuseCount.increment();
+			buffer.clear();
+		}
+		return new PooledBuffer(buffer, sizeClass);
+	}
+
+	/**
+	 * Takes a buffer back into the pool, first into the cache of the releasing thread, if it has one.
+	 *
+	 * @param buffer the buffer
+	 * @param sizeClass the size class of the buffer
+	 */
+	private void recycle(ByteBuffer buffer, int sizeClass){
+		if(sizeClass<0 || maxBytes<=0)
+			return;
+		ThreadCache threadCache = getThreadCache();
+		if(threadCache!=null && threadCache.offer(sizeClass, buffer))
+			return;
+		if(pooledBytes.addAndGet(buffer.capacity())>maxBytes){
+			//The pool is full, the buffer is freed by the garbage collector
+			pooledBytes.addAndGet(-buffer.capacity());
+			return;
+		}
+		sharedPools[sizeClass].offer(buffer);
+	}
+
+	/**
+	 * Gets the size class of a buffer.
+	 *
+	 * @param size the number of bytes of the buffer
+	 * @return the index of the smallest size class with room for them, or -1 if the buffer is too large
+	 */
+	static int getSizeClass(int size){
+		int sizeClass = Math.max(0, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1) - MIN_SIZE_SHIFT);
+		return sizeClass<SIZE_CLASS_COUNT ? sizeClass : -1;
+	}
+
+	/**
+	 * Reports the buffers which were garbage collected without being released, and takes them back.
+	 */
+	private void reportLeaks(){
+		LeakTracker leakTracker;
+		while((leakTracker = (LeakTracker) collectedBuffers.poll())!=null){
+			if(!leakTrackers.remove(leakTracker))
+				continue;
+			leakCount.increment();
+			System.out.println("Buffer pool leak: a buffer of "+leakTracker.buffer.capacity()
+					+" bytes was not released. It was acquired at:");
+			for(StackTraceElement element: leakTracker.acquisition.getStackTrace()){
+				//Leave out the frames of the pool itself
+				if(!element.getClassName().startsWith(BufferPool.class.getName()))
+					System.out.println("\tat "+element);
+			}
+			recycle(leakTracker.buffer, leakTracker.sizeClass);
+		}
+	}
+
+	/**
+	 * Gets the number of buffers which were allocated because none could be reused.
+	 *
+	 * @return the allocation count
+	 */
+	public long getAllocationCount(){
+		return allocationCount.sum();
+	}
+
+	/**
+	 * Gets the number of buffers which were reused from the pool.
+	 *
+	 * @return the reuse count
+	 */
+	public long getReuseCount(){
+		return reuseCount.sum();
+	}
+
+	/**
+	 * Gets the number of buffers which were garbage collected without being released.
+	 *
+	 * @return the leak count
+	 */
+	public long getLeakCount(){
+		return leakCount.sum();
+	}
+
+	/**
+	 * Gets the number of bytes of the buffers in the shared pools, without the thread caches.
+	 *
+	 * @return the pooled bytes
+	 */
+	public long getPooledBytes(){
+		return pooledBytes.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return "Buffer pool: "+getPooledBytes()+"/"+maxBytes+" bytes pooled, "+getAllocationCount()+" allocations, "
+				+getReuseCount()+" reuses"+(leakDetection ? ", "+getLeakCount()+" leaks" : "");
+	}
+
+	/**
+	 * The Class PooledBuffer is a buffer acquired from the pool, which is given back with release.
+	 * It belongs to one user at a time, and must not be used after it was released.
+	 */
+	public class PooledBuffer{
+
+		//The buffer, null once it was released
+		private ByteBuffer buffer;
+
+		//Size class of the buffer, -1 if it is not pooled
+		private final int sizeClass;
+
+		//Tracker reporting the buffer if it is not released, with leak detection
+		private final LeakTracker leakTracker;
+
+		/**
+		 * Instantiates a new pooled buffer.
+		 *
+		 * @param buffer the buffer
+		 * @param sizeClass the size class of the buffer
+		 */
+		PooledBuffer(ByteBuffer buffer, int sizeClass){
+			this.buffer = buffer;
+			this.sizeClass = sizeClass;
+			if(leakDetection && sizeClass>=0){
+				leakTracker = new LeakTracker(this, buffer, sizeClass);
+				leakTrackers.add(leakTracker);
+			}
+			else{
+				leakTracker = null;
+			}
+		}
+
+		/**
+		 * Gets the buffer.
+		 *
+		 * @return the buffer
+		 * @throws IllegalStateException if the buffer was released
+		 */
+		public ByteBuffer getBuffer(){
+			if(buffer==null)
+				throw new IllegalStateException("Buffer was released");
+			return buffer;
+		}
+
+		/**
+		 * Gives the buffer back to the pool. Releasing it again has no effect.
+		 */
+		public void release(){
+			if(buffer==null)
+				return;
+			if(leakTracker!=null){
+				leakTrackers.remove(leakTracker);
+				leakTracker.clear();
+			}
+			recycle(buffer, sizeClass);
+			buffer = null;
+		}
+	}
+
+	/**
+	 * The Class LeakTracker is notified when a PooledBuffer is garbage collected, and holds its
+	 * buffer and the place it was acquired at.
+	 */
+	private class LeakTracker extends PhantomReference<PooledBuffer>{
+
+		//The buffer of the pooled buffer
+		final ByteBuffer buffer;
+
+		//Size class of the buffer
+		final int sizeClass;
+
+		//Stack trace of the acquisition of the buffer
+		final Throwable acquisition = new Throwable();
+
+		/**
+		 * Instantiates a new leak tracker.
+		 *
+		 * @param pooledBuffer the pooled buffer
+		 * @param buffer the buffer
+		 * @param sizeClass the size class of the buffer
+		 */
+		LeakTracker(PooledBuffer pooledBuffer, ByteBuffer buffer, int sizeClass){
+			super(pooledBuffer, collectedBuffers);
+			this.buffer = buffer;
+			this.sizeClass = sizeClass;
+		}
+	}
+
+	/**
+	 * The Class ThreadCache holds the released buffers of one thread, a small stack per size class.
+	 */
+	private static class ThreadCache{
+
+		//Cached buffers of each size class
+		private final ByteBuffer[][] buffers = new ByteBuffer[SIZE_CLASS_COUNT][THREAD_CACHE_SIZE];
+
+		//Number of cached buffers of each size class
+		private final int[] counts = new int[SIZE_CLASS_COUNT];
+
+		/**
+		 * Takes a cached buffer.
+		 *
+		 * @param sizeClass the size class
+		 * @return the buffer, or null if none is cached
+		 */
+		ByteBuffer poll(int sizeClass){
+			if(counts[sizeClass]==0)
+				return null;
+			int index = --counts[sizeClass];
+			ByteBuffer buffer = buffers[sizeClass][index];
+			buffers[sizeClass][index] = null;
+			return buffer;
+		}
+
+		/**
+		 * Caches a buffer, if there is room.
+		 *
+		 * @param sizeClass the size class
+		 * @param buffer the buffer
+		 * @return true, if the buffer was cached
+		 */
+		boolean offer(int sizeClass, ByteBuffer buffer){
+			if(counts[sizeClass]==THREAD_CACHE_SIZE)
+				return false;
+			buffers[sizeClass][counts[sizeClass]++] = buffer;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The Class ByteArrayBody is a response body held in memory, like a generated error page
+ * or the content of a cached file.
+ */
+public class ByteArrayBody implements ResponseBody {
+
+	//Bytes of the body, shared and never modified
+	private final byte[] content;
+
+	//Index of the first byte of the body in the array
+	private final int offset;
+
+	//Number of bytes of the body
+	private final int length;
+
+	/**
+	 * Instantiates a new ByteArrayBody.
+	 *
+	 * @param content the bytes of the body
+	 */
+	public ByteArrayBody(byte[] content) {
+		this(content, 0, content.length);
+	}
+
+	/**
+	 * Instantiates a new ByteArrayBody over a part of the array.
+	 *
+	 * @param content the array holding the bytes of the body
+	 * @param offset the index of the first byte of the body
+	 * @param length the number of bytes of the body
+	 */
+	public ByteArrayBody(byte[] content, int offset, int length) {
+		this.content = content;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getContentLength()
+	 */
+	public long getContentLength() {
+		return length;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getBuffer()
+	 */
+	public ByteBuffer getBuffer() {
+		return ByteBuffer.wrap(content, offset, length);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#writeTo(java.nio.channels.WritableByteChannel, long)
+	 */
+	public long writeTo(WritableByteChannel channel, long offset) throws IOException {
+		return channel.write(ByteBuffer.wrap(content, this.offset + (int) offset, length - (int) offset));
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getRegion(long, long)
+	 */
+	public ResponseBody getRegion(long position, long count) {
+		return new ByteArrayBody(content, offset + (int) position, (int) count);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#close()
+	 */
+	public void close() {
+	}
+}
@@ -0,0 +1,126 @@
+package mywebserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class ByteRange represents one range of bytes requested with the Range header field,
+ * eg. "Range: bytes=0-499,-500", resolved against the length of the representation.
+ */
+public class ByteRange {
+
+	//Maximum number of ranges of a request, more ranges are ignored and the whole file is sent
+	private static final int MAX_RANGES = Integer.getInteger("mywebserver.range.maxRanges", 16);
+
+	//Position of the first byte of the range
+	private final long first;
+
+	//Position of the last byte of the range, inclusive
+	private final long last;
+
+	/**
+	 * Instantiates a new ByteRange.
+	 *
+	 * @param first the position of the first byte
+	 * @param last the position of the last byte, inclusive
+	 */
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Parses the Range header value against the length of the representation. Ranges which
+	 * start past its end are left out; ranges which end past its end are shortened.
+	 *
+	 * @param range the Range header value
+	 * @param length the length of the representation in bytes
+	 * @return the satisfiable ranges in the requested order, an empty list if none of them is
+	 * 			satisfiable, or null if the Range header is to be ignored and the whole
+	 * 			representation sent: it is invalid, not in bytes, has too many ranges, or has
+	 * 			overlapping ranges which would send the same bytes several times
+	 */
+	public static List<ByteRange> parse(String range, long length) {
+		range = range.trim();
+		if(!range.regionMatches(true, 0, "bytes=", 0, 6))
+			return null;
+		String[] specs = range.substring(6).split(",");
+		if(specs.length>MAX_RANGES)
+			return null;
+		List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+		try{
+			for(String spec: specs){
+				spec = spec.trim();
+				int dash = spec.indexOf('-');
+				if(dash<0)
+					return null;
+				String firstValue = spec.substring(0, dash).trim();
+				String lastValue = spec.substring(dash+1).trim();
+				if(firstValue.isEmpty()){
+					//Suffix range: the last N bytes
+					long suffixLength = Long.parseLong(lastValue);
+					if(suffixLength<0)
+						return null;
+					if(suffixLength>0 && length>0)
+						ranges.add(new ByteRange(Math.max(0, length - suffixLength), length - 1));
+					continue;
+				}
+				long first = Long.parseLong(firstValue);
+				long last = lastValue.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastValue);
+				if(first<0 || last<first)
+					return null;
+				if(first<length)
+					ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+			}
+		}
+		catch(NumberFormatException e){
+			return null;
+		}
+
+		//Overlapping ranges are not worth sending as parts
+		for(int i=0; i<ranges.size(); i++){
+			for(int j=i+1; j<ranges.size(); j++){
+				if(ranges.get(i).first<=ranges.get(j).last && ranges.get(j).first<=ranges.get(i).last)
+					return null;
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Gets the position of the first byte.
+	 *
+	 * @return the first byte position
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Gets the position of the last byte, inclusive.
+	 *
+	 * @return the last byte position
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * Gets the number of bytes of the range.
+	 *
+	 * @return the length
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Gets the Content-Range header value of the range, eg. "bytes 0-499/1234".
+	 *
+	 * @param completeLength the length of the representation
+	 * @return the Content-Range value
+	 */
+	public String toContentRange(long completeLength) {
+		return "bytes "+first+"-"+last+"/"+completeLength;
+	}
+}
@@ -0,0 +1,141 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Class ChunkedBody is a response body of unknown length, which is read from a stream while
+ * it is sent and written with the chunked transfer coding. The stream is read one chunk at a
+ * time into a buffer which is reused for all chunks, so the memory held by the body does not
+ * depend on the length of the content. The body is written in order; the offset given to
+ * writeTo is the number of bytes written so far.
+ */
+public class ChunkedBody implements ResponseBody {
+
+	//Maximum number of content bytes of a chunk
+	private static final int CHUNK_SIZE = 16 << 10;
+
+	//Room before the content of a chunk for its size line: up to 4 hex digits and CRLF
+	private static final int CHUNK_HEADER_SIZE = 6;
+
+	//Last chunk and the empty line which ends the body, without trailer fields
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	//Hex digits of the chunk size line
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+	//Stream of the content
+	private InputStream source;
+
+	//Encoded chunk which is being written: the size line, the content and the CRLF
+	private final byte[] chunk = new byte[CHUNK_HEADER_SIZE + CHUNK_SIZE + 2 + LAST_CHUNK.length];
+
+	//Bytes of the chunk which are left to write
+	private ByteBuffer pending = ByteBuffer.wrap(chunk, 0, 0);
+
+	//Check if the last chunk was encoded
+	private boolean ended = false;
+
+	/**
+	 * Instantiates a new ChunkedBody, which takes over the stream.
+	 *
+	 * @param source the stream of the content
+	 */
+	public ChunkedBody(InputStream source) {
+		this.source = source;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getContentLength()
+	 */
+	public long getContentLength() {
+		return -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getBuffer()
+	 */
+	public ByteBuffer getBuffer() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#writeTo(java.nio.channels.WritableByteChannel, long)
+	 */
+	public long writeTo(WritableByteChannel channel, long offset) throws IOException {
+		if(!pending.hasRemaining()){
+			if(ended)
+				return -1;
+			readChunk();
+		}
+		return channel.write(pending);
+	}
+
+	/**
+	 * Checks if the next chunk has to be read before anything more can be written, so a caller
+	 * which must not block can read it on another thread first.
+	 *
+	 * @return true, if the chunk is written and the stream has not ended
+	 */
+	public boolean needsChunk() {
+		return !pending.hasRemaining() && !ended;
+	}
+
+	/**
+	 * Reads the next chunk from the stream and encodes it. At the end of the stream, the last
+	 * chunk is appended.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void readChunk() throws IOException {
+		//Fill the chunk, up to the end of the stream
+		int length = 0;
+		int bytesRead = 0;
+		while(length<CHUNK_SIZE && (bytesRead = source.read(chunk, CHUNK_HEADER_SIZE + length, CHUNK_SIZE - length))>=0){
+			length += bytesRead;
+		}
+
+		int start = CHUNK_HEADER_SIZE;
+		int end = CHUNK_HEADER_SIZE + length;
+		if(length>0){
+			//Write the size line right before the content, and the CRLF after it
+			chunk[--start] = '\n';
+			chunk[--start] = '\r';
+			for(int size=length; size>0; size>>>=4){
+				chunk[--start] = HEX_DIGITS[size & 0xf];
+			}
+			chunk[end++] = '\r';
+			chunk[end++] = '\n';
+		}
+		if(bytesRead<0){
+			System.arraycopy(LAST_CHUNK, 0, chunk, end, LAST_CHUNK.length);
+			end += LAST_CHUNK.length;
+			ended = true;
+		}
+		pending = ByteBuffer.wrap(chunk, start, end - start);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getRegion(long, long)
+	 */
+	public ResponseBody getRegion(long position, long count) {
+		throw new UnsupportedOperationException("A chunked body has no regions");
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#close()
+	 */
+	public void close() {
+		if(source==null)
+			return;
+		try {
+			source.close();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+		source = null;
+	}
+}
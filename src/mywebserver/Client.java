@@ -1,6 +1,7 @@
 package mywebserver;
 import java.net.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import mywebserver.HttpRequest;
 
 /**
@@ -52,6 +53,7 @@ public class Client {
 				//Connect to the server via the specified port
 				System.out.println("Trying to connect to " + hostName + " on port " + port);
 				client = new Socket(hostName, port);
+				client.setSoTimeout(MAX_WAIT_TIME);
 				String serverAddress = client.getRemoteSocketAddress().toString();
 				System.out.println("Connection to " + serverAddress+" has been established!");
 
@@ -160,9 +162,6 @@ public class Client {
 			//Get the output stream to send request to server
 			OutputStream outToServer = client.getOutputStream();
 
-			//Get the DataOutputStream format to send request to Server
-			DataOutputStream out = new DataOutputStream(outToServer);
-
 			//Get String format of response from Server
 			String requestToServer = httpRequestObj.toString();
 
@@ -170,9 +169,9 @@ public class Client {
 			System.out.println("Sending the following request to the server...\n");
 			System.out.println(requestToServer);
 
-			//Send the request to the server
-			out.writeUTF(requestToServer);
-			
+			//Send the request to the server in the HTTP/1.1 wire format
+			outToServer.write(requestToServer.getBytes(StandardCharsets.UTF_8));
+			outToServer.flush();
 
 		}
 		catch(Exception e){
@@ -189,44 +188,16 @@ public class Client {
 	 */
 	public static String getResponseFromServer(){
 		try{
-			StringBuffer responseFromServerBuffer = new StringBuffer();
-
 			//Create Input stream to accept response from server
 			InputStream inFromServer = client.getInputStream();
-			InputStreamReader inputStreamReader = new InputStreamReader(inFromServer);
 
-			//Buffer to save response from the server
-			responseFromServerBuffer = new StringBuffer();
-
-			//Wait for the data to be present in Input stream from server
+			//Wait for the response, the socket times out after MAX_WAIT_TIME
 			System.out.println("Waiting for server response....");
-			while((System.currentTimeMillis()-startTime)<MAX_WAIT_TIME){
-
-				//When data becomes available, save the response
-				if(inFromServer.available()>0){
-					int bufLength = inFromServer.available();
-					System.out.println("Received server response!");
-
-					//Create a reader to read data from the input stream
-					BufferedReader reader = new BufferedReader(inputStreamReader,
-							bufLength);
-
-					//Create char buffer to save data received from server
-					char[] cbuf = new char[bufLength];
-
-					//Copy the contents from the reader to the buffer, when reader is ready
-					if(reader.ready()){
-						//Read the contents received into the char buffer
-						reader.read(cbuf, 0, bufLength);
+			String responseFromServer = readResponse(inFromServer);
+			System.out.println("Received server response!");
 
-						//Save the contents
-						responseFromServerBuffer.append(cbuf);
-						break;
-					}
-				}
-			}
 			//Return Server response
-			return responseFromServerBuffer.toString();
+			return responseFromServer;
 
 		}
 		catch(IOException e){
@@ -235,4 +206,129 @@ public class Client {
 		}
 		
 	}
+
+	/**
+	 * Reads one HTTP/1.1 response. The status line and the header fields end with an empty 
+	 * line, and the Content-Length header field gives the size of the body which follows.
+	 *
+	 * @param inFromServer the input stream of the connection
+	 * @return the String format of the response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static String readResponse(InputStream inFromServer) throws IOException{
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		readResponse(inFromServer, response);
+		return response.toString();
+	}
+
+	/**
+	 * Reads one HTTP/1.1 response and copies its bytes to the given stream. The body is read
+	 * by its Content-Length, or chunk by chunk if it is sent with the chunked transfer coding.
+	 *
+	 * @param inFromServer the input stream of the connection
+	 * @param response the stream receiving the bytes of the response
+	 * @return the status code of the response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static int readResponse(InputStream inFromServer, OutputStream response) throws IOException{
+		long contentLength = 0;
+		boolean chunked = false;
+		int statusCode = 0;
+
+		//Read the status line and the header fields line by line
+		String headerLine;
+		while(!(headerLine = readLine(inFromServer, response)).isEmpty()){
+			if(statusCode==0)
+				statusCode = parseStatusCode(headerLine);
+			else if(headerLine.regionMatches(true, 0, "Content-Length:", 0, 15))
+				contentLength = Long.parseLong(headerLine.substring(15).trim());
+			else if(headerLine.regionMatches(true, 0, "Transfer-Encoding:", 0, 18))
+				chunked = headerLine.substring(18).trim().equalsIgnoreCase("chunked");
+		}
+
+		//Read the response body
+		byte[] buffer = new byte[8192];
+		if(!chunked){
+			readBytes(inFromServer, response, contentLength, buffer);
+			return statusCode;
+		}
+		while(true){
+			String chunkSizeLine = readLine(inFromServer, response);
+			int extension = chunkSizeLine.indexOf(';');
+			long chunkSize;
+			try{
+				chunkSize = Long.parseLong((extension<0 ? chunkSizeLine : chunkSizeLine.substring(0, extension)).trim(), 16);
+			}
+			catch(NumberFormatException e){
+				throw new IOException("Bad chunk size line:"+chunkSizeLine);
+			}
+			if(chunkSize==0)
+				break;
+			//Each chunk is followed by a CRLF
+			readBytes(inFromServer, response, chunkSize, buffer);
+			readLine(inFromServer, response);
+		}
+
+		//Skip the trailer fields up to the empty line which ends the body
+		while(!readLine(inFromServer, response).isEmpty());
+		return statusCode;
+	}
+
+	/**
+	 * Reads a line ending with CRLF and copies its bytes to the given stream.
+	 *
+	 * @param inFromServer the input stream of the connection
+	 * @param response the stream receiving the bytes of the response
+	 * @return the line without the CRLF
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String readLine(InputStream inFromServer, OutputStream response) throws IOException{
+		StringBuilder line = new StringBuilder();
+		while(true){
+			int b = inFromServer.read();
+			if(b==-1)
+				throw new EOFException("Connection closed by the server");
+			response.write(b);
+			if(b=='\n')
+				return line.toString();
+			if(b!='\r')
+				line.append((char) b);
+		}
+	}
+
+	/**
+	 * Reads the given number of bytes and copies them to the given stream.
+	 *
+	 * @param inFromServer the input stream of the connection
+	 * @param response the stream receiving the bytes of the response
+	 * @param count the number of bytes
+	 * @param buffer the buffer to read into
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void readBytes(InputStream inFromServer, OutputStream response, long count, byte[] buffer) throws IOException{
+		while(count>0){
+			int bytesRead = inFromServer.read(buffer, 0, (int) Math.min(buffer.length, count));
+			if(bytesRead==-1)
+				throw new EOFException("Connection closed by the server");
+			response.write(buffer, 0, bytesRead);
+			count -= bytesRead;
+		}
+	}
+
+	/**
+	 * Parses the status code of the status line, eg. HTTP/1.1 200 OK.
+	 *
+	 * @param statusLine the status line
+	 * @return the status code
+	 * @throws IOException Signals that the status line is invalid.
+	 */
+	private static int parseStatusCode(String statusLine) throws IOException{
+		String[] statusLineTokens = statusLine.split(" ", 3);
+		try{
+			return Integer.parseInt(statusLineTokens[1]);
+		}
+		catch(RuntimeException e){
+			throw new IOException("Bad status line:"+statusLine);
+		}
+	}
 }
@@ -0,0 +1,266 @@
+package mywebserver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Class CompressedContentCache keeps the compressed variants of requested files in memory,
+ * so that a file is only compressed once per version and encoding. A variant is keyed by the
+ * encoding and the resolved path of the file, and is only served while the modification time
+ * and size of the file are the ones it was compressed from. The cache is bounded by the total
+ * number of bytes of the variants, and an EvictionPolicy decides which variants are kept.
+ * As in the FileContentCache, a hit is served without a lock and recorded in a HitBuffer.
+ * The returned contents are shared between requests and must not be modified.
+ */
+public class CompressedContentCache {
+
+	//Maximum number of bytes of all cached variants
+	private final long maxBytes;
+
+	//Policy deciding which variants are kept
+	private final EvictionPolicy<String> evictionPolicy;
+
+	//Lock guarding the eviction policy and the changes of the cached variants
+	private final ReentrantLock lock = new ReentrantLock();
+
+	//Cached variants by encoding and resolved path, changed only under the lock of the cache
+	private final Map<String, Variant> variants = new ConcurrentHashMap<String, Variant>();
+
+	//Hits served without the lock, which the eviction policy has not seen yet
+	private final HitBuffer<String> hitBuffer = new HitBuffer<String>();
+
+	//Number of bytes of all cached variants
+	private long cachedBytes = 0;
+
+	//Counters for sizing the cache
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * Instantiates a new CompressedContentCache.
+	 *
+	 * @param maxBytes the maximum number of bytes of all cached variants
+	 * @param evictionPolicy the policy deciding which variants are kept
+	 */
+	public CompressedContentCache(long maxBytes, EvictionPolicy<String> evictionPolicy) {
+		this.maxBytes = maxBytes;
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * Gets the compressed variant of the file, if it was compressed from the current version.
+	 *
+	 * @param path the resolved path of the file
+	 * @param encoding the content encoding
+	 * @param lastModified the modification time of the file
+	 * @param length the size of the file
+	 * @return the compressed content, or null if it has to be compressed
+	 */
+	public byte[] get(String path, String encoding, long lastModified, long length) {
+		String key = encoding+":"+path;
+		Variant variant = variants.get(key);
+		if(variant!=null && variant.lastModified==lastModified && variant.length==length){
+			hitCount.increment();
+			if(hitBuffer.record(key))
+				tryDrainHits();
+			return variant.content;
+		}
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, variants);
+
+			variant = variants.get(key);
+			if(variant!=null && variant.lastModified==lastModified && variant.length==length){
+				//Another request compressed the file in the meantime
+				hitCount.increment();
+				evictionPolicy.recordHit(key);
+				return variant.content;
+			}
+
+			//A variant of an older version of the file is not served any more
+			if(variant!=null)
+				remove(key);
+			missCount.increment();
+			evictionPolicy.recordMiss(key);
+			return null;
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if the compressed variant of the file is in the cache, without counting a hit or a miss.
+	 *
+	 * @param path the resolved path of the file
+	 * @param encoding the content encoding
+	 * @param lastModified the modification time of the file
+	 * @param length the size of the file
+	 * @return true, if the variant of this version of the file is cached
+	 */
+	public boolean contains(String path, String encoding, long lastModified, long length) {
+		Variant variant = variants.get(encoding+":"+path);
+		return variant!=null && variant.lastModified==lastModified && variant.length==length;
+	}
+
+	/**
+	 * Adds the compressed variant of the file, if it fits and the eviction policy admits it.
+	 *
+	 * @param path the resolved path of the file
+	 * @param encoding the content encoding
+	 * @param lastModified the modification time of the file it was compressed from
+	 * @param length the size of the file it was compressed from
+	 * @param content the compressed content
+	 */
+	public void put(String path, String encoding, long lastModified, long length, byte[] content) {
+		String key = encoding+":"+path;
+		if(content.length>maxBytes)
+			return;
+		lock.lock();
+		try{
+			if(variants.containsKey(key))
+				return;
+			hitBuffer.drainTo(evictionPolicy, variants);
+
+			//Make room for the variant
+			while(cachedBytes+content.length>maxBytes){
+				String victim = evictionPolicy.selectVictim();
+				if(victim==null || !evictionPolicy.admit(key, victim))
+					return;
+				remove(victim);
+				evictionCount.increment();
+			}
+			variants.put(key, new Variant(content, lastModified, length));
+			cachedBytes += content.length;
+			evictionPolicy.recordInsertion(key);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the variants of the file in all encodings from the cache.
+	 *
+	 * @param path the resolved path of the file
+	 */
+	public void invalidate(String path) {
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, variants);
+			remove(ContentEncoding.GZIP+":"+path);
+			remove(ContentEncoding.DEFLATE+":"+path);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replays the buffered hits to the eviction policy, unless another thread holds the lock.
+	 */
+	private void tryDrainHits() {
+		if(!lock.tryLock())
+			return;
+		try{
+			hitBuffer.drainTo(evictionPolicy, variants);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the variant from the cache.
+	 *
+	 * @param key the encoding and resolved path of the file
+	 */
+	private void remove(String key) {
+		Variant variant = variants.remove(key);
+		if(variant==null)
+			return;
+		cachedBytes -= variant.content.length;
+		evictionPolicy.recordRemoval(key);
+	}
+
+	/**
+	 * Gets the number of responses served from a cached variant.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the number of responses for which the file had to be compressed.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Gets the number of variants evicted to make room for other variants.
+	 *
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Gets the number of bytes of all cached variants.
+	 *
+	 * @return the cached bytes
+	 */
+	public long getCachedBytes() {
+		lock.lock();
+		try{
+			return cachedBytes;
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "Compressed variant cache: "+getCachedBytes()+"/"+maxBytes+" bytes, "+getHitCount()+" hits, "
+				+getMissCount()+" misses, "+getEvictionCount()+" evictions";
+	}
+
+	/**
+	 * The Class Variant holds a compressed file together with the version it was compressed from.
+	 */
+	static class Variant {
+
+		//Compressed content of the file
+		final byte[] content;
+
+		//Modification time of the file when it was compressed
+		final long lastModified;
+
+		//Size of the file when it was compressed
+		final long length;
+
+		/**
+		 * Instantiates a new variant.
+		 *
+		 * @param content the compressed content
+		 * @param lastModified the modification time
+		 * @param length the size
+		 */
+		Variant(byte[] content, long lastModified, long length) {
+			this.content = content;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+}
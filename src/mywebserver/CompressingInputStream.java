@@ -0,0 +1,147 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The Class CompressingInputStream reads the content of a stream compressed with the gzip or
+ * deflate content encoding, so that a file can be compressed while it is sent instead of being
+ * compressed into memory first. The content is read and compressed in bounded steps.
+ */
+public class CompressingInputStream extends InputStream {
+
+	//Number of content bytes read from the stream per step
+	private static final int INPUT_BUFFER_SIZE = 16 << 10;
+
+	//Header of a gzip member: magic number, deflate method, no flags, modification time, extra flags and OS unknown
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	//Stream of the content
+	private final InputStream in;
+
+	//Compressor of the content
+	private final Deflater deflater;
+
+	//Checksum of the content for the gzip trailer, null for deflate
+	private final CRC32 checksum;
+
+	//Content read from the stream and not passed to the compressor yet
+	private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+
+	//Gzip header or trailer bytes which are left to read
+	private byte[] framing;
+	private int framingPosition = 0;
+
+	//Check if the gzip trailer was added after the compressed content
+	private boolean trailerAdded = false;
+
+	//Check if the stream was closed
+	private boolean closed = false;
+
+	/**
+	 * Instantiates a new CompressingInputStream, which takes over the stream.
+	 *
+	 * @param in the stream of the content
+	 * @param contentEncoding gzip or deflate
+	 * @param level the compression level
+	 */
+	public CompressingInputStream(InputStream in, String contentEncoding, int level) {
+		this.in = in;
+		if(ContentEncoding.GZIP.equals(contentEncoding)){
+			//Gzip wraps raw deflate data into its own header and trailer
+			this.deflater = new Deflater(level, true);
+			this.checksum = new CRC32();
+			this.framing = GZIP_HEADER;
+		}
+		else if(ContentEncoding.DEFLATE.equals(contentEncoding)){
+			this.deflater = new Deflater(level);
+			this.checksum = null;
+			this.framing = null;
+		}
+		else{
+			throw new IllegalArgumentException("Unsupported content encoding "+contentEncoding);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1)==-1 ? -1 : b[0] & 0xff;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(closed)
+			throw new IOException("Stream closed");
+		if(len==0)
+			return 0;
+		while(true){
+			if(framing!=null){
+				int count = Math.min(len, framing.length - framingPosition);
+				System.arraycopy(framing, framingPosition, b, off, count);
+				framingPosition += count;
+				if(framingPosition==framing.length){
+					framing = null;
+					framingPosition = 0;
+				}
+				return count;
+			}
+			if(deflater.finished()){
+				if(checksum==null || trailerAdded)
+					return -1;
+				framing = createGzipTrailer();
+				trailerAdded = true;
+				continue;
+			}
+			int count = deflater.deflate(b, off, len);
+			if(count>0)
+				return count;
+
+			//The compressor needs more content, or the end of the content
+			if(deflater.needsInput()){
+				int bytesRead = in.read(inputBuffer, 0, inputBuffer.length);
+				if(bytesRead<0){
+					deflater.finish();
+				}
+				else{
+					if(checksum!=null)
+						checksum.update(inputBuffer, 0, bytesRead);
+					deflater.setInput(inputBuffer, 0, bytesRead);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the gzip trailer: the CRC-32 and the length of the content modulo 2^32, little-endian.
+	 *
+	 * @return the trailer bytes
+	 */
+	private byte[] createGzipTrailer() {
+		long crc = checksum.getValue();
+		long length = deflater.getBytesRead();
+		byte[] trailer = new byte[8];
+		for(int i=0; i<4; i++){
+			trailer[i] = (byte) (crc >>> (8*i));
+			trailer[4+i] = (byte) (length >>> (8*i));
+		}
+		return trailer;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		if(closed)
+			return;
+		closed = true;
+		deflater.end();
+		in.close();
+	}
+}
@@ -0,0 +1,144 @@
+package mywebserver;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class ConnectionRateBenchmark compares the acceptor configurations of the MultithreadedServer
+ * under a connection storm. For every configuration, a server is started in-process, and each
+ * client opens a new connection for every request, sends one request with Connection: close,
+ * reads the response until the server closes the connection, and opens the next one right away.
+ * The rate of completed connections and the latency percentiles of connecting and being answered
+ * are printed, so the accept path is measured rather than the request processing.
+ */
+public class ConnectionRateBenchmark {
+
+	//Port used by the benchmarked servers
+	private static final int BENCHMARK_PORT = 9091;
+
+	//Request sent on every connection
+	private static final byte[] BENCHMARK_REQUEST = ("GET /SampleHTMLFile1.html HTTP/1.1\r\nHost: localhost\r\n"
+			+ "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+	//Highest latency which is recorded, in nanoseconds
+	private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.SECONDS.toNanos(60);
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments: <serverDirectory> [durationSeconds] [clientCount] [acceptorCount]
+	 */
+	public static void main(String[] args) {
+		try{
+			if(args.length<1){
+				System.out.println("Run benchmark using: java ConnectionRateBenchmark <serverDirectory> "
+						+ "[durationSeconds] [clientCount] [acceptorCount]");
+				return;
+			}
+			String serverDirectory = args[0];
+			int durationSeconds = args.length>1 ? Integer.parseInt(args[1]) : 10;
+			int clientCount = args.length>2 ? Integer.parseInt(args[2]) : 64;
+			int acceptorCount = args.length>3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+			System.out.println(String.format("%-10s %9s %8s %12s %13s %10s %10s %8s",
+					"acceptors", "reusePort", "clients", "connections", "connections/s", "p50 ms", "p99 ms", "errors"));
+			runBenchmark(1, false, serverDirectory, clientCount, durationSeconds);
+			runBenchmark(acceptorCount, false, serverDirectory, clientCount, durationSeconds);
+			runBenchmark(acceptorCount, true, serverDirectory, clientCount, durationSeconds);
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs the benchmark for one acceptor configuration.
+	 *
+	 * @param acceptorCount the number of acceptor threads
+	 * @param reusePort true, if each acceptor thread binds its own server socket with SO_REUSEPORT
+	 * @param serverDirectory the server directory
+	 * @param clientCount the number of concurrent clients
+	 * @param durationSeconds the measured duration
+	 * @throws Exception Signals that the server could not be started
+	 */
+	public static void runBenchmark(int acceptorCount, boolean reusePort, String serverDirectory, int clientCount,
+			int durationSeconds) throws Exception{
+
+		//Keep the messages of the server from flooding and slowing down the report
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			@Override
+			public void write(int b){
+			}
+		}));
+
+		ExecutorService[] connectionExecutors = new ExecutorService[acceptorCount];
+		for(int i=0; i<acceptorCount; i++){
+			connectionExecutors[i] = MultithreadedServer.newConnectionExecutor("pool");
+		}
+		MultithreadedServer server = new MultithreadedServer(serverDirectory);
+		server.listen(BENCHMARK_PORT, connectionExecutors, reusePort);
+		new Thread(server).start();
+
+		final LatencyHistogram histogram = new LatencyHistogram(HIGHEST_TRACKABLE_LATENCY);
+		final AtomicLong errors = new AtomicLong();
+		final long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+		List<Thread> clients = new ArrayList<Thread>();
+		for(int i=0; i<clientCount; i++){
+			Thread client = new Thread(new Runnable(){
+				@Override
+				public void run(){
+					byte[] response = new byte[8192];
+					while(System.nanoTime() - endTime<0){
+						long startTime = System.nanoTime();
+						try{
+							Socket socket = new Socket("localhost", BENCHMARK_PORT);
+							try{
+								socket.getOutputStream().write(BENCHMARK_REQUEST);
+								InputStream in = socket.getInputStream();
+								int length = 0;
+								int bytesRead;
+								while((bytesRead = in.read(response, length, response.length - length))>0){
+									length = Math.min(length + bytesRead, response.length - 1);
+								}
+								if(length<12 || response[9]!='2')
+									errors.incrementAndGet();
+								else
+									histogram.recordValue(System.nanoTime() - startTime);
+							}
+							finally{
+								socket.close();
+							}
+						}
+						catch(Exception e){
+							errors.incrementAndGet();
+						}
+					}
+				}
+			});
+			client.start();
+			clients.add(client);
+		}
+		for(Thread client: clients){
+			client.join();
+		}
+		server.stop();
+
+		//Let the server release the port and finish the ended connections before the next run
+		Thread.sleep(1000);
+		System.setOut(console);
+
+		System.out.println(String.format("%-10d %9s %8d %12d %13.1f %10.2f %10.2f %8d",
+				acceptorCount, reusePort, clientCount, histogram.getTotalCount(),
+				histogram.getTotalCount()/(double) durationSeconds, histogram.getValueAtPercentile(50)/1e6,
+				histogram.getValueAtPercentile(99)/1e6, errors.get()));
+	}
+}
@@ -0,0 +1,124 @@
+package mywebserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The Class ContentEncoding chooses the content encoding of a response from the Accept-Encoding
+ * header field of the request, and compresses response bodies with it. The gzip and deflate
+ * encodings are supported; deflate is the zlib format, as HTTP/1.1 defines it.
+ */
+public final class ContentEncoding {
+
+	//Supported encodings, in the order of preference when the Client accepts several equally
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	//Compression level of the compressed variants, which are only compressed once per file version
+	private static final int COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+
+	//Compression level of the files compressed while they are sent, which are compressed for every request
+	private static final int STREAMING_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+	/**
+	 * Instantiates a new ContentEncoding. Only the static methods are used.
+	 */
+	private ContentEncoding() {
+	}
+
+	/**
+	 * Chooses the encoding of the response, eg. "gzip, deflate;q=0.5" gives gzip. An encoding is
+	 * accepted if it is listed, or matched by "*", with a quality value above 0.
+	 *
+	 * @param acceptEncoding the Accept-Encoding header value, may be null
+	 * @return the supported encoding with the highest quality value, or null to send the content as it is
+	 */
+	public static String negotiate(String acceptEncoding) {
+		if(acceptEncoding==null || acceptEncoding.isEmpty())
+			return null;
+		double gzipQuality = -1;
+		double deflateQuality = -1;
+		double wildcardQuality = -1;
+		for(String coding: acceptEncoding.split(",")){
+			String[] parameters = coding.split(";");
+			String name = parameters[0].trim();
+			double quality = 1;
+			for(int i=1; i<parameters.length; i++){
+				String parameter = parameters[i].trim();
+				if(parameter.startsWith("q=") || parameter.startsWith("Q=")){
+					try{
+						quality = Double.parseDouble(parameter.substring(2).trim());
+					}
+					catch(NumberFormatException e){
+						quality = 0;
+					}
+				}
+			}
+			if(name.equalsIgnoreCase(GZIP) || name.equalsIgnoreCase("x-gzip"))
+				gzipQuality = quality;
+			else if(name.equalsIgnoreCase(DEFLATE))
+				deflateQuality = quality;
+			else if(name.equals("*"))
+				wildcardQuality = quality;
+		}
+
+		//Encodings which are not listed get the quality of the wildcard
+		if(gzipQuality<0)
+			gzipQuality = wildcardQuality;
+		if(deflateQuality<0)
+			deflateQuality = wildcardQuality;
+		if(gzipQuality<=0 && deflateQuality<=0)
+			return null;
+		return gzipQuality>=deflateQuality ? GZIP : DEFLATE;
+	}
+
+	/**
+	 * Compresses the content with the encoding.
+	 *
+	 * @param content the content
+	 * @param encoding gzip or deflate
+	 * @return the compressed content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static byte[] compress(byte[] content, String encoding) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length/4 + 64);
+		if(GZIP.equals(encoding)){
+			GZIPOutputStream out = new GZIPOutputStream(compressed){
+				{
+					def.setLevel(COMPRESSION_LEVEL);
+				}
+			};
+			out.write(content);
+			out.close();
+			return compressed.toByteArray();
+		}
+		if(DEFLATE.equals(encoding)){
+			Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+			try{
+				DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater);
+				out.write(content);
+				out.close();
+				return compressed.toByteArray();
+			}
+			finally{
+				deflater.end();
+			}
+		}
+		throw new IOException("Unsupported content encoding "+encoding);
+	}
+
+	/**
+	 * Compresses the content of the stream with the encoding while it is read.
+	 *
+	 * @param content the stream of the content, which is closed with the returned stream
+	 * @param encoding gzip or deflate
+	 * @return the stream of the compressed content
+	 */
+	public static InputStream compress(InputStream content, String encoding) {
+		return new CompressingInputStream(content, encoding, STREAMING_COMPRESSION_LEVEL);
+	}
+}
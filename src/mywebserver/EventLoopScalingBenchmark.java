@@ -0,0 +1,109 @@
+package mywebserver;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The Class EventLoopScalingBenchmark measures how the sharded mode of the SelectorServer scales
+ * with the number of event loops. For 1, 2, 4, ... event loops up to the number of cores, a server
+ * is started in-process, and each client keeps one Keep-Alive connection of the LoadGenerator open
+ * and sends requests back to back for the measured duration.
+ * The throughput, its speedup over a single event loop and the latency percentiles are printed.
+ */
+public class EventLoopScalingBenchmark {
+
+	//Port used by the benchmarked servers
+	private static final int BENCHMARK_PORT = 9092;
+
+	//File requested by the clients
+	private static final String BENCHMARK_FILE = "/SampleHTMLFile1.html";
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments: <serverDirectory> [durationSeconds] [clientCount] [maxEventLoops]
+	 */
+	public static void main(String[] args) {
+		try{
+			if(args.length<1){
+				System.out.println("Run benchmark using: java EventLoopScalingBenchmark <serverDirectory> "
+						+ "[durationSeconds] [clientCount] [maxEventLoops]");
+				return;
+			}
+			String serverDirectory = args[0];
+			int durationSeconds = args.length>1 ? Integer.parseInt(args[1]) : 10;
+			int clientCount = args.length>2 ? Integer.parseInt(args[2]) : 256;
+			int maxEventLoops = args.length>3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+			List<Integer> eventLoopCounts = new ArrayList<Integer>();
+			for(int eventLoopCount=1; eventLoopCount<maxEventLoops; eventLoopCount*=2){
+				eventLoopCounts.add(eventLoopCount);
+			}
+			eventLoopCounts.add(maxEventLoops);
+
+			System.out.println(String.format("%-11s %8s %10s %12s %8s %10s %10s %8s",
+					"eventLoops", "clients", "requests", "requests/s", "speedup", "p50 ms", "p99 ms", "errors"));
+			double baseThroughput = 0;
+			for(int eventLoopCount: eventLoopCounts){
+				LoadGenerator loadGenerator = runBenchmark(eventLoopCount, serverDirectory, clientCount, durationSeconds);
+				if(baseThroughput==0)
+					baseThroughput = loadGenerator.getThroughput();
+
+				LatencyHistogram histogram = loadGenerator.getHistogram();
+				System.out.println(String.format("%-11d %8d %10d %12.1f %8.2f %10.2f %10.2f %8d",
+						eventLoopCount, clientCount, histogram.getTotalCount(), loadGenerator.getThroughput(),
+						baseThroughput>0 ? loadGenerator.getThroughput()/baseThroughput : 0,
+						histogram.getValueAtPercentile(50)/1e6, histogram.getValueAtPercentile(99)/1e6,
+						loadGenerator.getErrors()));
+			}
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs the benchmark for one number of event loops.
+	 *
+	 * @param eventLoopCount the number of event loops of the sharded server
+	 * @param serverDirectory the server directory
+	 * @param clientCount the number of concurrent Keep-Alive clients
+	 * @param durationSeconds the measured duration
+	 * @return the load generator, holding the results
+	 * @throws Exception Signals that the server could not be started
+	 */
+	public static LoadGenerator runBenchmark(int eventLoopCount, String serverDirectory, int clientCount,
+			int durationSeconds) throws Exception{
+
+		//Keep the messages of the server from flooding and slowing down the report
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			@Override
+			public void write(int b){
+			}
+		}));
+
+		ForkJoinPool fileReadPool = new ForkJoinPool(Math.max(2, eventLoopCount / 2));
+		try{
+			MultithreadedServer requestHandler = new MultithreadedServer(serverDirectory);
+			SelectorServer server = new SelectorServer(BENCHMARK_PORT, requestHandler, fileReadPool, eventLoopCount, true);
+			new Thread(server).start();
+
+			LoadGenerator loadGenerator = new LoadGenerator("localhost", BENCHMARK_PORT, clientCount);
+			loadGenerator.addRequest(BENCHMARK_FILE, 1);
+			loadGenerator.run(durationSeconds, 0);
+			server.stop();
+
+			//Let the server release the port and finish the ended connections before the next run
+			Thread.sleep(1000);
+			return loadGenerator;
+		}
+		finally{
+			fileReadPool.shutdown();
+			System.setOut(console);
+		}
+	}
+}
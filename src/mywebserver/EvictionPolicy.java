@@ -0,0 +1,56 @@
+package mywebserver;
+
+/**
+ * The Interface EvictionPolicy decides which entries a size-bounded cache keeps.
+ * The cache reports every access, insertion and removal of its keys, and asks the policy
+ * for a victim whenever it needs room for a new entry. Implementations are not thread-safe,
+ * the cache calls them while holding its lock.
+ *
+ * @param <K> the type of the cache keys
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * Records a cache hit of the key.
+	 *
+	 * @param key the key
+	 */
+	void recordHit(K key);
+
+	/**
+	 * Records a cache miss of the key.
+	 *
+	 * @param key the key
+	 */
+	void recordMiss(K key);
+
+	/**
+	 * Records that the key was added to the cache.
+	 *
+	 * @param key the key
+	 */
+	void recordInsertion(K key);
+
+	/**
+	 * Records that the key was removed from the cache.
+	 *
+	 * @param key the key
+	 */
+	void recordRemoval(K key);
+
+	/**
+	 * Selects the key to be evicted next.
+	 *
+	 * @return the key of the victim, or null if the cache is empty
+	 */
+	K selectVictim();
+
+	/**
+	 * Decides if a new entry is worth evicting the victim.
+	 *
+	 * @param candidate the key of the new entry
+	 * @param victim the key of the entry which would be evicted
+	 * @return true, if the candidate should replace the victim
+	 */
+	boolean admit(K candidate, K victim);
+}
@@ -0,0 +1,97 @@
+package mywebserver;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Class ExecutorModeBenchmark compares the connection executor modes of the MultithreadedServer.
+ * For every mode and client count, a server is started in-process, and each client keeps one
+ * Keep-Alive connection of the LoadGenerator open and sends requests back to back for the
+ * measured duration.
+ * The throughput and the latency percentiles of the completed requests are printed.
+ */
+public class ExecutorModeBenchmark {
+
+	//Port used by the benchmarked servers
+	private static final int BENCHMARK_PORT = 9090;
+
+	//File requested by the clients
+	private static final String BENCHMARK_FILE = "/SampleHTMLFile1.html";
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments: <serverDirectory> [durationSeconds] [clientCount...]
+	 */
+	public static void main(String[] args) {
+		try{
+			if(args.length<1){
+				System.out.println("Run benchmark using: java ExecutorModeBenchmark <serverDirectory> "
+						+ "[durationSeconds] [clientCount...]");
+				return;
+			}
+			String serverDirectory = args[0];
+			int durationSeconds = args.length>1 ? Integer.parseInt(args[1]) : 10;
+			List<Integer> clientCounts = new ArrayList<Integer>();
+			for(int i=2; i<args.length; i++){
+				clientCounts.add(Integer.parseInt(args[i]));
+			}
+			if(clientCounts.isEmpty())
+				clientCounts.addAll(Arrays.asList(1000, 10000));
+
+			System.out.println(String.format("%-8s %8s %10s %12s %10s %10s %10s %8s",
+					"mode", "clients", "requests", "requests/s", "p50 ms", "p99 ms", "p999 ms", "errors"));
+			for(int clientCount: clientCounts){
+				for(String serverMode: new String[]{"pool", "virtual"}){
+					runBenchmark(serverMode, serverDirectory, clientCount, durationSeconds);
+				}
+			}
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs the benchmark for one server mode and client count.
+	 *
+	 * @param serverMode the server mode
+	 * @param serverDirectory the server directory
+	 * @param clientCount the number of concurrent Keep-Alive clients
+	 * @param durationSeconds the measured duration
+	 * @throws Exception Signals that the server could not be started
+	 */
+	public static void runBenchmark(String serverMode, String serverDirectory, int clientCount,
+			int durationSeconds) throws Exception{
+
+		//The server logs every request; keep it from flooding and slowing down the report
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			@Override
+			public void write(int b){
+			}
+		}));
+
+		MultithreadedServer server = new MultithreadedServer(BENCHMARK_PORT, serverDirectory,
+				MultithreadedServer.newConnectionExecutor(serverMode));
+		new Thread(server).start();
+
+		LoadGenerator loadGenerator = new LoadGenerator("localhost", BENCHMARK_PORT, clientCount);
+		loadGenerator.addRequest(BENCHMARK_FILE, 1);
+		loadGenerator.run(durationSeconds, 0);
+		server.stop();
+
+		//Let the server release the port and finish the ended connections before the next run
+		Thread.sleep(1000);
+		System.setOut(console);
+
+		LatencyHistogram histogram = loadGenerator.getHistogram();
+		System.out.println(String.format("%-8s %8d %10d %12.1f %10.2f %10.2f %10.2f %8d",
+				serverMode, clientCount, histogram.getTotalCount(), loadGenerator.getThroughput(),
+				histogram.getValueAtPercentile(50)/1e6, histogram.getValueAtPercentile(99)/1e6,
+				histogram.getValueAtPercentile(99.9)/1e6, loadGenerator.getErrors()));
+	}
+}
@@ -0,0 +1,360 @@
+package mywebserver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Class FileContentCache keeps the contents of requested files in memory, keyed by their
+ * resolved path. The cache is bounded by the total number of cached bytes, and an EvictionPolicy
+ * decides which files are kept. A cached file is only served while its modification time and
+ * size are unchanged, otherwise it is read again from the disk.
+ * A hit is served without a lock: the cached files are looked up in a concurrent map, and the
+ * hit is recorded in a HitBuffer, which is replayed to the eviction policy under the lock of the
+ * cache before it next adds or removes a file, or when a buffer stripe fills up and the lock is
+ * free. Only misses wait for the lock.
+ * The returned contents are shared between requests and must not be modified.
+ */
+public class FileContentCache {
+
+	//Maximum number of bytes of all cached files
+	private final long maxBytes;
+
+	//Files larger than this are read from the disk on every request
+	private final long maxEntryBytes;
+
+	//Policy deciding which files are kept
+	private final EvictionPolicy<String> evictionPolicy;
+
+	//Lock guarding the eviction policy and the changes of the cached files
+	private final ReentrantLock lock = new ReentrantLock();
+
+	//Cached files by resolved path, changed only under the lock of the cache
+	private final Map<String, CachedFile> cachedFiles = new ConcurrentHashMap<String, CachedFile>();
+
+	//Hits served without the lock, which the eviction policy has not seen yet
+	private final HitBuffer<String> hitBuffer = new HitBuffer<String>();
+
+	//Number of bytes of all cached files
+	private long cachedBytes = 0;
+
+	//Counters for sizing the cache
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder invalidationCount = new LongAdder();
+
+	/**
+	 * Instantiates a new FileContentCache.
+	 *
+	 * @param maxBytes the maximum number of bytes of all cached files
+	 * @param evictionPolicy the policy deciding which files are kept
+	 */
+	public FileContentCache(long maxBytes, EvictionPolicy<String> evictionPolicy) {
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = maxBytes / 4;
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * Creates the eviction policy with the given name.
+	 *
+	 * @param policyName the policy name, lru or tinylfu
+	 * @return the eviction policy
+	 */
+	public static EvictionPolicy<String> newEvictionPolicy(String policyName) {
+		if(policyName.equalsIgnoreCase("lru"))
+			return new LruEvictionPolicy<String>();
+		if(policyName.equalsIgnoreCase("tinylfu"))
+			return new FrequencyEvictionPolicy<String>(10000);
+		throw new IllegalArgumentException("Unknown cache eviction policy "+policyName+", use lru or tinylfu.");
+	}
+
+	/**
+	 * Gets the content of the file, from the cache if it is unchanged.
+	 *
+	 * @param file the file
+	 * @return the content of the file, or null if it is not a file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public byte[] getContent(File file) throws IOException {
+		String path = file.getPath();
+
+		//Check if the file exists
+		if(!file.isFile()){
+			invalidate(path);
+			return null;
+		}
+		return getContent(file, file.lastModified(), file.length());
+	}
+
+	/**
+	 * Gets the content of the file, from the cache if it is unchanged, with the size and
+	 * modification time the file was already looked up with.
+	 *
+	 * @param file the file
+	 * @param lastModified the modification time of the file
+	 * @param length the size of the file
+	 * @return the content of the file
+	 * @throws IOException Signals that an I/O exception has occurred, eg. if the file does not exist any more.
+	 */
+	public byte[] getContent(File file, long lastModified, long length) throws IOException {
+		String path = file.getPath();
+		CachedFile cachedFile = cachedFiles.get(path);
+		if(cachedFile!=null && cachedFile.lastModified==lastModified && cachedFile.length==length){
+			hitCount.increment();
+			if(hitBuffer.record(path))
+				tryDrainHits();
+			return cachedFile.content;
+		}
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, cachedFiles);
+			cachedFile = cachedFiles.get(path);
+			if(cachedFile!=null && cachedFile.lastModified==lastModified && cachedFile.length==length){
+				//Another request read the file in the meantime
+				hitCount.increment();
+				evictionPolicy.recordHit(path);
+				return cachedFile.content;
+			}
+			if(cachedFile!=null){
+				//The file was changed after it was cached
+				remove(path);
+				invalidationCount.increment();
+			}
+			missCount.increment();
+			evictionPolicy.recordMiss(path);
+		}
+		finally{
+			lock.unlock();
+		}
+
+		byte[] content = readFile(file, length);
+		put(path, new CachedFile(content, lastModified, length));
+		return content;
+	}
+
+	/**
+	 * Checks if the content of the file is in the cache, without counting a hit or a miss.
+	 *
+	 * @param file the file
+	 * @param lastModified the modification time of the file
+	 * @param length the size of the file
+	 * @return true, if the content of this version of the file is cached
+	 */
+	public boolean contains(File file, long lastModified, long length) {
+		CachedFile cachedFile = cachedFiles.get(file.getPath());
+		return cachedFile!=null && cachedFile.lastModified==lastModified && cachedFile.length==length;
+	}
+
+	/**
+	 * Removes the file from the cache.
+	 *
+	 * @param path the resolved path of the file
+	 */
+	public void invalidate(String path) {
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, cachedFiles);
+			if(remove(path))
+				invalidationCount.increment();
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the file to the cache, if it fits and the eviction policy admits it.
+	 *
+	 * @param path the resolved path of the file
+	 * @param cachedFile the file
+	 */
+	private void put(String path, CachedFile cachedFile) {
+		if(cachedFile.content.length>maxEntryBytes)
+			return;
+		lock.lock();
+		try{
+			if(cachedFiles.containsKey(path))
+				return;
+			hitBuffer.drainTo(evictionPolicy, cachedFiles);
+
+			//Make room for the file
+			while(cachedBytes+cachedFile.content.length>maxBytes){
+				String victim = evictionPolicy.selectVictim();
+				if(victim==null || !evictionPolicy.admit(path, victim))
+					return;
+				remove(victim);
+				evictionCount.increment();
+			}
+			cachedFiles.put(path, cachedFile);
+			cachedBytes += cachedFile.content.length;
+			evictionPolicy.recordInsertion(path);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replays the buffered hits to the eviction policy, unless another thread holds the lock.
+	 */
+	private void tryDrainHits() {
+		if(!lock.tryLock())
+			return;
+		try{
+			hitBuffer.drainTo(evictionPolicy, cachedFiles);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the file from the cache.
+	 *
+	 * @param path the resolved path of the file
+	 * @return true, if the file was cached
+	 */
+	private boolean remove(String path) {
+		CachedFile cachedFile = cachedFiles.remove(path);
+		if(cachedFile==null)
+			return false;
+		cachedBytes -= cachedFile.content.length;
+		evictionPolicy.recordRemoval(path);
+		return true;
+	}
+
+	/**
+	 * Reads the content of the file from the disk.
+	 *
+	 * @param file the file
+	 * @param length the length of the file
+	 * @return the content of the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static byte[] readFile(File file, long length) throws IOException {
+		if(length>Integer.MAX_VALUE)
+			throw new IOException("File is too large: "+file);
+
+		//Initialize a buffer of file length
+		byte[] content = new byte[(int) length];
+		FileInputStream reader = new FileInputStream(file);
+		try{
+			//Read the content of the file into the buffer, up to its end
+			int offset = 0;
+			while(offset<content.length){
+				int bytesRead = reader.read(content, offset, content.length-offset);
+				if(bytesRead==-1)
+					return Arrays.copyOf(content, offset);
+				offset += bytesRead;
+			}
+			return content;
+		}
+		finally{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Gets the number of requests served from the cache.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the number of requests which had to read the file from the disk.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Gets the number of files evicted to make room for other files.
+	 *
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Gets the number of cached files removed because they were changed or deleted.
+	 *
+	 * @return the invalidation count
+	 */
+	public long getInvalidationCount() {
+		return invalidationCount.sum();
+	}
+
+	/**
+	 * Gets the number of bytes of all cached files.
+	 *
+	 * @return the cached bytes
+	 */
+	public long getCachedBytes() {
+		lock.lock();
+		try{
+			return cachedBytes;
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of cached files.
+	 *
+	 * @return the number of cached files
+	 */
+	public int getCachedFileCount() {
+		return cachedFiles.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "File cache: "+getCachedFileCount()+" files, "+getCachedBytes()+"/"+maxBytes+" bytes, "
+				+getHitCount()+" hits, "+getMissCount()+" misses, "+getEvictionCount()+" evictions, "
+				+getInvalidationCount()+" invalidations";
+	}
+
+	/**
+	 * The Class CachedFile holds the content of a file together with the state it was read in.
+	 */
+	static class CachedFile {
+
+		//Content of the file
+		final byte[] content;
+
+		//Modification time of the file when it was read
+		final long lastModified;
+
+		//Size of the file when it was read
+		final long length;
+
+		/**
+		 * Instantiates a new cached file.
+		 *
+		 * @param content the content
+		 * @param lastModified the modification time
+		 * @param length the size
+		 */
+		CachedFile(byte[] content, long lastModified, long length) {
+			this.content = content;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,598 @@
+package mywebserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class FileMetadataCache resolves the requested paths to the files of the server directory,
+ * and keeps what is known about each file: if it exists, its size, modification time and content
+ * type, and its precompressed gzip file. The metadata is keyed by the normalized path, so the
+ * variants of a path, such as its query strings, share one entry; a repeated request of the same
+ * file is a scan of its path and a single hash lookup, without building the path of the file or
+ * asking the file system. Paths of missing files are cached as well, so repeated requests of a
+ * missing file cost the same as those of an existing one.
+ *
+ * The metadata of a path is used for a limited time, after which the file is looked up again,
+ * unless the files are watched for changes, which invalidate the metadata of the changed files.
+ * The lookups are free of locks. When the cache is full, an entry is evicted without regard to
+ * its use, as entries are cheap to recreate; the entries of missing files are limited to half
+ * of the cache, so requests of random paths cannot evict the files which are served.
+ */
+public class FileMetadataCache {
+
+	//Content types by file extension, files with another extension are sent as text/html
+	private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+
+	//Static block to register the content types
+	static{
+		String[] contentTypes = {
+				"html", "text/html", "htm", "text/html", "css", "text/css", "js", "application/javascript",
+				"json", "application/json", "txt", "text/plain", "xml", "application/xml",
+				"svg", "image/svg+xml", "png", "image/png", "jpg", "image/jpeg", "jpeg", "image/jpeg",
+				"gif", "image/gif", "ico", "image/x-icon", "pdf", "application/pdf",
+				"mp4", "video/mp4", "webm", "video/webm", "mp3", "audio/mpeg"};
+		for(int i=0; i<contentTypes.length; i+=2){
+			CONTENT_TYPES.put(contentTypes[i], contentTypes[i+1]);
+		}
+	}
+
+	//Path of the server directory, which the normalized paths are appended to
+	private final String rootPath;
+
+	//Maximum number of cached paths, 0 disables the cache
+	private final int maxEntries;
+
+	//Time the metadata of a path is used before the file is looked up again, in nanoseconds
+	private volatile long timeToLive;
+
+	//Metadata by normalized path
+	private final Map<String, FileMetadata> entries = new ConcurrentHashMap<String, FileMetadata>();
+
+	//Number of cached paths of missing files
+	private final AtomicInteger missingFileCount = new AtomicInteger();
+
+	//Counters for sizing the cache
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder invalidationCount = new LongAdder();
+
+	/**
+	 * Instantiates a new FileMetadataCache.
+	 *
+	 * @param rootPath the path of the server directory
+	 * @param maxEntries the maximum number of cached paths, 0 disables the cache
+	 * @param timeToLiveMillis the time the metadata of a path is used before the file is looked up again
+	 */
+	public FileMetadataCache(String rootPath, int maxEntries, long timeToLiveMillis) {
+		this.rootPath = rootPath;
+		this.maxEntries = maxEntries;
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+	}
+
+	/**
+	 * Gets the metadata of the file of a requested path.
+	 *
+	 * @param requestPath the path of the request line, eg. /docs/index.html?lang=en
+	 * @return the metadata
+	 */
+	public FileMetadata get(String requestPath) {
+		long now = System.nanoTime();
+		String path = normalizePath(requestPath);
+		if(path==null)
+			return invalidPath(now);
+		FileMetadata metadata = entries.get(path);
+		if(metadata!=null && now - metadata.loadTime < timeToLive){
+			hitCount.increment();
+			return metadata;
+		}
+		missCount.increment();
+		metadata = load(path, now);
+		if(maxEntries>0)
+			put(path, metadata);
+		return metadata;
+	}
+
+	/**
+	 * Gets the cached metadata of the file of a requested path, without looking the file up.
+	 *
+	 * @param requestPath the path of the request line
+	 * @return the metadata, or null if it is not cached or has expired
+	 */
+	public FileMetadata peek(String requestPath) {
+		String path = normalizePath(requestPath);
+		if(path==null)
+			return invalidPath(System.nanoTime());
+		FileMetadata metadata = entries.get(path);
+		return metadata!=null && System.nanoTime() - metadata.loadTime < timeToLive ? metadata : null;
+	}
+
+	/**
+	 * Removes the metadata of a requested path, so that its file is looked up again.
+	 *
+	 * @param requestPath the path of the request line
+	 */
+	public void invalidate(String requestPath) {
+		String path = normalizePath(requestPath);
+		FileMetadata metadata = path!=null ? entries.get(path) : null;
+		if(metadata!=null)
+			remove(path, metadata);
+	}
+
+	/**
+	 * Removes the metadata of the paths of a changed file, so that it is looked up again. The
+	 * paths of the files in a changed directory, and of the file of a changed gzip file, are
+	 * removed as well.
+	 *
+	 * @param path the path of the changed file or directory
+	 */
+	public void invalidateFile(String path) {
+		String directoryPrefix = path + File.separator;
+		for(Map.Entry<String, FileMetadata> entry: entries.entrySet()){
+			File file = entry.getValue().file;
+			if(file==null)
+				continue;
+			String filePath = file.getPath();
+			if(filePath.equals(path) || filePath.startsWith(directoryPrefix) || path.equals(filePath+".gz"))
+				remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Removes the metadata of all paths, eg. when changes of the files may have been missed.
+	 */
+	public void invalidateAll() {
+		for(Map.Entry<String, FileMetadata> entry: entries.entrySet()){
+			remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Looks up the files of all cached paths again, and removes the metadata of those which
+	 * changed. This finds the changes of the files which were missed by the file watcher.
+	 *
+	 * @return the changed files
+	 */
+	public List<File> revalidate() {
+		List<File> changedFiles = new ArrayList<File>();
+		long now = System.nanoTime();
+		for(Map.Entry<String, FileMetadata> entry: entries.entrySet()){
+			FileMetadata metadata = entry.getValue();
+			if(isChanged(metadata, load(entry.getKey(), now)) && remove(entry.getKey(), metadata) && metadata.file!=null)
+				changedFiles.add(metadata.file);
+		}
+		return changedFiles;
+	}
+
+	/**
+	 * Checks if a file changed between two lookups.
+	 *
+	 * @param metadata the metadata of the earlier lookup
+	 * @param current the metadata of the later lookup
+	 * @return true, if the file or its precompressed file was created, changed or deleted
+	 */
+	private static boolean isChanged(FileMetadata metadata, FileMetadata current) {
+		if(metadata.exists!=current.exists || metadata.length!=current.length || metadata.lastModified!=current.lastModified)
+			return true;
+		if((metadata.precompressed==null)!=(current.precompressed==null))
+			return true;
+		return metadata.precompressed!=null && isChanged(metadata.precompressed, current.precompressed);
+	}
+
+	/**
+	 * Removes the metadata of a path, if it was not replaced in the meantime.
+	 *
+	 * @param path the normalized path
+	 * @param metadata the metadata
+	 * @return true, if the metadata was removed
+	 */
+	private boolean remove(String path, FileMetadata metadata) {
+		if(!entries.remove(path, metadata))
+			return false;
+		if(!metadata.exists)
+			missingFileCount.decrementAndGet();
+		invalidationCount.increment();
+		return true;
+	}
+
+	/**
+	 * Sets the time the metadata of a path is used before the file is looked up again.
+	 *
+	 * @param timeToLiveMillis the time in milliseconds, Long.MAX_VALUE to look up the files only when they change
+	 */
+	public void setTimeToLive(long timeToLiveMillis) {
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+	}
+
+	/**
+	 * Adds the metadata of a path, evicting another path if the cache is full.
+	 *
+	 * @param path the normalized path
+	 * @param metadata the metadata
+	 */
+	private void put(String path, FileMetadata metadata) {
+		if(!metadata.exists){
+			if(missingFileCount.incrementAndGet()>maxEntries/2){
+				missingFileCount.decrementAndGet();
+				FileMetadata previous = entries.remove(path);
+				if(previous!=null && !previous.exists)
+					missingFileCount.decrementAndGet();
+				return;
+			}
+		}
+		FileMetadata previous = entries.put(path, metadata);
+		if(previous!=null){
+			if(!previous.exists)
+				missingFileCount.decrementAndGet();
+			return;
+		}
+
+		//Evict other paths while the cache is full
+		Iterator<Map.Entry<String, FileMetadata>> iterator = entries.entrySet().iterator();
+		while(entries.size()>maxEntries && iterator.hasNext()){
+			Map.Entry<String, FileMetadata> entry = iterator.next();
+			if(entry.getKey().equals(path))
+				continue;
+			if(entries.remove(entry.getKey(), entry.getValue())){
+				if(!entry.getValue().exists)
+					missingFileCount.decrementAndGet();
+				evictionCount.increment();
+			}
+		}
+	}
+
+	/**
+	 * Creates the metadata of an invalid path, which is not cached.
+	 *
+	 * @param now the current time in nanoseconds
+	 * @return the metadata, which tells the file does not exist
+	 */
+	private static FileMetadata invalidPath(long now) {
+		return new FileMetadata(null, false, 0, 0, null, null, null, now);
+	}
+
+	/**
+	 * Looks up the file of a normalized path in the file system.
+	 *
+	 * @param path the normalized path
+	 * @param now the current time in nanoseconds
+	 * @return the metadata
+	 */
+	private FileMetadata load(String path, long now) {
+		return load(new File(rootPath + path), path, now);
+	}
+
+	/**
+	 * Looks up a file in the file system.
+	 *
+	 * @param file the file
+	 * @param path the normalized path of the file
+	 * @param now the current time in nanoseconds
+	 * @return the metadata
+	 */
+	private FileMetadata load(File file, String path, long now) {
+		FileMetadata metadata = readMetadata(file, getContentType(path), null, now);
+		if(!metadata.exists)
+			return metadata;
+
+		//The gzip file next to the file is sent instead of it, if it is not older
+		FileMetadata precompressed = readMetadata(new File(file.getPath()+".gz"), metadata.contentType,
+				ContentEncoding.GZIP, now);
+		if(!precompressed.exists || precompressed.lastModified<metadata.lastModified)
+			return metadata;
+		return new FileMetadata(metadata, precompressed);
+	}
+
+	/**
+	 * Looks up a file of the server directory found on the disk, without caching its metadata.
+	 * Its path is taken as it is, not decoded like a requested path, so a file named eg.
+	 * 100%.html is looked up itself.
+	 *
+	 * @param file the file
+	 * @param path the path of the file in the server directory, eg. /subDir/100%.html
+	 * @return the metadata
+	 */
+	public FileMetadata lookUp(File file, String path) {
+		return load(file, path, System.nanoTime());
+	}
+
+	/**
+	 * Adds the metadata of a file which was looked up in advance, if the cache is not full and
+	 * its path is not cached yet. No other path is evicted for it.
+	 *
+	 * @param path the path of the file in the server directory, which is its normalized path
+	 * @param metadata the metadata
+	 * @return true, if the metadata was added
+	 */
+	public boolean preload(String path, FileMetadata metadata) {
+		if(entries.size()>=maxEntries || (!metadata.exists && missingFileCount.get()>=maxEntries/2))
+			return false;
+		if(entries.putIfAbsent(path, metadata)!=null)
+			return false;
+		if(!metadata.exists)
+			missingFileCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Reads the size and modification time of a file, with a single call to the file system.
+	 *
+	 * @param file the file
+	 * @param contentType the content type of the file
+	 * @param contentEncoding the content encoding of the file, or null if it is not compressed
+	 * @param now the current time in nanoseconds
+	 * @return the metadata, which tells the file does not exist if it is not a regular file
+	 */
+	private static FileMetadata readMetadata(File file, String contentType, String contentEncoding, long now) {
+		try{
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			if(attributes.isRegularFile())
+				return new FileMetadata(file, true, attributes.size(), attributes.lastModifiedTime().toMillis(),
+						contentType, contentEncoding, null, now);
+		}
+		catch(IOException e){
+			//The file does not exist, or cannot be accessed
+		}
+		catch(RuntimeException e){
+			//The path is not valid on this file system
+		}
+		return new FileMetadata(file, false, 0, 0, contentType, null, null, now);
+	}
+
+	/**
+	 * Normalizes the path of a request line: the query and fragment are removed, percent-encoded
+	 * characters are decoded as UTF-8, empty and "." segments are removed, and ".." segments
+	 * remove the segment before them. eg. /a/./b/../c%20d.html?x=1 gives /a/c d.html.
+	 *
+	 * @param requestPath the path of the request line
+	 * @return the normalized path, starting with /, or null if it is invalid or leaves the server directory
+	 */
+	public static String normalizePath(String requestPath) {
+		if(isNormal(requestPath))
+			return requestPath;
+		int end = requestPath.length();
+		int query = requestPath.indexOf('?');
+		if(query>=0)
+			end = query;
+		int fragment = requestPath.indexOf('#');
+		if(fragment>=0 && fragment<end)
+			end = fragment;
+		String path = decodePercents(requestPath.substring(0, end));
+		if(path==null || path.indexOf('\0')>=0 || path.indexOf('\\')>=0)
+			return null;
+
+		Deque<String> segments = new ArrayDeque<String>();
+		for(String segment: path.split("/")){
+			if(segment.isEmpty() || segment.equals("."))
+				continue;
+			if(segment.equals("..")){
+				//A path above the server directory is not served
+				if(segments.isEmpty())
+					return null;
+				segments.removeLast();
+				continue;
+			}
+			segments.addLast(segment);
+		}
+		StringBuilder normalizedPath = new StringBuilder(path.length()+1);
+		for(String segment: segments){
+			normalizedPath.append('/').append(segment);
+		}
+		if(normalizedPath.length()==0 || path.endsWith("/"))
+			normalizedPath.append('/');
+		return normalizedPath.toString();
+	}
+
+	/**
+	 * Checks if a path is already normal, which is the case for most requests, so it does not
+	 * have to be taken apart: it starts with /, has no query, fragment, percent-encoded character,
+	 * backslash or NUL, and no empty segment or segment starting with a dot.
+	 *
+	 * @param path the path of the request line
+	 * @return true, if normalizing the path would not change it
+	 */
+	private static boolean isNormal(String path) {
+		if(path.isEmpty() || path.charAt(0)!='/')
+			return false;
+		char previous = 0;
+		for(int i=0; i<path.length(); i++){
+			char c = path.charAt(i);
+			if(c=='?' || c=='#' || c=='%' || c=='\\' || c=='\0')
+				return false;
+			if(previous=='/' && (c=='/' || c=='.'))
+				return false;
+			previous = c;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the percent-encoded characters of a path as UTF-8.
+	 *
+	 * @param path the path
+	 * @return the decoded path, or null if a percent sign is not followed by two hex digits
+	 */
+	private static String decodePercents(String path) {
+		if(path.indexOf('%')<0)
+			return path;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(path.length());
+		for(int i=0; i<path.length(); i++){
+			char c = path.charAt(i);
+			if(c!='%'){
+				//Characters which are not percent-encoded are kept as they are
+				byte[] characterBytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+				bytes.write(characterBytes, 0, characterBytes.length);
+				continue;
+			}
+			if(i+2>=path.length())
+				return null;
+			int high = Character.digit(path.charAt(i+1), 16);
+			int low = Character.digit(path.charAt(i+2), 16);
+			if(high<0 || low<0)
+				return null;
+			bytes.write((high << 4) + low);
+			i += 2;
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets the content type of a file from its extension.
+	 *
+	 * @param path the path of the file
+	 * @return the content type, text/html for unknown extensions
+	 */
+	static String getContentType(String path) {
+		int dot = path.lastIndexOf('.');
+		if(dot<0 || dot<path.lastIndexOf('/'))
+			return "text/html";
+		String contentType = CONTENT_TYPES.get(path.substring(dot+1).toLowerCase());
+		return contentType!=null ? contentType : "text/html";
+	}
+
+	/**
+	 * Gets the number of lookups answered from the cache.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the number of lookups which asked the file system.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Gets the number of paths evicted to make room for other paths.
+	 *
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Gets the number of paths removed because their file changed.
+	 *
+	 * @return the invalidation count
+	 */
+	public long getInvalidationCount() {
+		return invalidationCount.sum();
+	}
+
+	/**
+	 * Gets the number of cached paths.
+	 *
+	 * @return the number of cached paths
+	 */
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "Metadata cache: "+getEntryCount()+"/"+maxEntries+" paths, "+missingFileCount.get()+" missing files, "
+				+getHitCount()+" hits, "+getMissCount()+" misses, "+getEvictionCount()+" evictions, "
+				+getInvalidationCount()+" invalidations";
+	}
+
+	/**
+	 * The Class FileMetadata holds what is known about the file of a requested path at the
+	 * time it was looked up, with its Last-Modified and ETag header values rendered once.
+	 */
+	static class FileMetadata {
+
+		//The file, null if the path is invalid
+		final File file;
+
+		//Check if the file exists and is a regular file
+		final boolean exists;
+
+		//Size of the file
+		final long length;
+
+		//Modification time of the file
+		final long lastModified;
+
+		//Content type of the file
+		final String contentType;
+
+		//Last-Modified header value of the file, null if it does not exist
+		final String lastModifiedValue;
+
+		//Entity tag of the file as it is sent, with its content encoding; null if it does not exist
+		final String entityTag;
+
+		//Metadata of the precompressed gzip file, null if there is none
+		final FileMetadata precompressed;
+
+		//Time the file was looked up, in nanoseconds
+		final long loadTime;
+
+		/**
+		 * Instantiates a new file metadata.
+		 *
+		 * @param file the file
+		 * @param exists true, if the file exists
+		 * @param length the size
+		 * @param lastModified the modification time
+		 * @param contentType the content type
+		 * @param contentEncoding the content encoding of the file, or null if it is not compressed
+		 * @param precompressed the metadata of the precompressed file
+		 * @param loadTime the time the file was looked up
+		 */
+		FileMetadata(File file, boolean exists, long length, long lastModified, String contentType,
+				String contentEncoding, FileMetadata precompressed, long loadTime) {
+			this.file = file;
+			this.exists = exists;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.contentType = contentType;
+			this.lastModifiedValue = exists ? HttpDateClock.format(lastModified) : null;
+			this.entityTag = exists ? MultithreadedServer.createEntityTag(length, lastModified, contentEncoding) : null;
+			this.precompressed = precompressed;
+			this.loadTime = loadTime;
+		}
+
+		/**
+		 * Instantiates a new file metadata of a file with a precompressed file.
+		 *
+		 * @param metadata the metadata of the file
+		 * @param precompressed the metadata of the precompressed file
+		 */
+		FileMetadata(FileMetadata metadata, FileMetadata precompressed) {
+			this.file = metadata.file;
+			this.exists = metadata.exists;
+			this.length = metadata.length;
+			this.lastModified = metadata.lastModified;
+			this.contentType = metadata.contentType;
+			this.lastModifiedValue = metadata.lastModifiedValue;
+			this.entityTag = metadata.entityTag;
+			this.precompressed = precompressed;
+			this.loadTime = metadata.loadTime;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package mywebserver;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The Class FileRegionBody is a response body which is sent straight from a file with
+ * FileChannel.transferTo. When the target is a socket, the operating system copies the bytes
+ * from the page cache to the socket (sendfile), so the content never enters the Java heap.
+ */
+public class FileRegionBody implements ResponseBody {
+
+	//File holding the body
+	private final File file;
+
+	//Position of the first byte of the body in the file
+	private final long position;
+
+	//Number of bytes of the body
+	private final long count;
+
+	//Channel of the file, opened when the body is first written
+	private FileChannel fileChannel = null;
+
+	/**
+	 * Instantiates a new FileRegionBody over the whole file.
+	 *
+	 * @param file the file
+	 * @param length the length of the file
+	 */
+	public FileRegionBody(File file, long length) {
+		this(file, 0, length);
+	}
+
+	/**
+	 * Instantiates a new FileRegionBody over a region of the file.
+	 *
+	 * @param file the file
+	 * @param position the position of the first byte of the region
+	 * @param count the number of bytes of the region
+	 */
+	public FileRegionBody(File file, long position, long count) {
+		this.file = file;
+		this.position = position;
+		this.count = count;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getContentLength()
+	 */
+	public long getContentLength() {
+		return count;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getBuffer()
+	 */
+	public ByteBuffer getBuffer() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#writeTo(java.nio.channels.WritableByteChannel, long)
+	 */
+	public long writeTo(WritableByteChannel channel, long offset) throws IOException {
+		if(fileChannel==null){
+			@SuppressWarnings("resource")
+			FileInputStream in = new FileInputStream(file);
+			fileChannel = in.getChannel();
+		}
+		long bytesWritten = fileChannel.transferTo(position + offset, count - offset, channel);
+
+		//Nothing is transferred past the end of the file, so a truncated file would never complete
+		if(bytesWritten==0 && position + offset >= fileChannel.size())
+			throw new EOFException("File was truncated while it was sent: "+file);
+		return bytesWritten;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getRegion(long, long)
+	 */
+	public ResponseBody getRegion(long position, long count) {
+		return new FileRegionBody(file, this.position + position, count);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#close()
+	 */
+	public void close() {
+		if(fileChannel==null)
+			return;
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+		fileChannel = null;
+	}
+}
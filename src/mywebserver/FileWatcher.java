@@ -0,0 +1,231 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class FileWatcher watches the server directory and all directories below it for created,
+ * changed and deleted files, and invalidates what the server cached about them, so the cached
+ * metadata and content can be used until a file changes instead of looking the file up on each
+ * request. Directories created later are watched as well.
+ *
+ * Watch events can be lost, eg. when too many files change at once or on network file systems.
+ * Lost events drop all cached metadata, and a periodic scan looks up the files of all cached
+ * paths again, so a change which was not reported is still noticed after one scan interval.
+ */
+public class FileWatcher implements Runnable{
+
+	//The server directory
+	private final Path root;
+
+	//Server whose cached files are invalidated
+	private final MultithreadedServer server;
+
+	//Time between the scans of the cached files in nanoseconds, 0 disables the scans
+	private final long scanInterval;
+
+	//Watch service of the file system of the server directory
+	private final WatchService watchService;
+
+	//Watched directories by their watch key
+	private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<WatchKey, Path>();
+
+	//Check if the watcher has to stop
+	private volatile boolean stopped = false;
+
+	//Counters of the changes found
+	private final LongAdder eventCount = new LongAdder();
+	private final LongAdder overflowCount = new LongAdder();
+	private final LongAdder scanCount = new LongAdder();
+	private final LongAdder scannedChangeCount = new LongAdder();
+
+	/**
+	 * Instantiates a new FileWatcher, and registers the directories of the server directory.
+	 *
+	 * @param root the server directory
+	 * @param server the server whose cached files are invalidated
+	 * @param scanIntervalMillis the time between the scans of the cached files, 0 disables the scans
+	 * @throws IOException Signals that an I/O exception has occurred, eg. if the file system cannot be watched.
+	 */
+	public FileWatcher(Path root, MultithreadedServer server, long scanIntervalMillis) throws IOException{
+		this.root = root;
+		this.server = server;
+		this.scanInterval = TimeUnit.MILLISECONDS.toNanos(scanIntervalMillis);
+		this.watchService = root.getFileSystem().newWatchService();
+		registerTree(root);
+	}
+
+	/**
+	 * Starts the watcher thread.
+	 */
+	public void start(){
+		Thread thread = new Thread(this, "file-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the watcher thread.
+	 */
+	public void stop(){
+		stopped = true;
+		try{
+			watchService.close();
+		}
+		catch(IOException e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+		long nextScan = System.nanoTime() + scanInterval;
+		try{
+			while(!stopped){
+				WatchKey key;
+				if(scanInterval>0)
+					key = watchService.poll(Math.max(0, nextScan - System.nanoTime()), TimeUnit.NANOSECONDS);
+				else
+					key = watchService.take();
+				if(key!=null)
+					processEvents(key);
+				if(scanInterval>0 && System.nanoTime() - nextScan>=0){
+					scan();
+					nextScan = System.nanoTime() + scanInterval;
+				}
+			}
+		}
+		catch(InterruptedException e){
+			//The watcher is stopped
+		}
+		catch(ClosedWatchServiceException e){
+			//The watcher is stopped
+		}
+	}
+
+	/**
+	 * Invalidates the files of the events of a watched directory, and watches the directories
+	 * created in it.
+	 *
+	 * @param key the watch key of the directory
+	 */
+	private void processEvents(WatchKey key){
+		Path directory = watchedDirectories.get(key);
+		for(WatchEvent<?> event: key.pollEvents()){
+			if(event.kind()==StandardWatchEventKinds.OVERFLOW){
+				//Events were lost, so nothing cached can be trusted; new directories may be missed too
+				overflowCount.increment();
+				server.invalidateAllFiles();
+				registerTree(root);
+				continue;
+			}
+			if(directory==null)
+				continue;
+			eventCount.increment();
+			Path path = directory.resolve((Path) event.context());
+			server.invalidateFile(path.toFile());
+			if(event.kind()==StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+				registerTree(path);
+		}
+
+		//The key of a deleted directory is not valid any more
+		if(!key.reset())
+			watchedDirectories.remove(key);
+	}
+
+	/**
+	 * Looks up the files of the cached paths again, to find the changes whose events were lost.
+	 */
+	private void scan(){
+		scanCount.increment();
+		scannedChangeCount.add(server.revalidateFiles());
+	}
+
+	/**
+	 * Watches a directory and all directories below it.
+	 *
+	 * @param start the directory
+	 */
+	private void registerTree(Path start){
+		try{
+			Files.walkFileTree(start, new SimpleFileVisitor<Path>(){
+				@Override
+				public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException{
+					WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+					watchedDirectories.put(key, directory);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e){
+					//A directory deleted or not readable while it is walked is not watched
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch(IOException e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Gets the number of watched directories.
+	 *
+	 * @return the number of watched directories
+	 */
+	public int getWatchedDirectoryCount(){
+		return watchedDirectories.size();
+	}
+
+	/**
+	 * Gets the number of created, changed and deleted files reported by the file system.
+	 *
+	 * @return the event count
+	 */
+	public long getEventCount(){
+		return eventCount.sum();
+	}
+
+	/**
+	 * Gets the number of times events were lost.
+	 *
+	 * @return the overflow count
+	 */
+	public long getOverflowCount(){
+		return overflowCount.sum();
+	}
+
+	/**
+	 * Gets the number of changed files found by the scans, whose events were lost.
+	 *
+	 * @return the scanned change count
+	 */
+	public long getScannedChangeCount(){
+		return scannedChangeCount.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return "File watcher: "+getWatchedDirectoryCount()+" directories, "+getEventCount()+" events, "
+				+getOverflowCount()+" overflows, "+scanCount.sum()+" scans, "+getScannedChangeCount()+" changes found by scans";
+	}
+}
@@ -0,0 +1,162 @@
+package mywebserver;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The Class FrequencyEvictionPolicy is a TinyLFU style policy. It estimates how often every key
+ * was requested recently, including keys which are not cached, with a count-min sketch.
+ * The least recently used entry is the eviction candidate, but a new entry only replaces it
+ * if the new key was requested more often. This keeps the hot set cached when a scan over
+ * many rarely requested files passes through the cache.
+ *
+ * @param <K> the type of the cache keys
+ */
+public class FrequencyEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	//Number of rows of the count-min sketch, each with its own hash function
+	private static final int SKETCH_DEPTH = 4;
+
+	//Largest value of a counter
+	private static final int MAX_COUNT = 15;
+
+	//Seeds of the hash functions of the rows
+	private static final int[] SEEDS = {0x97cb3127, 0xb6c0f4c5, 0x5bd1e995, 0x7feb352d};
+
+	//Counters of the count-min sketch
+	private int[][] sketch;
+
+	//Mask turning a hash into a column of the sketch
+	private int columnMask;
+
+	//Number of increments after which all counters are halved, so that old popularity fades
+	private int sampleSize;
+
+	//Number of increments since the counters were last halved
+	private int additions = 0;
+
+	//Keys of the cached entries, from the least to the most recently used
+	private Set<K> recencyOrder = new LinkedHashSet<K>();
+
+	/**
+	 * Instantiates a new FrequencyEvictionPolicy.
+	 *
+	 * @param expectedKeys the expected number of distinct keys which are requested
+	 */
+	public FrequencyEvictionPolicy(int expectedKeys) {
+		int width = Integer.highestOneBit(Math.max(16, expectedKeys) - 1) << 1;
+		this.sketch = new int[SKETCH_DEPTH][width];
+		this.columnMask = width - 1;
+		this.sampleSize = 10 * width;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordHit(java.lang.Object)
+	 */
+	public void recordHit(K key) {
+		increment(key);
+		recencyOrder.remove(key);
+		recencyOrder.add(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordMiss(java.lang.Object)
+	 */
+	public void recordMiss(K key) {
+		increment(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordInsertion(java.lang.Object)
+	 */
+	public void recordInsertion(K key) {
+		recencyOrder.add(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordRemoval(java.lang.Object)
+	 */
+	public void recordRemoval(K key) {
+		recencyOrder.remove(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#selectVictim()
+	 */
+	public K selectVictim() {
+		return recencyOrder.isEmpty() ? null : recencyOrder.iterator().next();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#admit(java.lang.Object, java.lang.Object)
+	 */
+	public boolean admit(K candidate, K victim) {
+		return frequency(candidate) > frequency(victim);
+	}
+
+	/**
+	 * Estimates how often the key was requested recently.
+	 *
+	 * @param key the key
+	 * @return the estimated frequency
+	 */
+	public int frequency(K key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for(int row=0; row<SKETCH_DEPTH; row++){
+			frequency = Math.min(frequency, sketch[row][column(hash, row)]);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increments the counters of the key.
+	 *
+	 * @param key the key
+	 */
+	private void increment(K key) {
+		int hash = spread(key.hashCode());
+		for(int row=0; row<SKETCH_DEPTH; row++){
+			int column = column(hash, row);
+			if(sketch[row][column]<MAX_COUNT)
+				sketch[row][column]++;
+		}
+		if(++additions==sampleSize)
+			halveCounters();
+	}
+
+	/**
+	 * Halves all counters, so that keys which are no longer requested lose their popularity.
+	 */
+	private void halveCounters() {
+		for(int[] row: sketch){
+			for(int column=0; column<row.length; column++){
+				row[column] >>>= 1;
+			}
+		}
+		additions /= 2;
+	}
+
+	/**
+	 * Gets the column of the hash in a row of the sketch.
+	 *
+	 * @param hash the spread hash of the key
+	 * @param row the row
+	 * @return the column
+	 */
+	private int column(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & columnMask;
+	}
+
+	/**
+	 * Spreads the bits of a hash code.
+	 *
+	 * @param hashCode the hash code
+	 * @return the spread hash
+	 */
+	private static int spread(int hashCode) {
+		int h = hashCode * 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+}
@@ -0,0 +1,124 @@
+package mywebserver;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The Class HitBuffer collects the cache hits which are served without taking the lock of the
+ * cache, so that they can be replayed to its EvictionPolicy, which is not thread-safe, the next
+ * time the lock is taken. The policy only decides anything when the cache needs room, and the
+ * cache drains the buffer before that. A thread which finds its stripe full also drains the
+ * buffer, if it gets the lock of the cache without waiting, so the policy keeps up with the
+ * hits while nothing is added to the cache.
+ *
+ * The buffer is split into stripes, and a thread records into the stripe of its thread id, so
+ * the event loops of the sharded mode each write their own stripe instead of all updating the
+ * same memory. A stripe is a small ring which is claimed with a single compare-and-set. Hits
+ * which find their stripe full or contended are dropped: the policy only needs a sample of the
+ * hits to tell the popular keys from the others.
+ *
+ * @param <K> the type of the cache keys
+ */
+public class HitBuffer<K> {
+
+	//Number of hits a stripe holds, a power of two
+	private static final int STRIPE_SIZE = 64;
+
+	//Stripes of the buffer, a power of two
+	private final Stripe<K>[] stripes;
+
+	/**
+	 * Instantiates a new HitBuffer with a stripe per core, rounded up to a power of two.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public HitBuffer(){
+		int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+		this.stripes = new Stripe[stripeCount];
+		for(int i=0; i<stripeCount; i++){
+			this.stripes[i] = new Stripe<K>();
+		}
+	}
+
+	/**
+	 * Records a hit of the key, unless the stripe of the current thread is full or contended.
+	 *
+	 * @param key the key
+	 * @return true, if the stripe is full and the buffer should be drained
+	 */
+	public boolean record(K key){
+		return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)].offer(key);
+	}
+
+	/**
+	 * Replays the recorded hits of the keys which are still cached to the eviction policy. The
+	 * caller holds the lock of the cache.
+	 *
+	 * @param evictionPolicy the eviction policy of the cache
+	 * @param entries the entries of the cache
+	 */
+	public void drainTo(EvictionPolicy<K> evictionPolicy, Map<K, ?> entries){
+		for(Stripe<K> stripe: stripes){
+			stripe.drainTo(evictionPolicy, entries);
+		}
+	}
+
+	/**
+	 * The Class Stripe is a bounded ring of hits, written by any thread and read under the lock of the cache.
+	 *
+	 * @param <K> the type of the cache keys
+	 */
+	private static class Stripe<K>{
+
+		//Recorded keys, null where a slot was read or not written yet
+		private final AtomicReferenceArray<K> slots = new AtomicReferenceArray<K>(STRIPE_SIZE);
+
+		//Number of slots claimed by the writers
+		private final AtomicLong writeCount = new AtomicLong();
+
+		//Number of slots read, only changed under the lock of the cache
+		private volatile long readCount = 0;
+
+		/**
+		 * Records a key, unless the ring is full or another thread claimed the same slot.
+		 *
+		 * @param key the key
+		 * @return true, if the ring is full
+		 */
+		boolean offer(K key){
+			long writeIndex = writeCount.get();
+			long size = writeIndex - readCount;
+			if(size>=STRIPE_SIZE)
+				return true;
+			if(!writeCount.compareAndSet(writeIndex, writeIndex + 1))
+				return false;
+			slots.lazySet((int) writeIndex & (STRIPE_SIZE - 1), key);
+			return size + 1>=STRIPE_SIZE;
+		}
+
+		/**
+		 * Replays the recorded keys which are still cached, up to the first slot which was
+		 * claimed but is not written yet.
+		 *
+		 * @param evictionPolicy the eviction policy of the cache
+		 * @param entries the entries of the cache
+		 */
+		void drainTo(EvictionPolicy<K> evictionPolicy, Map<K, ?> entries){
+			long readIndex = readCount;
+			long writeIndex = writeCount.get();
+			while(readIndex<writeIndex){
+				int slot = (int) readIndex & (STRIPE_SIZE - 1);
+				K key = slots.get(slot);
+				if(key==null)
+					break;
+				slots.lazySet(slot, null);
+
+				//A key which was removed since its hit must not be added to the policy again
+				if(entries.containsKey(key))
+					evictionPolicy.recordHit(key);
+				readIndex++;
+			}
+			readCount = readIndex;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package mywebserver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * The Class HttpDateClock provides the value of the Date header field in the RFC 1123 format
+ * required by HTTP/1.1, eg. "Sun, 06 Nov 1994 08:49:37 GMT". The value only changes once per
+ * second, so it is formatted at most once per second and shared by all responses. Readers do
+ * not lock: the first reader in a new second formats the value and publishes it.
+ */
+public final class HttpDateClock {
+
+	//Formatter of the RFC 1123 date format, which is thread-safe
+	private static final DateTimeFormatter RFC_1123_FORMAT =
+			DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	//Date value of the current second
+	private static volatile CachedDate currentDate = new CachedDate(System.currentTimeMillis() / 1000);
+
+	/**
+	 * Instantiates a new HttpDateClock. Only the static methods are used.
+	 */
+	private HttpDateClock() {
+	}
+
+	/**
+	 * Gets the Date header value of the current second.
+	 *
+	 * @return the date in the RFC 1123 format
+	 */
+	public static String currentDate() {
+		return current().value;
+	}
+
+	/**
+	 * Gets the ASCII bytes of the Date header value of the current second.
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @return the bytes of the date in the RFC 1123 format
+	 */
+	public static byte[] currentDateBytes() {
+		return current().bytes;
+	}
+
+	/**
+	 * Formats a point in time in the RFC 1123 format, eg. for the Last-Modified header.
+	 *
+	 * @param epochMillis the milliseconds since the epoch
+	 * @return the date in the RFC 1123 format
+	 */
+	public static String format(long epochMillis) {
+		return RFC_1123_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+	}
+
+	/**
+	 * Parses a date in the RFC 1123 format, eg. of the If-Modified-Since header.
+	 *
+	 * @param date the date
+	 * @return the milliseconds since the epoch, or -1 if the date is invalid
+	 */
+	public static long parse(String date) {
+		try{
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch(DateTimeParseException e){
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets the cached date of the current second, formatting a new one when the second changed.
+	 *
+	 * @return the cached date
+	 */
+	private static CachedDate current() {
+		long epochSecond = System.currentTimeMillis() / 1000;
+		CachedDate date = currentDate;
+		if(date.epochSecond!=epochSecond){
+			//Racing threads format the same value, so the last one to publish it does no harm
+			date = new CachedDate(epochSecond);
+			currentDate = date;
+		}
+		return date;
+	}
+
+	/**
+	 * The Class CachedDate is the immutable Date header value of one second.
+	 */
+	private static final class CachedDate {
+
+		//Second since the epoch which the value is for
+		final long epochSecond;
+
+		//The value in the RFC 1123 format
+		final String value;
+
+		//ASCII bytes of the value
+		final byte[] bytes;
+
+		/**
+		 * Instantiates a new cached date.
+		 *
+		 * @param epochSecond the second since the epoch
+		 */
+		CachedDate(long epochSecond) {
+			this.epochSecond = epochSecond;
+			this.value = format(epochSecond * 1000);
+			this.bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+}
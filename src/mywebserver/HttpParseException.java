@@ -0,0 +1,44 @@
+package mywebserver;
+
+import java.io.IOException;
+
+/**
+ * The Class HttpParseException signals that the bytes received from the Client
+ * do not form a valid HTTP/1.1 request.
+ */
+public class HttpParseException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	//Status code the request is answered with
+	private final int statusCode;
+
+	/**
+	 * Instantiates a new HttpParseException, for a request answered with 400 Bad Request.
+	 *
+	 * @param message the reason why the request is invalid
+	 */
+	public HttpParseException(String message) {
+		this(message, 400);
+	}
+
+	/**
+	 * Instantiates a new HttpParseException.
+	 *
+	 * @param message the reason why the request is invalid
+	 * @param statusCode the status code the request is answered with, eg. 505 for an unsupported HTTP version
+	 */
+	public HttpParseException(String message, int statusCode) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Gets the status code the request is answered with.
+	 *
+	 * @return the status code
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
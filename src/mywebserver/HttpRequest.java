@@ -1,5 +1,6 @@
 package mywebserver;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.regex.Matcher;
@@ -63,13 +64,16 @@ public class HttpRequest {
 		//Initializing optional fields, Currently supports only english
 		this.httpRequestHeader.put("Accept-Language", "en");
 		
-		//Add Connection header field to represent Keep-Alive connections
+		//Add Connection header field to represent Keep-Alive connections, otherwise ask the
+		//server to close the connection, as HTTP/1.1 connections are persistent by default
 		if(keepAlive)
 			this.httpRequestHeader.put("Connection", "Keep-Alive");
+		else
+			this.httpRequestHeader.put("Connection", "close");
 		//Currently supports application/json content type
-		if(requestBody!=null && requestBody.length()!=0){
+		if(requestBody!=null && requestBody.length()!=0 && !requestBody.equalsIgnoreCase("None")){
 			this.requestBody = requestBody;
-			int contentLength = requestBody.length();
+			int contentLength = requestBody.getBytes(StandardCharsets.UTF_8).length;
 			this.httpRequestHeader.put("Content-Length", Integer.toString(contentLength));
 			this.httpRequestHeader.put("Content-Type", "application/json");
 		}
@@ -123,6 +127,41 @@ public class HttpRequest {
 		this.httpRequestHeader = httpRequestHeader;
 	}
 
+	/**
+	 * Gets the value of a header field, ignoring the letter case of its name.
+	 *
+	 * @param name the name of the header field
+	 * @return the value, or null if the header field is not present
+	 */
+	public String getHeader(String name) {
+		String value = httpRequestHeader.get(name);
+		if(value!=null)
+			return value;
+		for(Entry<String, String> headerInfo: httpRequestHeader.entrySet()){
+			if(headerInfo.getKey().equalsIgnoreCase(name))
+				return headerInfo.getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the connection should be kept open after this request. HTTP/1.1 connections
+	 * are persistent unless the Client sends "Connection: close", while HTTP/1.0 connections
+	 * are persistent only with "Connection: Keep-Alive".
+	 *
+	 * @return true, if the connection is of type Keep-Alive
+	 */
+	public boolean isKeepAlive() {
+		String connection = getHeader("Connection");
+		if(connection!=null){
+			if(connection.equalsIgnoreCase("close"))
+				return false;
+			if(connection.equalsIgnoreCase("Keep-Alive"))
+				return true;
+		}
+		return "HTTP/1.1".equals(requestLine.getHttpProtocol());
+	}
+
 
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
@@ -134,31 +173,42 @@ public class HttpRequest {
 		if(!validateClientRequest())
 			return null;
 		else{
-			
-			//Buffer to store the Client request payload
-			StringBuffer requestToServer = new StringBuffer();
-			
-			//Append the request line from the Client's request
-			requestToServer.append(this.getRequestLine().toString()+"\n");
-			
-			//Append the request headers
-			for(Entry<String, String> headerInfo: this.httpRequestHeader.entrySet()){
-				if(headerInfo.getValue()!=null && headerInfo.getValue().length()!=0)
-					requestToServer.append(headerInfo.getKey()+": "+headerInfo.getValue()+"\n");
-			}
-			
-			//Append the request body
-			if(this.getRequestBody()!=null && this.getRequestBody().length()!=0 && 
-					!this.getRequestBody().equalsIgnoreCase("None")){
-				requestToServer.append("\r\n");
-				requestToServer.append(this.getRequestBody());
-			}
-			
-			//Return the String form of the request
-			return requestToServer.toString();
+			return formatRequest();
 		}
 	}
 	
+	/**
+	 * Formats the request in the HTTP/1.1 wire format, without validating it.
+	 *
+	 * @return the String form of the request
+	 */
+	public String formatRequest() {
+		
+		//Buffer to store the Client request payload
+		StringBuilder requestToServer = new StringBuilder();
+		
+		//Append the request line from the Client's request
+		requestToServer.append(this.getRequestLine().toString()).append("\r\n");
+		
+		//Append the request headers
+		for(Entry<String, String> headerInfo: this.httpRequestHeader.entrySet()){
+			if(headerInfo.getValue()!=null && headerInfo.getValue().length()!=0)
+				requestToServer.append(headerInfo.getKey()).append(": ").append(headerInfo.getValue()).append("\r\n");
+		}
+		
+		//Append the empty line which ends the header fields
+		requestToServer.append("\r\n");
+		
+		//Append the request body
+		if(this.getRequestBody()!=null && this.getRequestBody().length()!=0 && 
+				!this.getRequestBody().equalsIgnoreCase("None")){
+			requestToServer.append(this.getRequestBody());
+		}
+		
+		//Return the String form of the request
+		return requestToServer.toString();
+	}
+	
 	/**
 	 * Validate client request.
 	 *
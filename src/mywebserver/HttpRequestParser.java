@@ -0,0 +1,554 @@
+package mywebserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Class HttpRequestParser reads HTTP/1.1 requests directly from the bytes received from
+ * the Client. It is a streaming parser: bytes can be fed in pieces of any size, and the
+ * parser keeps its state between the pieces until a request is complete.
+ * The request line and the header fields are CRLF delimited, and the body is either
+ * given by the Content-Length header or sent with the chunked Transfer-Encoding.
+ * A parser belongs to a single connection and is not thread-safe.
+ */
+public class HttpRequestParser {
+
+	//Maximum length of the request line and of each header field
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	//Maximum number of header fields in a request
+	private static final int MAX_HEADER_COUNT = 100;
+
+	//Maximum length of a request body
+	private static final int MAX_BODY_LENGTH = 1 << 20;
+
+	//Size of the buffer used when reading from an InputStream
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	//Tokens which are recognized without creating a new String for them
+	private static final String[] KNOWN_TOKENS = {
+			"GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS", "HTTP/1.1", "HTTP/1.0"};
+
+	//Header names which are recognized without creating a new String for them
+	private static final String[] KNOWN_HEADER_NAMES = {
+			"Host", "Accept", "Accept-Language", "Accept-Encoding", "Connection",
+			"Content-Length", "Content-Type", "Transfer-Encoding", "User-Agent",
+			"If-None-Match", "If-Modified-Since", "Range"};
+
+	//ASCII bytes of the known tokens and header names
+	private static final byte[][] KNOWN_TOKEN_BYTES = toBytes(KNOWN_TOKENS);
+	private static final byte[][] KNOWN_HEADER_NAME_BYTES = toBytes(KNOWN_HEADER_NAMES);
+
+	/**
+	 * The parts of a request the parser can be in.
+	 */
+	private enum State {
+		REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS
+	}
+
+	//Part of the request which is being parsed
+	private State state = State.REQUEST_LINE;
+
+	//Bytes of the current line received so far, without the line terminator
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+
+	//Request line of the current request
+	private RequestLine requestLine;
+
+	//Header fields of the current request
+	private Map<String, String> headers;
+
+	//Body of the current request
+	private byte[] body;
+	private int bodyLength;
+
+	//Bytes still expected for the body or the current chunk
+	private long remaining;
+
+	//Bytes read from the connection which are not parsed yet
+	private ByteBuffer inputBuffer;
+
+	//Pool the buffer of the bytes read from the connection is acquired from, may be null
+	private BufferPool bufferPool;
+
+	//Pooled buffer of the bytes read from the connection
+	private BufferPool.PooledBuffer pooledInputBuffer;
+
+	/**
+	 * Instantiates a new HttpRequestParser, which only parses the bytes given to it, or reads
+	 * from a connection into a buffer of its own.
+	 */
+	public HttpRequestParser(){
+		this(null);
+	}
+
+	/**
+	 * Instantiates a new HttpRequestParser, which reads from a connection into a buffer acquired
+	 * from the pool. The buffer is given back with release.
+	 *
+	 * @param bufferPool the buffer pool
+	 */
+	public HttpRequestParser(BufferPool bufferPool){
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Parses the bytes of the buffer, from its position up to its limit.
+	 * The parser stops right after the end of a request, so that the bytes of the next
+	 * request stay in the buffer.
+	 *
+	 * @param buffer the buffer with the received bytes
+	 * @return the request, or null if more bytes are needed to complete it
+	 * @throws HttpParseException Signals that the bytes are not a valid HTTP request.
+	 */
+	public HttpRequest parse(ByteBuffer buffer) throws HttpParseException{
+		while(buffer.hasRemaining()){
+			if(state==State.BODY || state==State.CHUNK_DATA){
+				//Copy as much of the body as is available
+				int count = (int) Math.min(remaining, buffer.remaining());
+				buffer.get(body, bodyLength, count);
+				bodyLength += count;
+				remaining -= count;
+				if(remaining==0){
+					if(state==State.BODY)
+						return completeRequest();
+					state = State.CHUNK_END;
+				}
+				continue;
+			}
+
+			byte b = buffer.get();
+			if(b!='\n'){
+				if(lineLength==MAX_LINE_LENGTH)
+					throw new HttpParseException("Request line or header field is too long");
+				if(lineLength==line.length)
+					line = Arrays.copyOf(line, Math.min(line.length*2, MAX_LINE_LENGTH));
+				line[lineLength++] = b;
+				continue;
+			}
+
+			//Strip the CR of the CRLF line terminator
+			if(lineLength>0 && line[lineLength-1]=='\r')
+				lineLength--;
+			HttpRequest request = processLine();
+			lineLength = 0;
+			if(request!=null)
+				return request;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the next request from a blocking channel of a connection. The bytes read after
+	 * the end of the request are kept for the next call.
+	 *
+	 * @param in the channel of the connection
+	 * @return the request, or null if the Client closed the connection before a new request
+	 * @throws IOException Signals that an I/O exception has occurred, or that the request is invalid.
+	 */
+	public HttpRequest readRequest(ReadableByteChannel in) throws IOException{
+		while(true){
+			if(inputBuffer!=null){
+				HttpRequest request = parse(inputBuffer);
+				if(request!=null)
+					return request;
+			}
+
+			//All buffered bytes were parsed, so the buffer can be filled from its start
+			if(!fillInputBuffer(in)){
+				if(state==State.REQUEST_LINE && lineLength==0)
+					return null;
+				throw new EOFException("Connection closed in the middle of a request");
+			}
+		}
+	}
+
+	/**
+	 * Waits until bytes of the next request are available, reading them into the buffer of the
+	 * parser if no bytes are buffered yet. The request itself is read with readRequest.
+	 *
+	 * @param in the channel of the connection
+	 * @return false, if the Client closed the connection before sending any byte
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public boolean awaitInput(ReadableByteChannel in) throws IOException{
+		if(hasBufferedInput())
+			return true;
+		return fillInputBuffer(in);
+	}
+
+	/**
+	 * Reads the next bytes from the channel into the empty input buffer, which is acquired
+	 * with the first read.
+	 *
+	 * @param in the channel of the connection
+	 * @return false, if the Client closed the connection
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean fillInputBuffer(ReadableByteChannel in) throws IOException{
+		if(inputBuffer==null){
+			if(bufferPool!=null){
+				pooledInputBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+				inputBuffer = pooledInputBuffer.getBuffer();
+			}
+			else{
+				inputBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			}
+		}
+		inputBuffer.clear();
+		int bytesRead = in.read(inputBuffer);
+		inputBuffer.flip();
+		return bytesRead!=-1;
+	}
+
+	/**
+	 * Gives the input buffer back to the pool, when the connection is closed.
+	 */
+	public void release(){
+		if(pooledInputBuffer!=null){
+			pooledInputBuffer.release();
+			pooledInputBuffer = null;
+		}
+		inputBuffer = null;
+	}
+
+	/**
+	 * Checks if a part of a request was parsed, and the rest of it is still to be received.
+	 *
+	 * @return true, if the parser is in the middle of a request
+	 */
+	public boolean isReadingRequest(){
+		return state!=State.REQUEST_LINE || lineLength>0;
+	}
+
+	/**
+	 * Parses a further request from the bytes which were already read from the input stream,
+	 * without reading from the input stream. Pipelined requests, which the Client sent without
+	 * waiting for the responses, are received this way.
+	 *
+	 * @return the request, or null if the buffered bytes do not hold a complete request
+	 * @throws HttpParseException Signals that the request is invalid.
+	 */
+	public HttpRequest parseBufferedInput() throws HttpParseException{
+		if(inputBuffer==null)
+			return null;
+		return parse(inputBuffer);
+	}
+
+	/**
+	 * Checks if bytes of a further request were already read from the input stream.
+	 *
+	 * @return true, if there are buffered bytes which are not parsed yet
+	 */
+	public boolean hasBufferedInput(){
+		return inputBuffer!=null && inputBuffer.hasRemaining();
+	}
+
+	/**
+	 * Parses a complete request given as a String.
+	 *
+	 * @param request the request
+	 * @return the parsed request
+	 * @throws HttpParseException Signals that the String is not a complete and valid HTTP request.
+	 */
+	public static HttpRequest parseRequest(String request) throws HttpParseException{
+		HttpRequest httpRequest = new HttpRequestParser().parse(
+				ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8)));
+		if(httpRequest==null)
+			throw new HttpParseException("Incomplete request");
+		return httpRequest;
+	}
+
+	/**
+	 * Processes a complete line of the request.
+	 *
+	 * @return the request, if the line completes it
+	 * @throws HttpParseException Signals that the line is not valid.
+	 */
+	private HttpRequest processLine() throws HttpParseException{
+		switch(state){
+		case REQUEST_LINE:
+			//Empty lines before the request line are ignored
+			if(lineLength>0){
+				requestLine = parseRequestLine();
+				headers = new LinkedHashMap<String, String>();
+				state = State.HEADERS;
+			}
+			return null;
+		case HEADERS:
+			if(lineLength>0){
+				parseHeaderField();
+				return null;
+			}
+			return startBody();
+		case CHUNK_SIZE:
+			remaining = parseChunkSize();
+			if(remaining==0){
+				state = State.TRAILERS;
+				return null;
+			}
+			ensureBodyCapacity(remaining);
+			state = State.CHUNK_DATA;
+			return null;
+		case CHUNK_END:
+			if(lineLength>0)
+				throw new HttpParseException("Missing CRLF after chunk data");
+			state = State.CHUNK_SIZE;
+			return null;
+		case TRAILERS:
+			//Trailer fields are not used by the server
+			if(lineLength>0)
+				return null;
+			return completeRequest();
+		default:
+			throw new IllegalStateException("Unexpected parser state "+state);
+		}
+	}
+
+	/**
+	 * Parses the request line of the format: <HTTP Method> <URL> <protocol>
+	 *
+	 * @return the request line
+	 * @throws HttpParseException Signals that the request line is not valid.
+	 */
+	private RequestLine parseRequestLine() throws HttpParseException{
+		int firstSpace = indexOf((byte) ' ', 0);
+		int secondSpace = firstSpace==-1 ? -1 : indexOf((byte) ' ', firstSpace+1);
+		if(firstSpace<=0 || secondSpace==-1 || secondSpace==firstSpace+1
+				|| secondSpace==lineLength-1 || indexOf((byte) ' ', secondSpace+1)!=-1)
+			throw new HttpParseException("Bad request line: "+asString(0, lineLength));
+
+		String httpMethod = knownOrNew(KNOWN_TOKENS, KNOWN_TOKEN_BYTES, 0, firstSpace, false);
+		String url = asString(firstSpace+1, secondSpace);
+		String httpProtocol = knownOrNew(KNOWN_TOKENS, KNOWN_TOKEN_BYTES, secondSpace+1, lineLength, false);
+		return new RequestLine(httpMethod, url, parseProtocol(httpProtocol));
+	}
+
+	/**
+	 * Checks the protocol of the request line, which has the format HTTP/<major>.<minor>.
+	 *
+	 * @param httpProtocol the protocol of the request line
+	 * @return HTTP/1.0, or HTTP/1.1 for the other HTTP/1.x versions
+	 * @throws HttpParseException Signals that the protocol is not HTTP, with 505 if it is another HTTP version.
+	 */
+	private static String parseProtocol(String httpProtocol) throws HttpParseException{
+		if(httpProtocol.equals("HTTP/1.1") || httpProtocol.equals("HTTP/1.0"))
+			return httpProtocol;
+		if(httpProtocol.length()!=8 || !httpProtocol.startsWith("HTTP/") || !isDigit(httpProtocol.charAt(5))
+				|| httpProtocol.charAt(6)!='.' || !isDigit(httpProtocol.charAt(7)))
+			throw new HttpParseException("Bad protocol: "+httpProtocol);
+		if(httpProtocol.charAt(5)!='1')
+			throw new HttpParseException("Unsupported HTTP version: "+httpProtocol, 505);
+		return "HTTP/1.1";
+	}
+
+	/**
+	 * Checks if a character is an ASCII digit.
+	 *
+	 * @param c the character
+	 * @return true, if it is 0 to 9
+	 */
+	private static boolean isDigit(char c){
+		return c>='0' && c<='9';
+	}
+
+	/**
+	 * Parses a header field of the format: <name>: <value>
+	 *
+	 * @throws HttpParseException Signals that the header field is not valid.
+	 */
+	private void parseHeaderField() throws HttpParseException{
+		if(line[0]==' ' || line[0]=='\t')
+			throw new HttpParseException("Folded header fields are not supported");
+		int colon = indexOf((byte) ':', 0);
+		if(colon<=0)
+			throw new HttpParseException("Bad header field: "+asString(0, lineLength));
+		if(headers.size()==MAX_HEADER_COUNT)
+			throw new HttpParseException("Too many header fields");
+
+		//Skip the optional white space around the value
+		int valueStart = colon+1;
+		int valueEnd = lineLength;
+		while(valueStart<valueEnd && (line[valueStart]==' ' || line[valueStart]=='\t'))
+			valueStart++;
+		while(valueEnd>valueStart && (line[valueEnd-1]==' ' || line[valueEnd-1]=='\t'))
+			valueEnd--;
+
+		String name = knownOrNew(KNOWN_HEADER_NAMES, KNOWN_HEADER_NAME_BYTES, 0, colon, true);
+		String value = asString(valueStart, valueEnd);
+
+		//Repeated header fields are combined into a comma separated list
+		String previousValue = headers.get(name);
+		headers.put(name, previousValue==null ? value : previousValue+", "+value);
+	}
+
+	/**
+	 * Starts reading the body after the header fields, as given by
+	 * the Transfer-Encoding and Content-Length header fields.
+	 *
+	 * @return the request, if it has no body
+	 * @throws HttpParseException Signals that the body length is not valid.
+	 */
+	private HttpRequest startBody() throws HttpParseException{
+		bodyLength = 0;
+		String transferEncoding = headers.get("Transfer-Encoding");
+		if(transferEncoding!=null){
+			if(!transferEncoding.toLowerCase().endsWith("chunked"))
+				throw new HttpParseException("Unsupported Transfer-Encoding: "+transferEncoding);
+			body = new byte[0];
+			state = State.CHUNK_SIZE;
+			return null;
+		}
+
+		String contentLength = headers.get("Content-Length");
+		if(contentLength==null)
+			return completeRequest();
+		try{
+			remaining = Long.parseLong(contentLength);
+		}
+		catch(NumberFormatException e){
+			throw new HttpParseException("Bad Content-Length: "+contentLength);
+		}
+		if(remaining<0)
+			throw new HttpParseException("Bad Content-Length: "+contentLength);
+		if(remaining==0)
+			return completeRequest();
+		body = new byte[0];
+		ensureBodyCapacity(remaining);
+		state = State.BODY;
+		return null;
+	}
+
+	/**
+	 * Parses the size of a chunk, ignoring chunk extensions.
+	 *
+	 * @return the size of the chunk
+	 * @throws HttpParseException Signals that the chunk size is not valid.
+	 */
+	private long parseChunkSize() throws HttpParseException{
+		long size = 0;
+		int digits = 0;
+		int i = 0;
+		for(; i<lineLength; i++){
+			int digit = Character.digit(line[i], 16);
+			if(digit==-1)
+				break;
+			size = size*16 + digit;
+			digits++;
+			if(size>MAX_BODY_LENGTH)
+				throw new HttpParseException("Request body is too large");
+		}
+		if(digits==0)
+			throw new HttpParseException("Missing chunk size");
+
+		//Only whitespace may follow the size, before the chunk extensions or the end of the line
+		while(i<lineLength && (line[i]==' ' || line[i]=='\t'))
+			i++;
+		if(i<lineLength && line[i]!=';')
+			throw new HttpParseException("Bad chunk size: "+asString(0, lineLength));
+		return size;
+	}
+
+	/**
+	 * Makes room in the body for the given number of further bytes.
+	 *
+	 * @param additionalLength the number of further bytes
+	 * @throws HttpParseException Signals that the body gets too large.
+	 */
+	private void ensureBodyCapacity(long additionalLength) throws HttpParseException{
+		long requiredLength = bodyLength + additionalLength;
+		if(requiredLength>MAX_BODY_LENGTH)
+			throw new HttpParseException("Request body is too large");
+		if(requiredLength>body.length)
+			body = Arrays.copyOf(body, (int) requiredLength);
+	}
+
+	/**
+	 * Creates the parsed request and resets the parser for the next request.
+	 *
+	 * @return the request
+	 */
+	private HttpRequest completeRequest(){
+		String requestBody = bodyLength==0 ? null : new String(body, 0, bodyLength, StandardCharsets.UTF_8);
+		HttpRequest request = new HttpRequest(requestLine, headers, requestBody);
+		state = State.REQUEST_LINE;
+		requestLine = null;
+		headers = null;
+		body = null;
+		bodyLength = 0;
+		return request;
+	}
+
+	/**
+	 * Finds a byte in the current line.
+	 *
+	 * @param b the byte to find
+	 * @param fromIndex the index to start from
+	 * @return the index of the byte, or -1 if it is not found
+	 */
+	private int indexOf(byte b, int fromIndex){
+		for(int i=fromIndex; i<lineLength; i++){
+			if(line[i]==b)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets a part of the current line as a String.
+	 *
+	 * @param start the start index
+	 * @param end the end index, exclusive
+	 * @return the String
+	 */
+	private String asString(int start, int end){
+		return new String(line, start, end-start, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Gets a part of the current line as one of the known Strings, or as a new String.
+	 *
+	 * @param known the known Strings
+	 * @param knownBytes the ASCII bytes of the known Strings
+	 * @param start the start index
+	 * @param end the end index, exclusive
+	 * @param ignoreCase whether letter case is ignored when matching
+	 * @return the String
+	 */
+	private String knownOrNew(String[] known, byte[][] knownBytes, int start, int end, boolean ignoreCase){
+		int length = end-start;
+		for(int k=0; k<knownBytes.length; k++){
+			byte[] candidate = knownBytes[k];
+			if(candidate.length!=length)
+				continue;
+			int i = 0;
+			while(i<length && (candidate[i]==line[start+i] ||
+					(ignoreCase && Character.toLowerCase(candidate[i])==Character.toLowerCase(line[start+i]))))
+				i++;
+			if(i==length)
+				return known[k];
+		}
+		return asString(start, end);
+	}
+
+	/**
+	 * Converts the Strings to their ASCII bytes.
+	 *
+	 * @param values the Strings
+	 * @return the bytes of each String
+	 */
+	private static byte[][] toBytes(String[] values){
+		byte[][] bytes = new byte[values.length][];
+		for(int i=0; i<values.length; i++){
+			bytes[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		return bytes;
+	}
+}
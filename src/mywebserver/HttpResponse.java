@@ -1,5 +1,14 @@
 package mywebserver;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -10,6 +19,18 @@ import java.util.Map.Entry;
  */
 public class HttpResponse {
 	
+	//Pre-encoded ASCII bytes of "<name>: " of the common response header fields
+	private static final Map<String, byte[]> HEADER_NAME_BYTES = new HashMap<String, byte[]>();
+	
+	//Static block to pre-encode the common header names
+	static{
+		for(String name: new String[]{"Date", "Content-Type", "Content-Length", "Connection",
+				"Content-Encoding", "Transfer-Encoding", "Last-Modified", "ETag", "Vary",
+				"Accept-Ranges", "Content-Range", "Retry-After"}){
+			HEADER_NAME_BYTES.put(name, (name+": ").getBytes(StandardCharsets.ISO_8859_1));
+		}
+	}
+	
 	//HTTP Response line
 	ResponseLine responseLine;
 	
@@ -19,6 +40,9 @@ public class HttpResponse {
 	//HTTP response body
 	String responseBody;
 	
+	//HTTP response body as bytes, when it is not given as a String
+	ResponseBody body;
+	
 	/**
 	 * Instantiates a new HttpResponse.
 	 *
@@ -32,6 +56,20 @@ public class HttpResponse {
 		this.httpResponseHeader = httpResponseHeader;
 		this.responseBody = responseBody;
 	}
+	
+	/**
+	 * Instantiates a new HttpResponse with a body given as bytes, e.g. the content of a file.
+	 *
+	 * @param responseLine the first line in the response containing 
+	 * 					   the protocol, status of the response
+	 * @param httpResponseHeader the HTTP Response header fields 
+	 * @param body the body of the Server's response
+	 */
+	public HttpResponse(ResponseLine responseLine, Map<String, String> httpResponseHeader, ResponseBody body) {
+		this.responseLine = responseLine;
+		this.httpResponseHeader = httpResponseHeader;
+		this.body = body;
+	}
 
 	/**
 	 * Gets the response line.
@@ -51,6 +89,24 @@ public class HttpResponse {
 		this.responseLine = responseLine;
 	}
 
+	/**
+	 * Gets the HTTP response header fields.
+	 *
+	 * @return the HTTP response header fields
+	 */
+	public Map<String, String> getHttpResponseHeader() {
+		return httpResponseHeader;
+	}
+
+	/**
+	 * Sets the HTTP response header fields.
+	 *
+	 * @param httpResponseHeader the new HTTP response header fields
+	 */
+	public void setHttpResponseHeader(Map<String, String> httpResponseHeader) {
+		this.httpResponseHeader = httpResponseHeader;
+	}
+
 	/**
 	 * Gets the response body.
 	 *
@@ -67,6 +123,152 @@ public class HttpResponse {
 	 */
 	public void setResponseBody(String responseBody) {
 		this.responseBody = responseBody;
+		this.body = null;
+	}
+
+	/**
+	 * Gets the response body as bytes.
+	 *
+	 * @return the response body
+	 */
+	public ResponseBody getBody() {
+		if(body==null)
+			body = new ByteArrayBody(responseBody==null ? new byte[0] : responseBody.getBytes(StandardCharsets.UTF_8));
+		return body;
+	}
+
+	/**
+	 * Gets the response line and the header fields, up to the empty line which ends them,
+	 * in the format they are sent to the Client.
+	 *
+	 * @return the bytes of the response header
+	 */
+	public byte[] getHeaderBytes() {
+		byte[] header = new byte[getHeaderLength()];
+		writeHeaderTo(ByteBuffer.wrap(header));
+		return header;
+	}
+	
+	/**
+	 * Gets the number of bytes written by writeHeaderTo.
+	 *
+	 * @return the length of the response header
+	 */
+	public int getHeaderLength() {
+		int length = this.responseLine.getEncodedLength();
+		for(Entry<String, String> headerInfo: this.httpResponseHeader.entrySet()){
+			length += headerInfo.getKey().length() + 2 + headerInfo.getValue().length() + 2;
+		}
+		return length + 2;
+	}
+	
+	/**
+	 * Writes the response line and the header fields, up to the empty line which ends them,
+	 * as ASCII bytes to the buffer. The status line and the common header names are written
+	 * from pre-encoded bytes, and no String is created.
+	 *
+	 * @param buffer the buffer, with room for getHeaderLength() bytes
+	 */
+	public void writeHeaderTo(ByteBuffer buffer) {
+		this.responseLine.writeTo(buffer);
+		for(Entry<String, String> headerInfo: this.httpResponseHeader.entrySet()){
+			byte[] nameBytes = HEADER_NAME_BYTES.get(headerInfo.getKey());
+			if(nameBytes!=null)
+				buffer.put(nameBytes);
+			else{
+				putAscii(buffer, headerInfo.getKey());
+				buffer.put((byte) ':').put((byte) ' ');
+			}
+			putAscii(buffer, headerInfo.getValue());
+			buffer.put((byte) '\r').put((byte) '\n');
+		}
+		buffer.put((byte) '\r').put((byte) '\n');
+	}
+	
+	/**
+	 * Writes the whole response to the buffer: the header, followed by the body bytes.
+	 *
+	 * @param buffer the buffer, with room for the header and the body
+	 * @throws BufferOverflowException if the buffer has not enough room
+	 * @throws IOException Signals that an I/O exception has occurred while reading the body.
+	 */
+	public void writeTo(ByteBuffer buffer) throws IOException {
+		writeHeaderTo(buffer);
+		ResponseBody responseBody = getBody();
+		try{
+			ByteBuffer bodyBuffer = responseBody.getBuffer();
+			if(bodyBuffer!=null){
+				buffer.put(bodyBuffer);
+				return;
+			}
+			WritableByteChannel channel = new ByteBufferChannel(buffer);
+			long offset = 0;
+			while(offset!=responseBody.getContentLength()){
+				long bytesWritten = responseBody.writeTo(channel, offset);
+				if(bytesWritten<0)
+					break;
+				if(bytesWritten==0)
+					throw new BufferOverflowException();
+				offset += bytesWritten;
+			}
+		}
+		finally{
+			responseBody.close();
+		}
+	}
+	
+	/**
+	 * Writes the whole response to the output stream: the header, followed by the body bytes.
+	 *
+	 * @param out the output stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(getHeaderBytes());
+		ResponseBody responseBody = getBody();
+		try{
+			ByteBuffer bodyBuffer = responseBody.getBuffer();
+			if(bodyBuffer!=null && bodyBuffer.hasArray()){
+				out.write(bodyBuffer.array(), bodyBuffer.arrayOffset()+bodyBuffer.position(), bodyBuffer.remaining());
+				return;
+			}
+			WritableByteChannel channel = Channels.newChannel(out);
+			writeBody(responseBody, channel);
+		}
+		finally{
+			responseBody.close();
+		}
+	}
+	
+	/**
+	 * Writes the whole body to a blocking channel.
+	 *
+	 * @param body the body
+	 * @param channel the channel
+	 * @return the number of bytes written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static long writeBody(ResponseBody body, WritableByteChannel channel) throws IOException {
+		long offset = 0;
+		while(offset!=body.getContentLength()){
+			long bytesWritten = body.writeTo(channel, offset);
+			if(bytesWritten<0)
+				return offset;
+			offset += bytesWritten;
+		}
+		return offset;
+	}
+	
+	/**
+	 * Puts the characters of an ASCII value into the buffer, one byte each.
+	 *
+	 * @param buffer the buffer
+	 * @param value the value
+	 */
+	private static void putAscii(ByteBuffer buffer, String value) {
+		for(int i=0; i<value.length(); i++){
+			buffer.put((byte) value.charAt(i));
+		}
 	}
 
 	/* (non-Javadoc)
@@ -75,21 +277,81 @@ public class HttpResponse {
 	public String toString(){
 		
 		//Buffer to store the Server response payload
-		StringBuffer responseForClient = new StringBuffer();
+		StringBuilder responseForClient = new StringBuilder();
 		
-		//Append the response line from the Server's request
-		responseForClient.append(this.getResponseLine().toString()+"\n");
-		for(Entry<String, String> headerInfo: this.httpResponseHeader.entrySet()){
-			responseForClient.append(headerInfo.getKey()+": "+headerInfo.getValue()+"\n");
-		}
-		//Append <CR><LF> as required by HTTP/1.1 Response conventions
-		responseForClient.append("\r\n");
+		//Append the response line and the header fields, which end with an empty <CR><LF> line
+		responseForClient.append(new String(getHeaderBytes(), StandardCharsets.ISO_8859_1));
 		
 		//Append response body
-		responseForClient.append(this.getResponseBody());
+		if(this.body==null)
+			responseForClient.append(this.getResponseBody());
+		else
+			responseForClient.append(readBody());
 		
 		//Return String format of the MyHttpResponse object
 		return responseForClient.toString();
 	}
 	
+	/**
+	 * Reads the bytes of the response body into a String.
+	 *
+	 * @return the String format of the response body
+	 */
+	private String readBody() {
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(bodyBytes);
+		try{
+			writeBody(body, channel);
+		}
+		catch(IOException e){
+			System.out.println(e.getMessage());
+		}
+		finally{
+			body.close();
+		}
+		return new String(bodyBytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * The Class ByteBufferChannel is a channel which writes into a buffer, as far as it has room.
+	 */
+	static class ByteBufferChannel implements WritableByteChannel {
+		
+		//Buffer receiving the written bytes
+		private final ByteBuffer target;
+		
+		/**
+		 * Instantiates a new ByteBufferChannel.
+		 *
+		 * @param target the buffer receiving the written bytes
+		 */
+		ByteBufferChannel(ByteBuffer target) {
+			this.target = target;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+		 */
+		public int write(ByteBuffer source) {
+			int count = Math.min(source.remaining(), target.remaining());
+			ByteBuffer slice = source.duplicate();
+			slice.limit(slice.position()+count);
+			target.put(slice);
+			source.position(source.position()+count);
+			return count;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.nio.channels.Channel#isOpen()
+		 */
+		public boolean isOpen() {
+			return true;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.nio.channels.Channel#close()
+		 */
+		public void close() {
+		}
+	}
 }
@@ -0,0 +1,143 @@
+package mywebserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class LatencyHistogram records latencies in nanoseconds with a fixed relative precision,
+ * in the way of HdrHistogram. Values below 2048 are counted exactly; larger values are counted
+ * in buckets which double in width with every power of two, each split into 1024 sub-buckets,
+ * so a recorded value is off by less than 0.1%. The memory used is fixed by the highest
+ * trackable value, and values can be recorded concurrently by many threads.
+ */
+public class LatencyHistogram {
+
+	//Number of bits of the sub-bucket index of a value
+	private static final int SUB_BUCKET_BITS = 11;
+
+	//Number of values which are counted exactly
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	//Number of sub-buckets of each bucket above the exactly counted values
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+	//Highest value which can be recorded, larger values are recorded as this value
+	private long highestTrackableValue;
+
+	//Number of recorded values of each sub-bucket
+	private AtomicLongArray counts;
+
+	//Number of recorded values
+	private AtomicLong totalCount = new AtomicLong();
+
+	//Sum of the recorded values
+	private AtomicLong totalValue = new AtomicLong();
+
+	//Highest recorded value
+	private AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Instantiates a new LatencyHistogram.
+	 *
+	 * @param highestTrackableValue the highest value which can be recorded
+	 */
+	public LatencyHistogram(long highestTrackableValue){
+		this.highestTrackableValue = Math.max(highestTrackableValue, SUB_BUCKET_COUNT);
+		this.counts = new AtomicLongArray(countsIndex(this.highestTrackableValue) + 1);
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value the value, negative values are recorded as 0
+	 */
+	public void recordValue(long value){
+		value = Math.min(Math.max(value, 0), highestTrackableValue);
+		counts.incrementAndGet(countsIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long max;
+		while(value>(max = maxValue.get()) && !maxValue.compareAndSet(max, value)){
+			//Retry until the highest value is updated
+		}
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return the total count
+	 */
+	public long getTotalCount(){
+		return totalCount.get();
+	}
+
+	/**
+	 * Gets the highest recorded value.
+	 *
+	 * @return the highest value
+	 */
+	public long getMaxValue(){
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets the mean of the recorded values.
+	 *
+	 * @return the mean, or 0 if there is no value
+	 */
+	public double getMean(){
+		long count = totalCount.get();
+		return count==0 ? 0 : totalValue.get()/(double) count;
+	}
+
+	/**
+	 * Gets the value at the given percentile. It is the highest value which is counted in the
+	 * same sub-bucket as the exact value, so it is never lower than the exact value.
+	 *
+	 * @param percentile the percentile between 0 and 100
+	 * @return the value at the percentile, or 0 if there is no value
+	 */
+	public long getValueAtPercentile(double percentile){
+		long count = totalCount.get();
+		if(count==0)
+			return 0;
+		long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0)/100.0*count));
+		long runningCount = 0;
+		for(int i=0; i<counts.length(); i++){
+			runningCount += counts.get(i);
+			if(runningCount>=countAtPercentile)
+				return Math.min(highestEquivalentValue(i), maxValue.get());
+		}
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets the index of the sub-bucket counting the value.
+	 *
+	 * @param value the value
+	 * @return the index of the sub-bucket
+	 */
+	static int countsIndex(long value){
+		if(value<SUB_BUCKET_COUNT)
+			return (int) value;
+
+		//Shift the value so that its highest bit is the highest bit of the sub-bucket index
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		int subBucketIndex = (int) (value >>> shift);
+		return SUB_BUCKET_COUNT + (shift - 1)*SUB_BUCKET_HALF_COUNT + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+	}
+
+	/**
+	 * Gets the highest value which is counted in the sub-bucket.
+	 *
+	 * @param index the index of the sub-bucket
+	 * @return the highest value of the sub-bucket
+	 */
+	static long highestEquivalentValue(int index){
+		if(index<SUB_BUCKET_COUNT)
+			return index;
+		int shift = (index - SUB_BUCKET_COUNT)/SUB_BUCKET_HALF_COUNT + 1;
+		long subBucketIndex = (index - SUB_BUCKET_COUNT)%SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+		return ((subBucketIndex + 1) << shift) - 1;
+	}
+}
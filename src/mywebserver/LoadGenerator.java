@@ -0,0 +1,306 @@
+package mywebserver;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Class LoadGenerator is the non-interactive counterpart of the Client. It opens a number of
+ * concurrent Keep-Alive connections to the server and sends a mix of GET requests on them for a
+ * given duration, recording the latency of every request in a LatencyHistogram.
+ *
+ * Without a request rate, each connection sends its next request as soon as the response to the
+ * previous one is received (closed loop). With a request rate, the requests are scheduled at fixed
+ * intervals, spread over the connections (open loop), and the latency is measured from the time
+ * a request was scheduled, so a slow response also counts against the requests queued behind it.
+ */
+public class LoadGenerator {
+
+	//Highest latency which is recorded, longer latencies are recorded as this value
+	private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+	//Time given to a connection to connect and receive each response
+	private static final int CLIENT_TIMEOUT = 10000;
+
+	//Time to wait before a failed connection is opened again, in nanoseconds
+	private static final long RECONNECT_DELAY = TimeUnit.MILLISECONDS.toNanos(10);
+
+	//Host name of the server
+	private String hostName;
+
+	//Port of the server
+	private int serverPort;
+
+	//Number of concurrent connections
+	private int connectionCount;
+
+	//Requests of the request mix, in the HTTP/1.1 wire format
+	private List<byte[]> requests = new ArrayList<byte[]>();
+
+	//Sum of the weights of the requests up to and including each request
+	private List<Integer> cumulativeWeights = new ArrayList<Integer>();
+
+	//Latencies of the requests answered with a success status in nanoseconds
+	private LatencyHistogram histogram = new LatencyHistogram(HIGHEST_TRACKABLE_LATENCY);
+
+	//Number of requests which failed or were answered with an error status
+	private AtomicLong errors = new AtomicLong();
+
+	//Duration of the last run in nanoseconds
+	private long elapsedTime = 0;
+
+	/**
+	 * Instantiates a new LoadGenerator.
+	 *
+	 * @param hostName the host name of the server
+	 * @param serverPort the port of the server
+	 * @param connectionCount the number of concurrent connections
+	 */
+	public LoadGenerator(String hostName, int serverPort, int connectionCount){
+		this.hostName = hostName;
+		this.serverPort = serverPort;
+		this.connectionCount = connectionCount;
+	}
+
+	/**
+	 * Adds a GET request of the file to the request mix.
+	 *
+	 * @param filePath the path of the requested file
+	 * @param weight the relative share of the request in the mix
+	 */
+	public void addRequest(String filePath, int weight){
+		if(weight<=0)
+			throw new IllegalArgumentException("Invalid weight of "+filePath+": "+weight);
+		HttpRequest request = new HttpRequest("GET "+filePath+" HTTP/1.1", hostName+":"+serverPort, null, true);
+		if(!request.validateClientRequest())
+			throw new IllegalArgumentException("Invalid request of "+filePath);
+		int totalWeight = cumulativeWeights.isEmpty() ? 0 : cumulativeWeights.get(cumulativeWeights.size()-1);
+		requests.add(request.toString().getBytes(StandardCharsets.UTF_8));
+		cumulativeWeights.add(totalWeight + weight);
+	}
+
+	/**
+	 * Adds the requests of a request mix, eg. /a.html:3,/b.html:1. A file without weight has weight 1.
+	 *
+	 * @param requestMix the comma separated file paths with optional weights
+	 */
+	public void addRequests(String requestMix){
+		for(String entry: requestMix.split(",")){
+			int separator = entry.lastIndexOf(':');
+			if(separator>0)
+				addRequest(entry.substring(0, separator).trim(), Integer.parseInt(entry.substring(separator+1).trim()));
+			else
+				addRequest(entry.trim(), 1);
+		}
+	}
+
+	/**
+	 * Runs the connections for the given duration and waits until all of them have finished.
+	 *
+	 * @param durationSeconds the duration
+	 * @param requestsPerSecond the total request rate, or 0 to send requests back to back
+	 * @throws InterruptedException Signals that the waiting thread was interrupted.
+	 */
+	public void run(int durationSeconds, double requestsPerSecond) throws InterruptedException{
+		if(requests.isEmpty())
+			throw new IllegalStateException("No request to send");
+		final long startTime = System.nanoTime();
+		final long endTime = startTime + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		//Interval between the requests of one connection in the open loop
+		final long interval = requestsPerSecond>0 ? (long) (connectionCount*1e9/requestsPerSecond) : 0;
+
+		final CountDownLatch finished = new CountDownLatch(connectionCount);
+		for(int i=0; i<connectionCount; i++){
+			//Spread the first requests of the connections over one interval
+			final long firstRequestTime = startTime + interval*i/connectionCount;
+			final Random random = new Random(i);
+			Thread connectionThread = new Thread(new Runnable(){
+				@Override
+				public void run(){
+					try{
+						runConnection(firstRequestTime, endTime, interval, random);
+					}
+					finally{
+						finished.countDown();
+					}
+				}
+			}, "load-connection-"+i);
+			connectionThread.setDaemon(true);
+			connectionThread.start();
+		}
+		finished.await();
+		elapsedTime = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Sends the requests of one connection until the end time. A connection which fails is
+	 * opened again.
+	 *
+	 * @param requestTime the time the first request is scheduled at
+	 * @param endTime the end time
+	 * @param interval the interval between two requests, or 0 to send requests back to back
+	 * @param random the random number generator choosing the requests from the mix
+	 */
+	void runConnection(long requestTime, long endTime, long interval, Random random){
+		//Response bytes are not kept
+		OutputStream discard = new OutputStream(){
+			@Override
+			public void write(int b){
+			}
+			@Override
+			public void write(byte[] b, int off, int len){
+			}
+		};
+		Socket socket = null;
+		InputStream in = null;
+		try{
+			while(requestTime<endTime){
+				if(interval>0){
+					//Wait for the scheduled time of the request
+					long delay = requestTime - System.nanoTime();
+					if(delay>0)
+						LockSupport.parkNanos(delay);
+				}
+				else{
+					requestTime = System.nanoTime();
+				}
+				try{
+					if(socket==null){
+						socket = new Socket(hostName, serverPort);
+						socket.setSoTimeout(CLIENT_TIMEOUT);
+						socket.setTcpNoDelay(true);
+						in = new BufferedInputStream(socket.getInputStream());
+					}
+					socket.getOutputStream().write(nextRequest(random));
+					int statusCode = Client.readResponse(in, discard);
+					if(statusCode<400)
+						histogram.recordValue(System.nanoTime() - requestTime);
+					else
+						errors.incrementAndGet();
+
+					//A shed request is answered with 503 Service Unavailable, and the server closes the connection
+					if(statusCode==503){
+						closeSocket(socket);
+						socket = null;
+					}
+				}
+				catch(IOException e){
+					errors.incrementAndGet();
+					closeSocket(socket);
+					socket = null;
+
+					//Do not flood a server which refuses connections when sending back to back
+					if(interval==0)
+						LockSupport.parkNanos(RECONNECT_DELAY);
+				}
+				requestTime += interval;
+			}
+		}
+		finally{
+			closeSocket(socket);
+		}
+	}
+
+	/**
+	 * Chooses the next request from the mix by its weight.
+	 *
+	 * @param random the random number generator
+	 * @return the request
+	 */
+	private byte[] nextRequest(Random random){
+		if(requests.size()==1)
+			return requests.get(0);
+		int value = random.nextInt(cumulativeWeights.get(cumulativeWeights.size()-1));
+		int i = 0;
+		while(value>=cumulativeWeights.get(i))
+			i++;
+		return requests.get(i);
+	}
+
+	/**
+	 * Closes the socket of a connection.
+	 *
+	 * @param socket the socket, may be null
+	 */
+	private void closeSocket(Socket socket){
+		if(socket==null)
+			return;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Gets the latencies of the requests answered with a success status.
+	 *
+	 * @return the histogram of the latencies in nanoseconds
+	 */
+	public LatencyHistogram getHistogram(){
+		return histogram;
+	}
+
+	/**
+	 * Gets the number of failed requests.
+	 *
+	 * @return the number of errors
+	 */
+	public long getErrors(){
+		return errors.get();
+	}
+
+	/**
+	 * Gets the throughput of the last run.
+	 *
+	 * @return the successfully answered requests per second, the errors are not counted
+	 */
+	public double getThroughput(){
+		return elapsedTime==0 ? 0 : histogram.getTotalCount()*1e9/elapsedTime;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments: <hostname> <portnumber> <connections> <durationSeconds>
+	 * 				<requestsPerSecond|max> <filePath[:weight],...>
+	 */
+	public static void main(String[] args) {
+		try{
+			if(args.length<6){
+				System.out.println("Run load generator using: java LoadGenerator <hostname> <portnumber> "
+						+ "<connections> <durationSeconds> <requestsPerSecond|max> <filePath[:weight],...>");
+				return;
+			}
+			LoadGenerator loadGenerator = new LoadGenerator(args[0], Integer.parseInt(args[1]),
+					Integer.parseInt(args[2]));
+			loadGenerator.addRequests(args[5]);
+			double requestsPerSecond = args[4].equalsIgnoreCase("max") ? 0 : Double.parseDouble(args[4]);
+			loadGenerator.run(Integer.parseInt(args[3]), requestsPerSecond);
+
+			LatencyHistogram histogram = loadGenerator.getHistogram();
+			System.out.println(String.format("requests:     %d", histogram.getTotalCount()));
+			System.out.println(String.format("errors:       %d", loadGenerator.getErrors()));
+			System.out.println(String.format("requests/s:   %.1f", loadGenerator.getThroughput()));
+			System.out.println(String.format("mean ms:      %.3f", histogram.getMean()/1e6));
+			System.out.println(String.format("p50 ms:       %.3f", histogram.getValueAtPercentile(50)/1e6));
+			System.out.println(String.format("p99 ms:       %.3f", histogram.getValueAtPercentile(99)/1e6));
+			System.out.println(String.format("p999 ms:      %.3f", histogram.getValueAtPercentile(99.9)/1e6));
+			System.out.println(String.format("max ms:       %.3f", histogram.getMaxValue()/1e6));
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+	}
+}
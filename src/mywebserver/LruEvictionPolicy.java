@@ -0,0 +1,58 @@
+package mywebserver;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The Class LruEvictionPolicy evicts the least recently used entry, and admits every new entry.
+ *
+ * @param <K> the type of the cache keys
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	//Keys of the cached entries, from the least to the most recently used
+	private Set<K> recencyOrder = new LinkedHashSet<K>();
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordHit(java.lang.Object)
+	 */
+	public void recordHit(K key) {
+		//Move the key to the most recently used end
+		recencyOrder.remove(key);
+		recencyOrder.add(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordMiss(java.lang.Object)
+	 */
+	public void recordMiss(K key) {
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordInsertion(java.lang.Object)
+	 */
+	public void recordInsertion(K key) {
+		recencyOrder.add(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#recordRemoval(java.lang.Object)
+	 */
+	public void recordRemoval(K key) {
+		recencyOrder.remove(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#selectVictim()
+	 */
+	public K selectVictim() {
+		return recencyOrder.isEmpty() ? null : recencyOrder.iterator().next();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.EvictionPolicy#admit(java.lang.Object, java.lang.Object)
+	 */
+	public boolean admit(K candidate, K victim) {
+		return true;
+	}
+}
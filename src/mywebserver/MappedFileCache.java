@@ -0,0 +1,473 @@
+package mywebserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Class MappedFileCache keeps large, frequently requested files memory-mapped, so that their
+ * responses are written from the page cache without a read syscall or a copy into the Java heap.
+ * The mappings are bounded by their total size, and an EvictionPolicy decides which files stay
+ * mapped. Every response holds a reference to the mapping it is written from, so a mapping which
+ * is evicted, or whose file was changed, is only unmapped after its last response was sent.
+ * A hit is served without the lock of the cache, like in the FileContentCache: the mapping is
+ * looked up in a concurrent map and retained, unless its last reference was released already,
+ * and the hit is recorded in a HitBuffer for the eviction policy.
+ */
+public class MappedFileCache {
+
+	//Maximum number of bytes of all mapped files
+	private final long maxBytes;
+
+	//Policy deciding which files stay mapped
+	private final EvictionPolicy<String> evictionPolicy;
+
+	//Lock guarding the eviction policy and the changes of the mapped files
+	private final ReentrantLock lock = new ReentrantLock();
+
+	//Mapped files by resolved path, changed only under the lock of the cache
+	private final Map<String, MappedFile> mappedFiles = new ConcurrentHashMap<String, MappedFile>();
+
+	//Hits served without the lock, which the eviction policy has not seen yet
+	private final HitBuffer<String> hitBuffer = new HitBuffer<String>();
+
+	//Number of bytes of all mapped files
+	private long mappedBytes = 0;
+
+	//Counters for sizing the cache
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * Instantiates a new MappedFileCache.
+	 *
+	 * @param maxBytes the maximum number of bytes of all mapped files
+	 * @param evictionPolicy the policy deciding which files stay mapped
+	 */
+	public MappedFileCache(long maxBytes, EvictionPolicy<String> evictionPolicy) {
+		this.maxBytes = maxBytes;
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * Gets a response body written from the mapping of the file. The file is mapped on its
+	 * first request, if the eviction policy admits it.
+	 *
+	 * @param file the file
+	 * @param lastModified the modification time of the file
+	 * @param length the size of the file
+	 * @return the body, or null if the file is not mapped
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public ResponseBody getBody(File file, long lastModified, long length) throws IOException {
+		if(!isMappable(length))
+			return null;
+		String path = file.getPath();
+		MappedFile mappedFile = mappedFiles.get(path);
+		if(mappedFile!=null && mappedFile.lastModified==lastModified && mappedFile.length==length
+				&& mappedFile.tryRetain()){
+			hitCount.increment();
+			if(hitBuffer.record(path))
+				tryDrainHits();
+			return new MappedFileBody(mappedFile);
+		}
+
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, mappedFiles);
+			mappedFile = mappedFiles.get(path);
+			if(mappedFile!=null && mappedFile.lastModified==lastModified && mappedFile.length==length){
+				//The cache holds a reference to the mappings in the map, so they are still mapped
+				hitCount.increment();
+				evictionPolicy.recordHit(path);
+				mappedFile.retain();
+				return new MappedFileBody(mappedFile);
+			}
+			if(mappedFile!=null){
+				//The file was changed after it was mapped
+				remove(path);
+			}
+			missCount.increment();
+			evictionPolicy.recordMiss(path);
+			if(!makeRoom(path, length))
+				return null;
+		}
+		finally{
+			lock.unlock();
+		}
+
+		mappedFile = new MappedFile(map(file, length), lastModified, length);
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, mappedFiles);
+
+			//Another request may have mapped the file, or filled the room in the meantime
+			if(mappedFiles.containsKey(path) || !makeRoom(path, length))
+				return new MappedFileBody(mappedFile);
+			mappedFiles.put(path, mappedFile);
+			mappedBytes += length;
+			evictionPolicy.recordInsertion(path);
+			mappedFile.retain();
+			return new MappedFileBody(mappedFile);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if files of the given size can be mapped by the cache.
+	 *
+	 * @param length the size of the file
+	 * @return true, if the file fits into the cache
+	 */
+	public boolean isMappable(long length) {
+		return length<=Integer.MAX_VALUE && length<=maxBytes;
+	}
+
+	/**
+	 * Checks if the file is mapped, without counting a hit or a miss.
+	 *
+	 * @param file the file
+	 * @param lastModified the modification time of the file
+	 * @param length the size of the file
+	 * @return true, if this version of the file is mapped
+	 */
+	public boolean contains(File file, long lastModified, long length) {
+		MappedFile mappedFile = mappedFiles.get(file.getPath());
+		return mappedFile!=null && mappedFile.lastModified==lastModified && mappedFile.length==length;
+	}
+
+	/**
+	 * Unmaps the file, once the responses which are being written from it are sent.
+	 *
+	 * @param path the resolved path of the file
+	 */
+	public void invalidate(String path) {
+		lock.lock();
+		try{
+			hitBuffer.drainTo(evictionPolicy, mappedFiles);
+			remove(path);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replays the buffered hits to the eviction policy, unless another thread holds the lock.
+	 */
+	private void tryDrainHits() {
+		if(!lock.tryLock())
+			return;
+		try{
+			hitBuffer.drainTo(evictionPolicy, mappedFiles);
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Evicts mapped files until the file fits, if the eviction policy admits it.
+	 *
+	 * @param path the resolved path of the file
+	 * @param length the size of the file
+	 * @return true, if there is room for the file
+	 */
+	private boolean makeRoom(String path, long length) {
+		while(mappedBytes+length>maxBytes){
+			String victim = evictionPolicy.selectVictim();
+			if(victim==null || !evictionPolicy.admit(path, victim))
+				return false;
+			remove(victim);
+			evictionCount.increment();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the file from the cache and releases the reference of the cache to its mapping.
+	 *
+	 * @param path the resolved path of the file
+	 */
+	private void remove(String path) {
+		MappedFile mappedFile = mappedFiles.remove(path);
+		if(mappedFile==null)
+			return;
+		mappedBytes -= mappedFile.length;
+		evictionPolicy.recordRemoval(path);
+		mappedFile.release();
+	}
+
+	/**
+	 * Maps the file read-only into memory.
+	 *
+	 * @param file the file
+	 * @param length the size of the file
+	 * @return the mapped buffer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static MappedByteBuffer map(File file, long length) throws IOException {
+		FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			//The mapping stays valid after the channel is closed
+			return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		finally{
+			fileChannel.close();
+		}
+	}
+
+	/**
+	 * Unmaps the buffer right away, instead of waiting for it to be garbage collected.
+	 * There is no public API for this, so the JDK internals are used when they are accessible.
+	 *
+	 * @param buffer the mapped buffer, which must not be used anymore
+	 */
+	static void unmap(ByteBuffer buffer) {
+		try{
+			//Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		}
+		catch(Exception e){
+			//Not available, try the Java 8 way
+		}
+		try{
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			cleaner.getClass().getMethod("clean").invoke(cleaner);
+		}
+		catch(Exception e){
+			//Leave the mapping to the garbage collector
+		}
+	}
+
+	/**
+	 * Gets the number of responses written from an existing mapping.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the number of requests for files which were not mapped yet.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Gets the number of mappings evicted to make room for other files.
+	 *
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Gets the number of bytes of all mapped files.
+	 *
+	 * @return the mapped bytes
+	 */
+	public long getMappedBytes() {
+		lock.lock();
+		try{
+			return mappedBytes;
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of mapped files.
+	 *
+	 * @return the number of mapped files
+	 */
+	public int getMappedFileCount() {
+		return mappedFiles.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "Mapped files: "+getMappedFileCount()+" files, "+getMappedBytes()+"/"+maxBytes+" bytes, "
+				+getHitCount()+" hits, "+getMissCount()+" misses, "+getEvictionCount()+" evictions";
+	}
+
+	/**
+	 * The Class MappedFile is a reference counted mapping of a file.
+	 */
+	static class MappedFile {
+
+		//Mapping of the file
+		private final MappedByteBuffer buffer;
+
+		//Modification time of the file when it was mapped
+		final long lastModified;
+
+		//Size of the file when it was mapped
+		final long length;
+
+		//Number of holders of the mapping: the cache and the responses being written from it
+		private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+		/**
+		 * Instantiates a new mapped file, referenced by its creator.
+		 *
+		 * @param buffer the mapping of the file
+		 * @param lastModified the modification time
+		 * @param length the size
+		 */
+		MappedFile(MappedByteBuffer buffer, long lastModified, long length) {
+			this.buffer = buffer;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		/**
+		 * Adds a reference to the mapping, which the caller knows to be still referenced.
+		 */
+		void retain() {
+			referenceCount.incrementAndGet();
+		}
+
+		/**
+		 * Adds a reference to the mapping, unless its last reference was released and it is unmapped.
+		 *
+		 * @return true, if the reference was added
+		 */
+		boolean tryRetain() {
+			int count = referenceCount.get();
+			while(count>0){
+				if(referenceCount.compareAndSet(count, count + 1))
+					return true;
+				count = referenceCount.get();
+			}
+			return false;
+		}
+
+		/**
+		 * Removes a reference to the mapping, and unmaps it when it is no longer referenced.
+		 */
+		void release() {
+			if(referenceCount.decrementAndGet()==0)
+				unmap(buffer);
+		}
+
+		/**
+		 * Gets a new buffer over the mapping, with its own position.
+		 *
+		 * @return the buffer
+		 */
+		ByteBuffer duplicate() {
+			return buffer.duplicate();
+		}
+	}
+
+	/**
+	 * The Class MappedFileBody is a response body written from a mapped file.
+	 * It holds a reference to the mapping until it is closed.
+	 */
+	static class MappedFileBody implements ResponseBody {
+
+		//Mapped file holding the body
+		private MappedFile mappedFile;
+
+		//Position of the first byte of the body in the mapping
+		private final int position;
+
+		//Number of bytes of the body
+		private final int count;
+
+		/**
+		 * Instantiates a new MappedFileBody over the whole mapping, which takes over a reference to it.
+		 *
+		 * @param mappedFile the mapped file
+		 */
+		MappedFileBody(MappedFile mappedFile) {
+			this(mappedFile, 0, (int) mappedFile.length);
+		}
+
+		/**
+		 * Instantiates a new MappedFileBody over a region of the mapping, which takes over a reference to it.
+		 *
+		 * @param mappedFile the mapped file
+		 * @param position the position of the first byte of the region
+		 * @param count the number of bytes of the region
+		 */
+		MappedFileBody(MappedFile mappedFile, int position, int count) {
+			this.mappedFile = mappedFile;
+			this.position = position;
+			this.count = count;
+		}
+
+		/* (non-Javadoc)
+		 * @see mywebserver.ResponseBody#getContentLength()
+		 */
+		public long getContentLength() {
+			return count;
+		}
+
+		/* (non-Javadoc)
+		 * @see mywebserver.ResponseBody#getBuffer()
+		 */
+		public ByteBuffer getBuffer() {
+			ByteBuffer buffer = mappedFile.duplicate();
+			buffer.limit(position + count).position(position);
+			return buffer;
+		}
+
+		/* (non-Javadoc)
+		 * @see mywebserver.ResponseBody#writeTo(java.nio.channels.WritableByteChannel, long)
+		 */
+		public long writeTo(WritableByteChannel channel, long offset) throws IOException {
+			ByteBuffer buffer = mappedFile.duplicate();
+			buffer.limit(position + count).position(position + (int) offset);
+			return channel.write(buffer);
+		}
+
+		/* (non-Javadoc)
+		 * @see mywebserver.ResponseBody#getRegion(long, long)
+		 */
+		public ResponseBody getRegion(long position, long count) {
+			mappedFile.retain();
+			return new MappedFileBody(mappedFile, this.position + (int) position, (int) count);
+		}
+
+		/* (non-Javadoc)
+		 * @see mywebserver.ResponseBody#close()
+		 */
+		public void close() {
+			if(mappedFile!=null){
+				mappedFile.release();
+				mappedFile = null;
+			}
+		}
+	}
+}
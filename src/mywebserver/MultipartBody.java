@@ -0,0 +1,89 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class MultipartBody is a response body made of a sequence of bodies, which are written
+ * one after the other, like the delimiters and the file regions of a multipart/byteranges
+ * response. Each part is written from its own file or buffer, so the body is never copied.
+ */
+public class MultipartBody implements ResponseBody {
+
+	//Parts of the body, in the order they are written
+	private final List<ResponseBody> parts;
+
+	//Number of bytes of all parts
+	private final long contentLength;
+
+	/**
+	 * Instantiates a new MultipartBody, which takes over the parts.
+	 *
+	 * @param parts the parts of the body
+	 */
+	public MultipartBody(List<ResponseBody> parts) {
+		this.parts = parts;
+		long length = 0;
+		for(ResponseBody part: parts){
+			length += part.getContentLength();
+		}
+		this.contentLength = length;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getContentLength()
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getBuffer()
+	 */
+	public ByteBuffer getBuffer() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#writeTo(java.nio.channels.WritableByteChannel, long)
+	 */
+	public long writeTo(WritableByteChannel channel, long offset) throws IOException {
+		//Write from the part holding the byte at the offset
+		for(ResponseBody part: parts){
+			long partLength = part.getContentLength();
+			if(offset<partLength)
+				return part.writeTo(channel, offset);
+			offset -= partLength;
+		}
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#getRegion(long, long)
+	 */
+	public ResponseBody getRegion(long position, long count) {
+		List<ResponseBody> regions = new ArrayList<ResponseBody>();
+		for(ResponseBody part: parts){
+			long partLength = part.getContentLength();
+			if(count>0 && position<partLength){
+				long regionLength = Math.min(count, partLength - position);
+				regions.add(part.getRegion(position, regionLength));
+				count -= regionLength;
+			}
+			position = Math.max(0, position - partLength);
+		}
+		return new MultipartBody(regions);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ResponseBody#close()
+	 */
+	public void close() {
+		for(ResponseBody part: parts){
+			part.close();
+		}
+	}
+}
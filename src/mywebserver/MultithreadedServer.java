@@ -1,22 +1,45 @@
 package mywebserver;
 
-import java.io.BufferedWriter;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Class MultithreadedServer handles multiple client request in a Multithreaded way.
@@ -27,23 +50,188 @@ public class MultithreadedServer implements Runnable{
 	//Set maximum number of Client HTTP requests allowed by the Server
 	private static final int MAX_REQUESTS_ALLOWED = 5;
 
+	//Number of event loops used by the non-blocking server modes
+	private static final int EVENT_LOOP_COUNT = Math.max(1, Integer.getInteger("mywebserver.eventLoops",
+			Runtime.getRuntime().availableProcessors()));
+
+	//Number of threads of the work-stealing pool reading the files which are not in memory, in the sharded mode
+	private static final int FILE_READ_PARALLELISM = Math.max(1, Integer.getInteger("mywebserver.fileReadThreads",
+			Math.max(2, Runtime.getRuntime().availableProcessors() / 2)));
+
+	//Number of threads accepting client connections in the pool and virtual modes, each with its own worker group
+	private static final int ACCEPTOR_COUNT = Math.max(1, Integer.getInteger("mywebserver.acceptors", 1));
+
+	//Check if each acceptor thread binds its own server socket with SO_REUSEPORT
+	private static final boolean ACCEPTOR_REUSE_PORT = Boolean.getBoolean("mywebserver.acceptors.reusePort");
+
 	//Set maximum Idle waiting time for requests/responses
 	private static final int MAX_WAIT_TIME = 100000;
 
+	//Time in milliseconds a Keep-Alive connection may wait for its next request before it is closed
+	static final int KEEP_ALIVE_TIMEOUT = Integer.getInteger("mywebserver.keepAlive.timeoutMillis", MAX_WAIT_TIME);
+
+	//Maximum number of pipelined requests whose responses are sent together
+	static final int MAX_PIPELINED_REQUESTS = 16;
+
+	//Time in milliseconds a request may take to be received once its first byte arrived
+	static final int HEADER_READ_TIMEOUT = Integer.getInteger("mywebserver.headerRead.timeoutMillis", 20000);
+
+	//Time in milliseconds the Client may take to accept the bytes of the responses being sent
+	static final int WRITE_TIMEOUT = Integer.getInteger("mywebserver.write.timeoutMillis", 60000);
+
+	//Duration of one tick of the timer wheel of the connection deadlines, and its number of ticks
+	private static final int TIMER_TICK_MILLIS = 100;
+	private static final int TIMER_WHEEL_SIZE = 512;
+
+	//Number of tasks which may wait for a thread of the pool, 0 if the queue is unbounded
+	private static final int ADMISSION_QUEUE_CAPACITY = Integer.getInteger("mywebserver.admission.queueCapacity", 256);
+
+	//Wait for a thread which is acceptable, 0 if work is only shed when the queue is full
+	private static final long ADMISSION_TARGET_DELAY_MILLIS = Long.getLong("mywebserver.admission.targetDelayMillis", 50);
+
+	//Time the wait for a thread has to stay above the target before work is shed
+	private static final long ADMISSION_INTERVAL_MILLIS = Long.getLong("mywebserver.admission.intervalMillis", 500);
+
+	//Seconds after which a Client whose connection was shed may retry, sent in the Retry-After header
+	private static final int RETRY_AFTER_SECONDS = Integer.getInteger("mywebserver.admission.retryAfterSeconds", 1);
+
+	//Time a shed connection is kept open after its response, so the Client reads it before the connection is closed
+	private static final int SHED_CLOSE_DELAY_MILLIS = 1000;
+
 	//Create the Thread pool to handle Client HTTP requests
-	private static ExecutorService pool = Executors.newFixedThreadPool(MAX_REQUESTS_ALLOWED);
+	private static ExecutorService pool = newBoundedPool(MAX_REQUESTS_ALLOWED);
+
+	//Maximum number of bytes of file content kept in memory, 0 disables the cache
+	private static final long FILE_CACHE_MAX_BYTES = Long.getLong("mywebserver.fileCache.maxBytes", 64L << 20);
+
+	//Eviction policy of the file content cache: lru or tinylfu
+	private static final String FILE_CACHE_POLICY = System.getProperty("mywebserver.fileCache.policy", "tinylfu");
+
+	//Files of at least this size are sent straight from the file with FileChannel.transferTo
+	private static final long ZERO_COPY_MIN_BYTES = Long.getLong("mywebserver.zeroCopy.minBytes", 64L << 10);
+
+	//Files of at least this size are served from memory-mappings, 0 disables the mapped files
+	private static final long MMAP_MIN_BYTES = Long.getLong("mywebserver.mmap.minBytes", 0);
+
+	//Maximum number of bytes of all memory-mapped files
+	private static final long MMAP_MAX_BYTES = Long.getLong("mywebserver.mmap.maxBytes", 1L << 30);
+
+	//Files of at least this size are compressed when the Client accepts a content encoding
+	private static final long COMPRESSION_MIN_BYTES = Long.getLong("mywebserver.compression.minBytes", 256);
+
+	//Files larger than this are not compressed on the fly, 0 disables the compression
+	private static final long COMPRESSION_MAX_BYTES = Long.getLong("mywebserver.compression.maxBytes", 1L << 20);
+
+	//Maximum number of bytes of all compressed variants kept in memory
+	private static final long COMPRESSION_CACHE_MAX_BYTES = Long.getLong("mywebserver.compression.cacheMaxBytes", 16L << 20);
+
+	//Files larger than the compression maximum, up to this size, are compressed while they are sent, chunked; 0 disables it
+	private static final long STREAMING_COMPRESSION_MAX_BYTES = Long.getLong("mywebserver.compression.streamMaxBytes", 0);
+
+	//Maximum number of bytes of the pooled I/O buffers shared by all threads, 0 disables the pooling
+	private static final long BUFFER_POOL_MAX_BYTES = Long.getLong("mywebserver.bufferPool.maxBytes", 32L << 20);
+
+	//Report the pooled I/O buffers which are not released, for debugging
+	private static final boolean BUFFER_POOL_LEAK_DETECTION = Boolean.getBoolean("mywebserver.bufferPool.leakDetection");
+
+	//Maximum number of requested paths whose file metadata is cached, 0 disables the cache
+	private static final int METADATA_CACHE_MAX_ENTRIES = Integer.getInteger("mywebserver.metadataCache.maxEntries", 10000);
+
+	//Time in milliseconds the cached metadata of a file is used before the file is looked up again, if the files are not watched
+	private static final long METADATA_CACHE_TTL_MILLIS = Long.getLong("mywebserver.metadataCache.ttlMillis", 1000);
+
+	//Watch the server directory for changed files, so that the cached metadata of a file is used until it changes
+	private static final boolean FILE_WATCH_ENABLED = Boolean.parseBoolean(System.getProperty("mywebserver.fileWatch.enabled", "true"));
+
+	//Time in milliseconds between the scans for changed files whose watch events were lost, 0 disables the scans
+	private static final long FILE_WATCH_SCAN_INTERVAL_MILLIS = Long.getLong("mywebserver.fileWatch.scanIntervalMillis", 1000);
+
+	//Index the server directory and preload its files before client connections are accepted
+	private static final boolean WARMUP_ENABLED = Boolean.getBoolean("mywebserver.warmup.enabled");
+
+	//Maximum number of bytes of file content preloaded by the warm-up
+	private static final long WARMUP_MAX_BYTES = Long.getLong("mywebserver.warmup.maxBytes", FILE_CACHE_MAX_BYTES / 2);
+
+	//Number of threads walking the server directory and reading the files in the warm-up
+	private static final int WARMUP_PARALLELISM = Integer.getInteger("mywebserver.warmup.parallelism",
+			Runtime.getRuntime().availableProcessors());
 
-	//Current start time of the Thread
-	private static long startTime = System.currentTimeMillis();
+	//Path the metrics are served at in the text exposition format, empty if they are not served
+	private static final String METRICS_PATH = System.getProperty("mywebserver.metrics.path", "/__metrics");
+
+	//Check if the metrics are registered with JMX
+	private static final boolean METRICS_JMX_ENABLED = Boolean.parseBoolean(System.getProperty("mywebserver.metrics.jmx", "true"));
+
+	//File the answered requests are logged to, - for the standard output, empty (the default) if they are not logged
+	private static final String ACCESS_LOG_FILE = System.getProperty("mywebserver.accessLog.file", "");
+
+	//Line format of the access log: common, combined, or a pattern like %h %t "%r" %s %b %D
+	private static final String ACCESS_LOG_FORMAT = System.getProperty("mywebserver.accessLog.format", "common");
+
+	//Number of access log records buffered until the writer catches up
+	private static final int ACCESS_LOG_BUFFER_SIZE = Integer.getInteger("mywebserver.accessLog.bufferSize", 8192);
+
+	//Check if a connection thread waits for the writer when the buffer is full, instead of dropping its record
+	private static final boolean ACCESS_LOG_BLOCK_WHEN_FULL = Boolean.getBoolean("mywebserver.accessLog.blockWhenFull");
+
+	//Size at which the access log file is rotated, 0 if it is not rotated
+	private static final long ACCESS_LOG_MAX_BYTES = Long.getLong("mywebserver.accessLog.maxBytes", 10L << 20);
+
+	//Number of rotated access log files which are kept
+	private static final int ACCESS_LOG_MAX_FILES = Integer.getInteger("mywebserver.accessLog.maxFiles", 5);
+
+	//Decimal Strings of the Content-Length values below 64 KB, created once and shared by all responses
+	private static final String[] CONTENT_LENGTH_VALUES = new String[1 << 16];
 
 	//Directory where html files exist
 	private String serverDirectory;
 
+	//Complete path of the server directory, which the requested paths are resolved in
+	private String rootPath;
+
 	//Server port which is accepting client requests
 	private int serverPort;
 
-	//Server socket which is accepting client requests
-	private ServerSocket serverSocket = null;
+	//Server sockets accepting client requests, one per acceptor thread, which share one socket
+	//unless each is bound to its own with SO_REUSEPORT
+	private ServerSocket[] serverSockets = new ServerSocket[0];
+
+	//Executors running the handler of each client connection, one worker group per acceptor thread
+	private ExecutorService[] connectionExecutors = {pool};
+
+	//Metadata of the files of the requested paths, including the missing ones
+	private FileMetadataCache fileMetadataCache;
+
+	//Watcher invalidating the cached files when they change, null if the files are not watched
+	private FileWatcher fileWatcher = null;
+
+	//Cache of the contents of the requested files
+	private FileContentCache fileContentCache = FILE_CACHE_MAX_BYTES>0 ?
+			new FileContentCache(FILE_CACHE_MAX_BYTES, FileContentCache.newEvictionPolicy(FILE_CACHE_POLICY)) : null;
+
+	//Memory-mappings of large, frequently requested files
+	private MappedFileCache mappedFileCache = MMAP_MIN_BYTES>0 ?
+			new MappedFileCache(MMAP_MAX_BYTES, FileContentCache.newEvictionPolicy(FILE_CACHE_POLICY)) : null;
+
+	//Compressed variants of the requested files
+	private CompressedContentCache compressedContentCache = COMPRESSION_MAX_BYTES>0 ?
+			new CompressedContentCache(COMPRESSION_CACHE_MAX_BYTES, FileContentCache.newEvictionPolicy(FILE_CACHE_POLICY)) : null;
+
+	//Timer wheel closing the connections whose idle, header read or write deadline passed
+	private TimerWheel timerWheel = new TimerWheel(TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE);
+
+	//Pool of the buffers the requests are read into and the response headers are written from
+	private BufferPool bufferPool = new BufferPool(BUFFER_POOL_MAX_BYTES, BUFFER_POOL_LEAK_DETECTION);
+
+	//Request counters, phase latencies and connection gauges of the server
+	private ServerMetrics metrics = new ServerMetrics();
+
+	//Log of the answered requests, null if they are not logged
+	private AccessLog accessLog = null;
+
+	//Controller shedding new work when the waits for a thread show that the server is overloaded
+	private AdmissionController admissionController =
+			new AdmissionController(ADMISSION_TARGET_DELAY_MILLIS, ADMISSION_INTERVAL_MILLIS);
 
 	/**
 	 * Instantiates a new Multithreaded server.
@@ -53,9 +241,117 @@ public class MultithreadedServer implements Runnable{
 	 * @throws IOException Signals that an I/O exception has occurred, in case serverSocket fails.
 	 */
 	public MultithreadedServer(final int serverPort, final String serverDirectory) throws IOException{
-		this.serverPort = serverPort;
+		this(serverDirectory);
+		listen(serverPort, pool);
+	}
+
+	/**
+	 * Instantiates a new Multithreaded server which runs the client connections on the given executor.
+	 *
+	 * @param serverPort  is the port which is accepting client requests
+	 * @param serverDirectory is the folder where the requested files are present 
+	 * @param connectionExecutor the executor running the handler of each client connection
+	 * @throws IOException Signals that an I/O exception has occurred, in case serverSocket fails.
+	 */
+	public MultithreadedServer(final int serverPort, final String serverDirectory,
+			final ExecutorService connectionExecutor) throws IOException{
+		this(serverDirectory);
+		listen(serverPort, connectionExecutor);
+	}
+
+	/**
+	 * Instantiates a new Multithreaded server which only processes requests, 
+	 * without accepting client connections itself.
+	 *
+	 * @param serverDirectory is the folder where the requested files are present
+	 */
+	public MultithreadedServer(final String serverDirectory){
 		this.serverDirectory = serverDirectory;
-		this.serverSocket = new ServerSocket(this.serverPort);
+		this.rootPath = System.getProperty("user.dir")+"/"+serverDirectory;
+		this.fileMetadataCache = new FileMetadataCache(rootPath, METADATA_CACHE_MAX_ENTRIES, METADATA_CACHE_TTL_MILLIS);
+		this.metrics.setExecutors(connectionExecutors);
+	}
+
+	/**
+	 * Binds the server socket of a server which only processes requests, so that it accepts
+	 * client connections when it is run.
+	 *
+	 * @param serverPort is the port which is accepting client requests
+	 * @param connectionExecutor the executor running the handler of each client connection
+	 * @throws IOException Signals that an I/O exception has occurred, in case serverSocket fails.
+	 */
+	public void listen(final int serverPort, final ExecutorService connectionExecutor) throws IOException{
+		listen(serverPort, new ExecutorService[]{connectionExecutor}, false);
+	}
+
+	/**
+	 * Binds the server sockets of a server which only processes requests, for an acceptor thread
+	 * per executor. Each acceptor thread hands the connections it accepts to its own executor.
+	 * With SO_REUSEPORT, each acceptor thread gets a server socket of its own on the same port, and
+	 * the kernel spreads the incoming connections over them; otherwise, or if the option is not
+	 * supported, the acceptor threads accept from one shared server socket.
+	 *
+	 * @param serverPort is the port which is accepting client requests
+	 * @param connectionExecutors the executors running the handler of each client connection, one per acceptor thread
+	 * @param reusePort true, if each acceptor thread binds its own server socket with SO_REUSEPORT
+	 * @throws IOException Signals that an I/O exception has occurred, in case serverSocket fails.
+	 */
+	public void listen(final int serverPort, final ExecutorService[] connectionExecutors, boolean reusePort) throws IOException{
+		this.serverPort = serverPort;
+		this.connectionExecutors = connectionExecutors.clone();
+		this.metrics.setExecutors(this.connectionExecutors);
+
+		SocketOption<Boolean> reusePortOption = reusePort && connectionExecutors.length>1 ? getReusePortOption() : null;
+		ServerSocket[] serverSockets = new ServerSocket[connectionExecutors.length];
+		try{
+			for(int i=0; i<serverSockets.length; i++){
+				if(i>0 && reusePortOption==null){
+					serverSockets[i] = serverSockets[0];
+					continue;
+				}
+
+				//The sockets of a ServerSocketChannel have a channel, which file content can be transferred to
+				ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+				if(reusePortOption!=null)
+					serverSocketChannel.setOption(reusePortOption, Boolean.TRUE);
+				serverSocketChannel.bind(new InetSocketAddress(this.serverPort));
+				serverSockets[i] = serverSocketChannel.socket();
+			}
+		}
+		catch(IOException e){
+			closeServerSockets(serverSockets);
+			throw e;
+		}
+		this.serverSockets = serverSockets;
+	}
+
+	/**
+	 * Gets the SO_REUSEPORT socket option, which lets several server sockets bind the same port.
+	 *
+	 * @return the option, or null if it is not available for server sockets
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePortOption(){
+		try{
+			//Looked up reflectively, as the server is compiled for Java 8
+			SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+			ServerSocketChannel channel = ServerSocketChannel.open();
+			try{
+				if(channel.supportedOptions().contains(option))
+					return option;
+			}
+			finally{
+				channel.close();
+			}
+		}
+		catch(ReflectiveOperationException e){
+			//Not available before Java 9
+		}
+		catch(IOException e){
+			System.out.println(e.getMessage());
+		}
+		System.out.println("SO_REUSEPORT is not supported, the acceptor threads share one server socket.");
+		return null;
 	}
 
 	/**
@@ -68,7 +364,7 @@ public class MultithreadedServer implements Runnable{
 
 		try{
 			if(args.length<2)
-				System.out.println("Run Server: using java MultithreadedServer <portnumber> <serverDirectory>");
+				System.out.println("Run Server: using java MultithreadedServer <portnumber> <serverDirectory> [pool|virtual|nio|sharded]");
 			else if(args[0]==null || args[0].length()==0 ){
 				System.out.println("Invalid server port number as the argument.");
 			}
@@ -81,14 +377,58 @@ public class MultithreadedServer implements Runnable{
 				int portNumber = Integer.parseInt(args[0]);
 				String serverDirectory = args[1];
 
+				//Server mode: pool of blocking connection threads (default), a virtual thread per
+				//connection, or non-blocking selectors
+				String serverMode = args.length>2 ? args[2] : "pool";
+
 				//Check if correct server directory is passed
 				if(Files.notExists(Paths.get(serverDirectory)))
 					System.out.println("The directory "+serverDirectory+" does not exist on the server ");
-				else{
+				else if(serverMode.equals("nio") || serverMode.equals("sharded")){
+					MultithreadedServer requestHandler = new MultithreadedServer(serverDirectory);
+					if(ACCESS_LOG_FILE.length()>0)
+						requestHandler.openAccessLog();
+					if(METRICS_JMX_ENABLED)
+						requestHandler.getMetrics().registerMBean();
+					if(FILE_WATCH_ENABLED)
+						requestHandler.watchFiles(FILE_WATCH_SCAN_INTERVAL_MILLIS);
+					if(WARMUP_ENABLED)
+						requestHandler.warmUp(WARMUP_MAX_BYTES, WARMUP_PARALLELISM);
 					System.out.println("Waiting for client connections at port "+portNumber+"....");
-					Thread serverInstanceThread = new Thread(new MultithreadedServer(portNumber, serverDirectory));
+					printCacheStatisticsOnExit(requestHandler);
+
+					//The sharded mode answers the requests on the event loops, and only reads files on the pool
+					boolean sharded = serverMode.equals("sharded");
+					ExecutorService workerPool = sharded ? new ForkJoinPool(FILE_READ_PARALLELISM) : pool;
+					requestHandler.getMetrics().setExecutors(workerPool);
+					Thread serverInstanceThread = new Thread(new SelectorServer(portNumber, 
+							requestHandler, workerPool, EVENT_LOOP_COUNT, sharded));
+					serverInstanceThread.start();
+				}
+				else if(serverMode.equals("pool") || serverMode.equals("virtual")){
+					//The server socket is bound after the warm-up, so no connection waits for it
+					MultithreadedServer server = new MultithreadedServer(serverDirectory);
+					if(ACCESS_LOG_FILE.length()>0)
+						server.openAccessLog();
+					if(METRICS_JMX_ENABLED)
+						server.getMetrics().registerMBean();
+					if(FILE_WATCH_ENABLED)
+						server.watchFiles(FILE_WATCH_SCAN_INTERVAL_MILLIS);
+					if(WARMUP_ENABLED)
+						server.warmUp(WARMUP_MAX_BYTES, WARMUP_PARALLELISM);
+					System.out.println("Waiting for client connections at port "+portNumber+"....");
+					ExecutorService[] connectionExecutors = new ExecutorService[ACCEPTOR_COUNT];
+					for(int i=0; i<connectionExecutors.length; i++){
+						connectionExecutors[i] = i==0 && serverMode.equals("pool") ? pool : newConnectionExecutor(serverMode);
+					}
+					server.listen(portNumber, connectionExecutors, ACCEPTOR_REUSE_PORT);
+					printCacheStatisticsOnExit(server);
+					Thread serverInstanceThread = new Thread(server);
 					serverInstanceThread.start();
 				}
+				else{
+					System.out.println("Invalid server mode "+serverMode+", use pool, virtual, nio or sharded.");
+				}
 			}
 		}
 		catch(Exception e){
@@ -96,6 +436,98 @@ public class MultithreadedServer implements Runnable{
 		}
 	}
 
+	/**
+	 * Creates a new executor for running the client connections of the given server mode.
+	 * The "virtual" mode starts a virtual thread per connection, so that the number of 
+	 * concurrent connections is not limited by the pool size. On Java versions without 
+	 * virtual threads, it falls back to a new platform thread per connection.
+	 *
+	 * @param serverMode the server mode, pool or virtual
+	 * @return the executor for the client connections
+	 */
+	public static ExecutorService newConnectionExecutor(String serverMode){
+		if(serverMode.equals("virtual")){
+			try{
+				//Looked up reflectively, as the server is compiled for Java 8
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) factory.invoke(null);
+			}
+			catch(ReflectiveOperationException e){
+				System.out.println("Virtual threads are not available, using a thread per connection.");
+				return Executors.newCachedThreadPool();
+			}
+		}
+		return newBoundedPool(MAX_REQUESTS_ALLOWED);
+	}
+
+	/**
+	 * Creates a fixed thread pool whose queue holds at most the admission queue capacity of tasks.
+	 * When the queue is full, a new task is rejected with a RejectedExecutionException, instead of
+	 * waiting longer and longer behind a growing backlog.
+	 *
+	 * @param threadCount the number of threads
+	 * @return the thread pool
+	 */
+	static ExecutorService newBoundedPool(int threadCount){
+		BlockingQueue<Runnable> queue = ADMISSION_QUEUE_CAPACITY>0 ?
+				new ArrayBlockingQueue<Runnable>(ADMISSION_QUEUE_CAPACITY) : new LinkedBlockingQueue<Runnable>();
+		return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, queue);
+	}
+
+	/**
+	 * Prints the counters of the file content cache when the server is shut down,
+	 * so that the cache can be sized for the hot set of files.
+	 *
+	 * @param server the server
+	 */
+	private static void printCacheStatisticsOnExit(final MultithreadedServer server){
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
+			@Override
+			public void run(){
+				if(server.getAccessLog()!=null){
+					server.getAccessLog().stop();
+					System.out.println(server.getAccessLog());
+				}
+				System.out.println(server.getFileMetadataCache());
+				if(server.getFileWatcher()!=null)
+					System.out.println(server.getFileWatcher());
+				if(server.getFileContentCache()!=null)
+					System.out.println(server.getFileContentCache());
+				if(server.getMappedFileCache()!=null)
+					System.out.println(server.getMappedFileCache());
+				if(server.getCompressedContentCache()!=null)
+					System.out.println(server.getCompressedContentCache());
+				System.out.println(server.getBufferPool());
+				System.out.println(server.getAdmissionController());
+				System.out.println(server.getMetrics());
+			}
+		}));
+	}
+
+	/**
+	 * Stops accepting client connections.
+	 */
+	public void stop(){
+		closeServerSockets(serverSockets);
+	}
+
+	/**
+	 * Closes server sockets.
+	 *
+	 * @param serverSockets the server sockets, which may be null or repeated
+	 */
+	private static void closeServerSockets(ServerSocket[] serverSockets){
+		for(ServerSocket serverSocket: serverSockets){
+			if(serverSocket==null)
+				continue;
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Runnable#run()
 	 */
@@ -106,59 +538,138 @@ public class MultithreadedServer implements Runnable{
 	}
 
 	/**
-	 * Process client requests.
+	 * Process client requests. The first acceptor thread is the calling thread, and the other
+	 * acceptor threads are started.
 	 */
 	public void processClientRequests() {
+		for(int i=1; i<serverSockets.length; i++){
+			final ServerSocket serverSocket = serverSockets[i];
+			final ExecutorService connectionExecutor = connectionExecutors[i];
+			new Thread(new Runnable(){
+				@Override
+				public void run(){
+					acceptClientConnections(serverSocket, connectionExecutor);
+				}
+			}, "acceptor-"+i).start();
+		}
+		acceptClientConnections(serverSockets[0], connectionExecutors[0]);
+	}
+
+	/**
+	 * Accepts client connections, and runs the handler of each on the executor.
+	 *
+	 * @param serverSocket the server socket accepting the connections
+	 * @param connectionExecutor the executor running the handler of each client connection
+	 */
+	private void acceptClientConnections(final ServerSocket serverSocket, final ExecutorService connectionExecutor) {
 		try{
 			while(true)
 			{
 				//Wait for connection from Client 
 				Socket clientSocket = serverSocket.accept();
+				clientSocket.setTcpNoDelay(true);
+
+				//Answer with 503 Service Unavailable right away, if the server is overloaded
+				if(!admitWork(connectionExecutor)){
+					shedConnection(clientSocket);
+					continue;
+				}
+				final long acceptTime = System.nanoTime();
 				Runnable r = new Runnable()
 				{
 					@Override
 					public void run()
 					{	
-						System.out.println("Connected to " + clientSocket.getRemoteSocketAddress() );
+						admissionController.dequeued(System.nanoTime() - acceptTime);
+						metrics.connectionOpened();
+
+						//Parser reading the HTTP requests sent on this connection
+						HttpRequestParser parser = new HttpRequestParser(bufferPool);
+
+						//Deadline of the current read or write, which closes the connection when it passes
+						TimerWheel.Timeout deadline = null;
 
 						boolean keepAlive = false;
 						do
 						{	
-							//Input stream from accepting Client requests
-							DataInputStream in = null;
-
-							//Buffered writer for sending response to Clients
-							BufferedWriter writer = null;
 							try{
-								//Initialize input stream object
-								in = new DataInputStream(clientSocket.getInputStream());
-
-								//Read the Client's request
-								String requestFromClient = in.readUTF();
-								System.out.println("Received request:"+requestFromClient);
-
-								//Check if the request is of type Keep-Alive
-								String fieldToCheck = "Connection: Keep-Alive";
-								if(isFieldPresent(fieldToCheck, requestFromClient))
-									keepAlive = true;
-
-								//Process the Client's request and return HTTP response object
-								HttpResponse response = processRequest(requestFromClient);
+								//Wait for the next request, at most for the Keep-Alive timeout
+								deadline = scheduleClose(clientSocket, "idle", KEEP_ALIVE_TIMEOUT);
+								boolean received = parser.awaitInput(clientSocket.getChannel());
+								deadline.cancel();
+
+								//Read the Client's request, which has to arrive within the header read timeout
+								HttpRequest requestFromClient = null;
+								if(received){
+									deadline = scheduleClose(clientSocket, "header read", HEADER_READ_TIMEOUT);
+									long readStartTime = System.nanoTime();
+									requestFromClient = parser.readRequest(clientSocket.getChannel());
+									deadline.cancel();
+									if(requestFromClient!=null)
+										metrics.recordPhase(ServerMetrics.READ, readStartTime);
+								}
 
-								//DataOutputStream object to send response to Client
-								DataOutputStream out = new DataOutputStream(clientSocket.getOutputStream());
-
-								//Convert the HTTP response object to String format
-								String responseToClient = response.toString();
-
-								//Initialize the BufferedWriter object to send response to Client via OutputStream
-								writer = new BufferedWriter(new OutputStreamWriter(out), responseToClient.length());
-
-								//Send the response to the Client
-								writer.write(response.toString(),0,response.toString().length());
-								writer.flush();
+								//Stop accepting requests when Client is terminated
+								if(requestFromClient==null)
+									break;
+
+								//Process the request and the pipelined requests which were received with it
+								List<HttpResponse> responses = new ArrayList<HttpResponse>();
+								try{
+									while(requestFromClient!=null){
+										//Check if the request is of type Keep-Alive
+										keepAlive = requestFromClient.isKeepAlive();
+
+										//Process the Client's request and return HTTP response object
+										long processStartTime = System.nanoTime();
+										HttpResponse response = processRequest(requestFromClient);
+										logAccess(clientSocket.getRemoteSocketAddress(), requestFromClient, response, processStartTime);
+										if(!keepAlive)
+											response.getHttpResponseHeader().put("Connection", "close");
+										responses.add(response);
+										if(!keepAlive || responses.size()==MAX_PIPELINED_REQUESTS)
+											break;
+										long parseStartTime = System.nanoTime();
+										requestFromClient = parser.parseBufferedInput();
+										if(requestFromClient!=null)
+											metrics.recordPhase(ServerMetrics.READ, parseStartTime);
+									}
+								}
+								catch(HttpParseException e){
+									System.out.println(e.getMessage());
+									//Answer the malformed request and stop accepting requests on the connection
+									keepAlive = false;
+									HttpResponse response = createBadRequestResponse(e.getStatusCode());
+									logAccess(clientSocket.getRemoteSocketAddress(), null, response, System.nanoTime());
+									responses.add(response);
+								}
+								catch(IOException e){
+									//Release the bodies of the responses which will not be sent
+									for(HttpResponse response: responses){
+										response.getBody().close();
+									}
+									throw e;
+								}
+
+								//Send the responses to the Client in the order of the requests
+								deadline = scheduleClose(clientSocket, "write", WRITE_TIMEOUT);
+								sendResponses(clientSocket.getChannel(), responses);
+								deadline.cancel();
 
 							}
+							catch(HttpParseException e){
+								System.out.println(e.getMessage());
+								//Answer the malformed request and stop accepting requests on the connection
+								try{
+									HttpResponse response = createBadRequestResponse(e.getStatusCode());
+									logAccess(clientSocket.getRemoteSocketAddress(), null, response, System.nanoTime());
+									sendResponse(clientSocket.getChannel(), response);
+								}
+								catch(IOException ioException){
+									System.out.println(ioException.getMessage());
+								}
+								break;
+							}
 							catch(EOFException e){
 								if(e.getMessage()!=null)
 									System.out.println(e.getMessage());
@@ -171,16 +682,28 @@ public class MultithreadedServer implements Runnable{
 								//Stop accepting request when there is an I/O Exception
 								break;
 							}
-							System.out.println("Request successfully processed!");
-						}while((System.currentTimeMillis()-startTime)<MAX_WAIT_TIME && keepAlive);
-
-						//Print that the connection with the Client has ended
-						System.out.println("Connection with client "+" "+
-								clientSocket.getRemoteSocketAddress()+" has now ended");
-
+						}while(keepAlive);
+						if(deadline!=null)
+							deadline.cancel();
+						parser.release();
+
+						//Close the connection with the Client
+						try {
+							clientSocket.close();
+						} catch (IOException e) {
+							System.out.println(e.getMessage());
+						}
+
+						metrics.connectionClosed();
 					}
 				};
-				pool.execute(r);
+				try{
+					connectionExecutor.execute(r);
+				}
+				catch(RejectedExecutionException e){
+					admissionController.queueFull();
+					shedConnection(clientSocket);
+				}
 			}
 
 		}catch(Exception e){
@@ -192,153 +715,547 @@ public class MultithreadedServer implements Runnable{
 			} catch (IOException e) {
 				System.out.println(e.getMessage());
 			}
-			pool.shutdown();
+			connectionExecutor.shutdown();
 		}
 	}
 
 	/**
-	 * Validate HTTP request.
+	 * Answers a connection which the server is too busy for with 503 Service Unavailable from the
+	 * accepting thread, without waiting for its request. The connection is closed a moment later,
+	 * as closing it before the Client read the response would reset it.
 	 *
-	 * @param requestFromClient the requestLine received from Client
-	 * @return true, if it is a valid request
+	 * @param clientSocket the socket of the client connection
 	 */
-	public boolean validateRequest(final String requestFromClient){
-
-		String request = null;
-
-		//Check if the request has body
-		if(requestFromClient.indexOf("\r\n")==-1){
-			request = requestFromClient;
+	private void shedConnection(final Socket clientSocket){
+		HttpResponse response = createServiceUnavailableResponse("HTTP/1.1");
+		logAccess(clientSocket.getRemoteSocketAddress(), null, response, System.nanoTime());
+		try{
+			sendResponse(clientSocket.getChannel(), response);
+			clientSocket.shutdownOutput();
 		}
-		else{
-			String requestAndBody[] = requestFromClient.split("\r\n");
-			request = requestAndBody[0];
+		catch(IOException e){
+			System.out.println(e.getMessage());
 		}
+		timerWheel.schedule(new Runnable(){
+			@Override
+			public void run(){
+				try {
+					clientSocket.close();
+				} catch (IOException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}, SHED_CLOSE_DELAY_MILLIS);
+	}
 
-		//Get all header info into a list
-		String requestHeaderList[] = request.split("\n");
-
-		//Extract method, file path, protocol
-		String requestLine[] = requestHeaderList[0].split(" ");
+	/**
+	 * Schedules closing the connection with the Client when a deadline passes. Shutting down and
+	 * closing the socket aborts the read or write the connection is blocked in.
+	 *
+	 * @param clientSocket the socket of the client connection
+	 * @param deadlineName the name of the deadline, for the log
+	 * @param timeoutMillis the time until the deadline in milliseconds
+	 * @return the timeout, which is cancelled when the read or write finished in time
+	 */
+	private TimerWheel.Timeout scheduleClose(final Socket clientSocket, final String deadlineName, int timeoutMillis){
+		return timerWheel.schedule(new Runnable(){
+			@Override
+			public void run(){
+				System.out.println("Closing connection with client "+clientSocket.getRemoteSocketAddress()
+						+" after its "+deadlineName+" deadline passed");
+				try {
+					//A file transfer blocked in the socket is only woken up by shutting the socket down
+					if(!clientSocket.isOutputShutdown())
+						clientSocket.shutdownOutput();
+				} catch (IOException e) {
+					System.out.println(e.getMessage());
+				}
+				try {
+					clientSocket.close();
+				} catch (IOException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}, timeoutMillis);
+	}
 
-		//Check if it is an HTTP Request
-		if(requestLine[2].indexOf("HTTP")==-1){
-			System.out.println("Server processes only HTTP request");
-			return false;
-		}
-		return true;
+	/**
+	 * Send the HTTP response to the Client. The header is written from a small buffer, and a body
+	 * held in memory is written together with it. A file body is transferred from the file to the
+	 * channel, without copying it into the Java heap.
+	 *
+	 * @param channel the blocking channel of the client connection
+	 * @param response the HTTP response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void sendResponse(WritableByteChannel channel, HttpResponse response) throws IOException{
+		sendResponses(channel, Collections.singletonList(response));
 	}
 
 	/**
-	 * Process request. 
+	 * Sends the responses to pipelined requests in their order. The headers and the bodies held
+	 * in memory of consecutive responses are sent together with a gathering write, and only a
+	 * body which is sent from its file needs writes of its own.
 	 *
-	 * @param requestFromClient the request from client
-	 * @return the HTTPResponse
+	 * @param channel the channel of the client connection
+	 * @param responses the HTTP responses
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	public HttpResponse processRequest(String requestFromClient) throws IOException{
-		String request = null;
-		String body = null;
+	public void sendResponses(WritableByteChannel channel, List<HttpResponse> responses) throws IOException{
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		BufferPool.PooledBuffer headerBuffer = acquireHeaderBuffer(responses);
+		long writeStartTime = System.nanoTime();
+		try{
+			ByteBuffer headers = headerBuffer.getBuffer();
+			for(HttpResponse response: responses){
+				ResponseBody body = response.getBody();
+				long serializeStartTime = System.nanoTime();
+				buffers.add(writeHeader(response, headers));
+				metrics.recordPhase(ServerMetrics.SERIALIZE, serializeStartTime);
+				ByteBuffer bodyBuffer = body.getBuffer();
+				if(bodyBuffer!=null){
+					buffers.add(bodyBuffer);
+					continue;
+				}
 
-		//Check if the request has body
-		if(requestFromClient.indexOf("\r\n")==-1){
-			request = requestFromClient;
+				//Send the responses gathered so far, then the body from its file
+				metrics.recordBytesSent(writeFully(channel, buffers));
+				buffers.clear();
+				metrics.recordBytesSent(HttpResponse.writeBody(body, channel));
+			}
+			metrics.recordBytesSent(writeFully(channel, buffers));
+			metrics.recordPhase(ServerMetrics.WRITE, writeStartTime);
 		}
-		else{
-			String requestAndBody[] = requestFromClient.split("\r\n");
-			request = requestAndBody[0];
-			body = requestAndBody[1];
+		finally{
+			headerBuffer.release();
+			for(HttpResponse response: responses){
+				response.getBody().close();
+			}
 		}
-		//Get all header info into a list
-		String tokenizedRequestHeader[] = request.split("\n");
-
-		//Extract method, file path, protocol
-		String requestLine[] = tokenizedRequestHeader[0].split(" ");
-
-		//Process only GET requests, as currently only GET is supported
-		if(requestLine[0].equals("GET")){
+	}
 
-			//Create HTTP response object
-			HttpResponse response = processGETRequest(request, body);
-			return response;
+	/**
+	 * Acquires a buffer with room for the headers of all the responses.
+	 *
+	 * @param responses the HTTP responses
+	 * @return the pooled buffer
+	 */
+	BufferPool.PooledBuffer acquireHeaderBuffer(Iterable<HttpResponse> responses){
+		int headerLength = 0;
+		for(HttpResponse response: responses){
+			headerLength += response.getHeaderLength();
 		}
-		else{
-			//If it is not a GET request, send a 501 NOT_IMPLEMENTED response to the user
-			String httpProtocol = requestLine[2];
-
-			//Create ResponseStatusCode object for representing the error
-			ResponseStatusCode statusCodeObj = new ResponseStatusCode(501);
-
-			//Create response body as HTML page to display Unimplemented method
-			String responseBody = "<html><title>Page Error</title><body>Unimplemented method</body></html>";
-
-			//Create the Response line to include HTTP protocol, and status code of the response
-			ResponseLine responseLine = new ResponseLine(httpProtocol, statusCodeObj);
-
-			//Generate response headers in the HTTP response
-			Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
-
-			//Generate HTTP response object with all the required fields
-			HttpResponse httpResponseObject = new HttpResponse(responseLine, httpResponseHeader, 
-					responseBody);
+		return bufferPool.acquire(headerLength);
+	}
 
-			return httpResponseObject;
+	/**
+	 * Writes the header of the response into the header buffer, after the headers written before.
+	 *
+	 * @param response the HTTP response
+	 * @param headers the header buffer
+	 * @return a buffer over the bytes of the header
+	 */
+	static ByteBuffer writeHeader(HttpResponse response, ByteBuffer headers){
+		int start = headers.position();
+		response.writeHeaderTo(headers);
+		ByteBuffer header = headers.duplicate();
+		header.flip();
+		header.position(start);
+		return header;
+	}
 
+	/**
+	 * Writes all remaining bytes of the buffers, with as few writes as possible.
+	 *
+	 * @param channel the channel
+	 * @param buffers the buffers
+	 * @return the number of bytes written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static long writeFully(WritableByteChannel channel, List<ByteBuffer> buffers) throws IOException{
+		if(buffers.isEmpty())
+			return 0;
+		if(channel instanceof GatheringByteChannel){
+			ByteBuffer[] bufferArray = buffers.toArray(new ByteBuffer[buffers.size()]);
+			long length = 0;
+			for(ByteBuffer buffer: bufferArray){
+				length += buffer.remaining();
+			}
+			long remaining = length;
+			while(remaining>0){
+				remaining -= ((GatheringByteChannel) channel).write(bufferArray);
+			}
+			return length;
 		}
-
-
+		long length = 0;
+		for(ByteBuffer buffer: buffers){
+			while(buffer.hasRemaining()){
+				length += channel.write(buffer);
+			}
+		}
+		return length;
 	}
 
 	/**
-	 * Process GET request. Based on the current implementation, the Request Body of the request
-	 * send by the Client will be ignored, because this GET request just retrieves the contents
-	 * of the file specified by the file-path/URL.
+	 * Send the HTTP response to the Client.
 	 *
-	 * @param request the request
-	 * @param body the body
-	 * @return the my http response
+	 * @param out the output stream of the client connection
+	 * @param response the HTTP response
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	public HttpResponse processGETRequest(String request, String body) throws IOException{
-		/*
-		 * get details of the file in the request and save in response body
-		 * create the response object
+	public void sendResponse(OutputStream out, HttpResponse response) throws IOException{
+		sendResponse(Channels.newChannel(out), response);
+		out.flush();
+	}
+
+	/**
+	 * Validate HTTP request.
+	 *
+	 * @param requestFromClient the request received from Client
+	 * @return true, if it is a valid request
+	 */
+	public boolean validateRequest(final String requestFromClient){
+
+		//Parse the request line and the header fields of the request
+		HttpRequest request = null;
+		try{
+			request = HttpRequestParser.parseRequest(requestFromClient);
+		}
+		catch(HttpParseException e){
+			System.out.println(e.getMessage());
+			return false;
+		}
+
+		//Check if it is an HTTP Request
+		if(request.getRequestLine().getHttpProtocol().indexOf("HTTP")==-1){
+			System.out.println("Server processes only HTTP request");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Process request. 
+	 *
+	 * @param requestFromClient the request from client
+	 * @return the HTTPResponse
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public HttpResponse processRequest(String requestFromClient) throws IOException{
+		return processRequest(HttpRequestParser.parseRequest(requestFromClient));
+	}
+
+	/**
+	 * Process request. 
+	 *
+	 * @param requestFromClient the parsed request from client
+	 * @return the HTTPResponse
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public HttpResponse processRequest(HttpRequest requestFromClient) throws IOException{
+		long startTime = System.nanoTime();
+		HttpResponse response = createResponse(requestFromClient);
+		metrics.recordPhase(ServerMetrics.PROCESS, startTime);
+		metrics.recordRequest(requestFromClient.getRequestLine().getHttpMethod(),
+				response.getResponseLine().getStatus().getCode());
+		return response;
+	}
+
+	/**
+	 * Creates the response to a request.
+	 *
+	 * @param requestFromClient the parsed request from client
+	 * @return the HTTPResponse
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private HttpResponse createResponse(HttpRequest requestFromClient) throws IOException{
+
+		//Process only GET requests, as currently only GET is supported
+		if(requestFromClient.getRequestLine().getHttpMethod().equals("GET")){
+
+			//Answer with the metrics of the server at their own path
+			if(METRICS_PATH.length()>0 && METRICS_PATH.equals(requestFromClient.getRequestLine().getURL()))
+				return createMetricsResponse(requestFromClient.getRequestLine().getHttpProtocol());
+
+			//Create HTTP response object
+			HttpResponse response = processGETRequest(requestFromClient);
+			return response;
+		}
+		else{
+			//If it is not a GET request, send a 501 NOT_IMPLEMENTED response to the user
+			String httpProtocol = requestFromClient.getRequestLine().getHttpProtocol();
+
+			//Create ResponseStatusCode object for representing the error
+			ResponseStatusCode statusCodeObj = new ResponseStatusCode(501);
+
+			//Create response body as HTML page to display Unimplemented method
+			String responseBody = "<html><title>Page Error</title><body>Unimplemented method</body></html>";
+
+			//Create the Response line to include HTTP protocol, and status code of the response
+			ResponseLine responseLine = new ResponseLine(httpProtocol, statusCodeObj);
+
+			//Generate response headers in the HTTP response
+			Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
+
+			//Generate HTTP response object with all the required fields
+			HttpResponse httpResponseObject = new HttpResponse(responseLine, httpResponseHeader, 
+					responseBody);
+
+			return httpResponseObject;
+
+		}
+
+
+	}
+
+	/**
+	 * Creates the response to a request which could not be parsed.
+	 *
+	 * @return the 400 Bad Request HTTP response
+	 */
+	public HttpResponse createBadRequestResponse(){
+		return createBadRequestResponse(400);
+	}
+
+	/**
+	 * Creates the response to a request which could not be parsed, with the status code of its error.
+	 *
+	 * @param statusCode the status code, 400 or 505 for an unsupported HTTP version
+	 * @return the 400 Bad Request or 505 HTTP Version Not Supported HTTP response
+	 */
+	public HttpResponse createBadRequestResponse(int statusCode){
+		ResponseStatusCode statusCodeObj = new ResponseStatusCode(statusCode);
+		String responseBody = statusCode==505 ? "<html><title>Page Error</title><body>HTTP version not supported</body></html>"
+				: "<html><title>Page Error</title><body>Bad request</body></html>";
+		ResponseLine responseLine = new ResponseLine("HTTP/1.1", statusCodeObj);
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
+		httpResponseHeader.put("Connection", "close");
+		metrics.recordRequest(null, statusCode);
+		return new HttpResponse(responseLine, httpResponseHeader, responseBody);
+	}
+
+	/**
+	 * Creates the response to a request which the server is too busy for, which tells the Client
+	 * when to retry.
+	 *
+	 * @param httpProtocol the HTTP protocol of the request
+	 * @return the 503 Service Unavailable HTTP response
+	 */
+	public HttpResponse createServiceUnavailableResponse(String httpProtocol){
+		ResponseStatusCode statusCodeObj = new ResponseStatusCode(503);
+		String responseBody = "<html><title>Page Error</title><body>Service unavailable</body></html>";
+		ResponseLine responseLine = new ResponseLine(httpProtocol, statusCodeObj);
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
+		httpResponseHeader.put("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+		httpResponseHeader.put("Connection", "close");
+		metrics.recordRequest(null, 503);
+		return new HttpResponse(responseLine, httpResponseHeader, responseBody);
+	}
+
+	/**
+	 * Creates the response with the metrics of the server in the text exposition format, which
+	 * monitoring systems such as Prometheus scrape.
+	 *
+	 * @param httpProtocol the HTTP protocol of the request
+	 * @return the HTTP response
+	 */
+	HttpResponse createMetricsResponse(String httpProtocol){
+		byte[] metricsText = metrics.getMetricsText().getBytes(StandardCharsets.UTF_8);
+		ResponseLine responseLine = new ResponseLine(httpProtocol, new ResponseStatusCode(200));
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(metricsText.length);
+		httpResponseHeader.put("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		httpResponseHeader.put("Cache-Control", "no-store");
+		return new HttpResponse(responseLine, httpResponseHeader, new ByteArrayBody(metricsText));
+	}
+
+	/**
+	 * Process GET request. Based on the current implementation, the Request Body of the request
+	 * send by the Client will be ignored, because this GET request just retrieves the contents
+	 * of the file specified by the file-path/URL.
+	 *
+	 * @param request the request
+	 * @return the my http response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public HttpResponse processGETRequest(HttpRequest request) throws IOException{
+		return processGETRequest(request, true);
+	}
+
+	/**
+	 * Process GET request.
+	 *
+	 * @param request the request
+	 * @param lookUpAgain true, if the file is looked up again when it was deleted after its metadata was cached
+	 * @return the HTTP response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private HttpResponse processGETRequest(HttpRequest request, boolean lookUpAgain) throws IOException{
+		/*
+		 * get details of the file in the request and save in response body
+		 * create the response object
 		 * create string based response object
 		 * return string response back to server
 		 * NOTES: Not considering body this time
 		 */
-		String requestHeaderList[] = request.split("\n");
 
 		/*
 		 * Process request line
 		 */
-		ResponseStatusCode statusCodeObj = null;
-		byte[] responseBytes = null;
-
-		String requestLine[] = requestHeaderList[0].split(" ");
-		String filePath = requestLine[1];
-		String responseBody = null;
-		String httpProtocol = requestLine[2];
-		responseBytes = getFileContent(filePath);
-		if(responseBytes == null){
-			statusCodeObj = new ResponseStatusCode(404);
-			responseBody = "<html><title>Page Error</title><body>Page not found</body></html>";
+		String filePath = request.getRequestLine().getURL();
+		String httpProtocol = request.getRequestLine().getHttpProtocol();
+		FileMetadataCache.FileMetadata metadata = fileMetadataCache.get(filePath);
+		if(!metadata.exists)
+			return createNotFoundResponse(httpProtocol);
+
+		//Choose the representation of the file: its precompressed gzip file, the file compressed
+		//on the fly, or the file as it is
+		String contentEncoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+		FileMetadataCache.FileMetadata precompressed = ContentEncoding.GZIP.equals(contentEncoding) ?
+				metadata.precompressed : null;
+		boolean streamCompressed = false;
+		if(precompressed==null && !isCompressible(metadata.length)){
+			//Files too large to compress into memory are compressed while they are sent
+			streamCompressed = contentEncoding!=null && isStreamCompressible(request, metadata.length);
+			if(!streamCompressed)
+				contentEncoding = null;
 		}
-		else{
-			statusCodeObj = new ResponseStatusCode(200);
-			responseBody = new String(responseBytes);
+		FileMetadataCache.FileMetadata representation = precompressed!=null ? precompressed : metadata;
+		long lastModified = representation.lastModified;
+		String entityTag = contentEncoding==null || precompressed!=null ? representation.entityTag :
+			createEntityTag(representation.length, lastModified, contentEncoding);
+
+		//Answer with 304 Not Modified, without touching the file content, if the Client's copy is current
+		if(isNotModified(request, entityTag, lastModified)){
+			ResponseLine responseLine = new ResponseLine(httpProtocol, new ResponseStatusCode(304));
+			Map<String, String> httpResponseHeader = new LinkedHashMap<String, String>();
+			httpResponseHeader.put("Date", HttpDateClock.currentDate());
+			httpResponseHeader.put("ETag", entityTag);
+			httpResponseHeader.put("Last-Modified", representation.lastModifiedValue);
+			httpResponseHeader.put("Vary", "Accept-Encoding");
+			return new HttpResponse(responseLine, httpResponseHeader, new ByteArrayBody(new byte[0]));
+		}
+
+		//Send the file compressed, if the Client accepts a content encoding
+		ResponseBody body = null;
+		if(precompressed!=null)
+			body = getFileBody(precompressed);
+		else if(streamCompressed)
+			body = getStreamCompressedBody(metadata.file, contentEncoding);
+		else if(contentEncoding!=null)
+			body = getCompressedBody(metadata, contentEncoding);
+		if(body==null && precompressed==null){
+			contentEncoding = null;
+			body = getFileBody(metadata);
+		}
+		if(body==null){
+			//The file was deleted since it was looked up, look it up once more
+			fileMetadataCache.invalidate(filePath);
+			if(lookUpAgain)
+				return processGETRequest(request, false);
+			return createNotFoundResponse(httpProtocol);
+		}
+
+		//Send only the requested ranges, if the Client's copy of the file is still the one they are of
+		String range = request.getHeader("Range");
+		if(range!=null && body.getContentLength()>=0 && isRangeCurrent(request, entityTag, lastModified)){
+			List<ByteRange> ranges = ByteRange.parse(range, body.getContentLength());
+
+			//The parts of a multipart body cannot carry a content encoding
+			if(ranges!=null && (ranges.size()<=1 || contentEncoding==null)){
+				try{
+					return createPartialContentResponse(httpProtocol, body, ranges, metadata.contentType,
+							representation.lastModifiedValue, entityTag, contentEncoding);
+				}
+				finally{
+					body.close();
+				}
+			}
 		}
 
 		//Create Response line eg.: HTTP/1.1 XXX STATUS
-		ResponseLine responseLine = new ResponseLine(httpProtocol, statusCodeObj);
+		ResponseLine responseLine = new ResponseLine(httpProtocol, new ResponseStatusCode(200));
 
-		Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(body.getContentLength(),
+				metadata.contentType, representation.lastModifiedValue, entityTag);
+		if(contentEncoding!=null)
+			httpResponseHeader.put("Content-Encoding", contentEncoding);
+		httpResponseHeader.put("Vary", "Accept-Encoding");
 
-		HttpResponse httpResponseObject = new HttpResponse(responseLine, httpResponseHeader, 
-				responseBody);
+		HttpResponse httpResponseObject = new HttpResponse(responseLine, httpResponseHeader, body);
 		return httpResponseObject;
 	}
 
+	/**
+	 * Creates the response to a request of a file which does not exist.
+	 *
+	 * @param httpProtocol the HTTP protocol of the request
+	 * @return the 404 Not Found HTTP response
+	 */
+	HttpResponse createNotFoundResponse(String httpProtocol){
+		ResponseStatusCode statusCodeObj = new ResponseStatusCode(404);
+		String responseBody = "<html><title>Page Error</title><body>Page not found</body></html>";
+		ResponseLine responseLine = new ResponseLine(httpProtocol, statusCodeObj);
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
+		return new HttpResponse(responseLine, httpResponseHeader, responseBody);
+	}
+
+	/**
+	 * Creates the response to a range request: 206 Partial Content with the single range,
+	 * 206 Partial Content with a multipart/byteranges body of several ranges, or 416 Range Not
+	 * Satisfiable if none of the ranges is within the file. The ranges are written from regions
+	 * of the body, so a file is transferred only from the requested positions.
+	 *
+	 * @param httpProtocol the HTTP protocol of the request
+	 * @param body the body of the whole file, which is not written
+	 * @param ranges the satisfiable ranges
+	 * @param contentType the content type of the file
+	 * @param lastModifiedValue the Last-Modified header value of the file
+	 * @param entityTag the entity tag of the file
+	 * @param contentEncoding the content encoding of the body, or null if the file is sent as it is
+	 * @return the HTTP response
+	 */
+	HttpResponse createPartialContentResponse(String httpProtocol, ResponseBody body, List<ByteRange> ranges,
+			String contentType, String lastModifiedValue, String entityTag, String contentEncoding){
+		long length = body.getContentLength();
+		if(ranges.isEmpty()){
+			String responseBody = "<html><title>Page Error</title><body>Range not satisfiable</body></html>";
+			ResponseLine responseLine = new ResponseLine(httpProtocol, new ResponseStatusCode(416));
+			Map<String, String> httpResponseHeader = createResponseHeaderFields(responseBody);
+			httpResponseHeader.put("Content-Range", "bytes */"+length);
+			return new HttpResponse(responseLine, httpResponseHeader, responseBody);
+		}
+
+		ResponseBody partialBody;
+		String multipartContentType = null;
+		if(ranges.size()==1){
+			partialBody = body.getRegion(ranges.get(0).getFirst(), ranges.get(0).getLength());
+		}
+		else{
+			//Each part is preceded by a delimiter with its own header, and the last one by the close delimiter
+			String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+			multipartContentType = "multipart/byteranges; boundary="+boundary;
+			List<ResponseBody> parts = new ArrayList<ResponseBody>(2*ranges.size()+1);
+			for(ByteRange byteRange: ranges){
+				String delimiter = "\r\n--"+boundary+"\r\nContent-Type: "+contentType+"\r\nContent-Range: "
+						+byteRange.toContentRange(length)+"\r\n\r\n";
+				parts.add(new ByteArrayBody(delimiter.getBytes(StandardCharsets.ISO_8859_1)));
+				parts.add(body.getRegion(byteRange.getFirst(), byteRange.getLength()));
+			}
+			parts.add(new ByteArrayBody(("\r\n--"+boundary+"--\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+			partialBody = new MultipartBody(parts);
+		}
+
+		ResponseLine responseLine = new ResponseLine(httpProtocol, new ResponseStatusCode(206));
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(partialBody.getContentLength(),
+				multipartContentType!=null ? multipartContentType : contentType, lastModifiedValue, entityTag);
+		if(multipartContentType==null)
+			httpResponseHeader.put("Content-Range", ranges.get(0).toContentRange(length));
+		if(contentEncoding!=null)
+			httpResponseHeader.put("Content-Encoding", contentEncoding);
+		httpResponseHeader.put("Vary", "Accept-Encoding");
+		return new HttpResponse(responseLine, httpResponseHeader, partialBody);
+	}
+
 	/**
 	 * Creates the response header fields.
 	 *
@@ -346,13 +1263,136 @@ public class MultithreadedServer implements Runnable{
 	 * @return the map
 	 */
 	public Map<String, String> createResponseHeaderFields(String responseBody){
+		return createResponseHeaderFields(responseBody.getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	/**
+	 * Creates the response header fields.
+	 *
+	 * @param contentLength the number of bytes of the response body, or -1 if it is sent chunked
+	 * @return the map
+	 */
+	public Map<String, String> createResponseHeaderFields(long contentLength){
 		Map<String, String> httpResponseHeader = new LinkedHashMap<String, String>();
-		httpResponseHeader.put("Date", new Date().toString());
+		httpResponseHeader.put("Date", HttpDateClock.currentDate());
 		httpResponseHeader.put("Content-Type", "text/html");
-		httpResponseHeader.put("Content-Length", Integer.toString(responseBody.length()));
+		if(contentLength<0)
+			httpResponseHeader.put("Transfer-Encoding", "chunked");
+		else
+			httpResponseHeader.put("Content-Length", contentLengthValue(contentLength));
+		return httpResponseHeader;
+	}
+
+	/**
+	 * Creates the response header fields of a file, which also tell the Client its version.
+	 *
+	 * @param contentLength the length of the response body in bytes
+	 * @param contentType the content type of the response body
+	 * @param lastModifiedValue the Last-Modified header value of the file
+	 * @param entityTag the entity tag of the file
+	 * @return the response header fields
+	 */
+	public Map<String, String> createResponseHeaderFields(long contentLength, String contentType,
+			String lastModifiedValue, String entityTag){
+		Map<String, String> httpResponseHeader = createResponseHeaderFields(contentLength);
+		httpResponseHeader.put("Content-Type", contentType);
+		httpResponseHeader.put("Accept-Ranges", "bytes");
+		httpResponseHeader.put("Last-Modified", lastModifiedValue);
+		httpResponseHeader.put("ETag", entityTag);
 		return httpResponseHeader;
 	}
 
+	/**
+	 * Creates the entity tag of a version of a file from its size and modification time, eg.
+	 * "1f4-18b2a3c4d10". Each content encoding of the file gets its own entity tag, as the
+	 * bytes sent differ.
+	 *
+	 * @param length the size of the file
+	 * @param lastModified the modification time of the file
+	 * @param contentEncoding the content encoding, or null if the file is sent as it is
+	 * @return the entity tag
+	 */
+	public static String createEntityTag(long length, long lastModified, String contentEncoding){
+		StringBuilder entityTag = new StringBuilder(32);
+		entityTag.append('"').append(Long.toHexString(length)).append('-').append(Long.toHexString(lastModified));
+		if(contentEncoding!=null)
+			entityTag.append('-').append(contentEncoding);
+		return entityTag.append('"').toString();
+	}
+
+	/**
+	 * Checks if the Client's copy of the file is still current. If-None-Match is checked
+	 * against the entity tag; only without it, If-Modified-Since is checked against the
+	 * modification time, in whole seconds as HTTP dates have no milliseconds.
+	 *
+	 * @param request the request
+	 * @param entityTag the entity tag of the file
+	 * @param lastModified the modification time of the file
+	 * @return true, if the file can be answered with 304 Not Modified
+	 */
+	public boolean isNotModified(HttpRequest request, String entityTag, long lastModified){
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch!=null){
+			for(String candidate: ifNoneMatch.split(",")){
+				candidate = candidate.trim();
+				//Weak comparison, as for GET requests
+				if(candidate.startsWith("W/"))
+					candidate = candidate.substring(2);
+				if(candidate.equals("*") || candidate.equals(entityTag))
+					return true;
+			}
+			return false;
+		}
+		String ifModifiedSince = request.getHeader("If-Modified-Since");
+		if(ifModifiedSince!=null){
+			long since = HttpDateClock.parse(ifModifiedSince);
+			return since>=0 && lastModified/1000<=since/1000;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the ranges of a range request are of the current version of the file. Without
+	 * If-Range they always are; otherwise its entity tag has to match strongly, or its date has
+	 * to be the modification time of the file, so that a resumed download is not assembled from
+	 * two versions.
+	 *
+	 * @param request the request
+	 * @param entityTag the entity tag of the file
+	 * @param lastModified the modification time of the file
+	 * @return true, if the ranges are sent; false, if the whole file is sent
+	 */
+	public boolean isRangeCurrent(HttpRequest request, String entityTag, long lastModified){
+		String ifRange = request.getHeader("If-Range");
+		if(ifRange==null)
+			return true;
+		ifRange = ifRange.trim();
+		if(ifRange.startsWith("\""))
+			return ifRange.equals(entityTag);
+		if(ifRange.startsWith("W/"))
+			return false;
+		long date = HttpDateClock.parse(ifRange);
+		return date>=0 && date/1000==lastModified/1000;
+	}
+
+	/**
+	 * Gets the decimal String of a Content-Length value. The Strings of small values are
+	 * created only once, so responses of cached files do not create a new one.
+	 *
+	 * @param contentLength the content length
+	 * @return the decimal String
+	 */
+	static String contentLengthValue(long contentLength){
+		if(contentLength<0 || contentLength>=CONTENT_LENGTH_VALUES.length)
+			return Long.toString(contentLength);
+		String value = CONTENT_LENGTH_VALUES[(int) contentLength];
+		if(value==null){
+			//Racing threads create equal Strings, so no locking is needed
+			value = Long.toString(contentLength);
+			CONTENT_LENGTH_VALUES[(int) contentLength] = value;
+		}
+		return value;
+	}
 
 	/**
 	 * Gets the file content.
@@ -362,39 +1402,496 @@ public class MultithreadedServer implements Runnable{
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public byte[] getFileContent(String filePath) throws IOException{
+		FileMetadataCache.FileMetadata metadata = fileMetadataCache.get(filePath);
+		if(!metadata.exists)
+			return null;
+		return getFileContent(metadata);
+	}
 
-		//Get current working directory
-		String workingDirectory = System.getProperty("user.dir");
+	/**
+	 * Gets the file content, with the size and modification time the file was looked up with.
+	 *
+	 * @param metadata the metadata of the file
+	 * @return the file content
+	 * @throws IOException Signals that an I/O exception has occurred, eg. if the file does not exist any more.
+	 */
+	byte[] getFileContent(FileMetadataCache.FileMetadata metadata) throws IOException{
+		if(fileContentCache!=null)
+			return fileContentCache.getContent(metadata.file, metadata.lastModified, metadata.length);
+		return FileContentCache.readFile(metadata.file, metadata.length);
+	}
 
-		//Get complete file path
-		String completeFilePath = workingDirectory+"/"+serverDirectory + filePath;
+	/**
+	 * Gets the file content.
+	 *
+	 * @param file the resolved file
+	 * @return the file content, or null if it is not a file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public byte[] getFileContent(File file) throws IOException{
 
-		//Try to access the file
-		File file = new File(completeFilePath);
+		//Serve the file from the cache, if it is unchanged since it was cached
+		if(fileContentCache!=null)
+			return fileContentCache.getContent(file);
 
 		//Check if the file exists
 		if(file.isFile()){
 
-			//Initialize a file reader
-			FileInputStream reader = new FileInputStream(file);
+			//Read the content of the file
+			return FileContentCache.readFile(file, file.length());
+		}
+		else{
+			return null;
+		}
 
-			//Initialize a buffer of file length
-			long length = file.length();
-			byte[] responseBody = new byte[(int) length];
+	}
 
-			//Read the content of the file into the buffer
-			reader.read(responseBody);
+	/**
+	 * Gets the body of the file. Large files are sent from their memory-mapping or straight
+	 * from the file, smaller ones from the file content cache.
+	 *
+	 * @param metadata the metadata of the file
+	 * @return the body, or null if the file does not exist any more
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	ResponseBody getFileBody(FileMetadataCache.FileMetadata metadata) throws IOException{
+		ResponseBody body = null;
+		File file = metadata.file;
+		long length = metadata.length;
+		if(mappedFileCache!=null && length>=MMAP_MIN_BYTES)
+			body = mappedFileCache.getBody(file, metadata.lastModified, length);
+		//Files too large for a byte array are always sent from the file
+		if(body==null && (length>=ZERO_COPY_MIN_BYTES || length>Integer.MAX_VALUE - 8))
+			body = new FileRegionBody(file, length);
+		if(body==null){
+			try{
+				body = new ByteArrayBody(getFileContent(metadata));
+			}
+			catch(FileNotFoundException e){
+				return null;
+			}
+		}
+		return body;
+	}
 
-			//Close the reader after reading is done
-			reader.close();
+	/**
+	 * Checks if files of the given size are compressed on the fly.
+	 *
+	 * @param length the size of the file
+	 * @return true, if the size is in the size range of the compression
+	 */
+	boolean isCompressible(long length){
+		return compressedContentCache!=null && length>=COMPRESSION_MIN_BYTES && length<=COMPRESSION_MAX_BYTES;
+	}
+
+	/**
+	 * Checks if the file is compressed while it is sent. Its body is sent chunked, so only HTTP/1.1
+	 * Clients get it, and not for range requests, as the ranges would be of a body of unknown length.
+	 *
+	 * @param request the request
+	 * @param length the size of the file
+	 * @return true, if the file is compressed while it is sent
+	 */
+	boolean isStreamCompressible(HttpRequest request, long length){
+		return length>COMPRESSION_MAX_BYTES && length<=STREAMING_COMPRESSION_MAX_BYTES
+				&& "HTTP/1.1".equals(request.getRequestLine().getHttpProtocol()) && request.getHeader("Range")==null;
+	}
 
-			//Return the contents of the file
-			return responseBody;
+	/**
+	 * Gets the body of the file compressed with the content encoding while it is sent. The file is
+	 * read and compressed one chunk at a time, so it is never held in memory.
+	 *
+	 * @param file the file
+	 * @param contentEncoding the content encoding accepted by the Client
+	 * @return the chunked body, or null if the file does not exist any more
+	 */
+	ResponseBody getStreamCompressedBody(File file, String contentEncoding){
+		try{
+			return new ChunkedBody(ContentEncoding.compress(new FileInputStream(file), contentEncoding));
 		}
-		else{
+		catch(FileNotFoundException e){
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the body of the file compressed with the content encoding. The file is compressed
+	 * on its first request and the compressed variant is cached.
+	 *
+	 * @param metadata the metadata of the file
+	 * @param contentEncoding the content encoding accepted by the Client
+	 * @return the compressed body, or null if the file is sent as it is
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	ResponseBody getCompressedBody(FileMetadataCache.FileMetadata metadata, String contentEncoding) throws IOException{
+		//Files out of the size range of the compression are sent as they are
+		File file = metadata.file;
+		long length = metadata.length;
+		if(!isCompressible(length))
 			return null;
+		long lastModified = metadata.lastModified;
+		byte[] compressedContent = compressedContentCache.get(file.getPath(), contentEncoding, lastModified, length);
+		if(compressedContent==null){
+			byte[] content;
+			try{
+				content = getFileContent(metadata);
+			}
+			catch(FileNotFoundException e){
+				return null;
+			}
+			if(content.length!=length)
+				return null;
+			compressedContent = ContentEncoding.compress(content, contentEncoding);
+			compressedContentCache.put(file.getPath(), contentEncoding, lastModified, length, compressedContent);
 		}
 
+		//Content which does not become smaller is sent as it is
+		if(compressedContent.length>=length)
+			return null;
+		return new ByteArrayBody(compressedContent);
+	}
+
+	/**
+	 * Resolves the requested file path in the server directory.
+	 *
+	 * @param filePath the file path
+	 * @return the file, or null if the path is invalid or leaves the server directory
+	 */
+	public File resolveFile(String filePath){
+		String normalizedPath = FileMetadataCache.normalizePath(filePath);
+		if(normalizedPath==null)
+			return null;
+		return new File(rootPath + normalizedPath);
+	}
+
+	/**
+	 * Warms the server up before it accepts client connections: walks the server directory in
+	 * parallel into an index of its files, adds their metadata to the metadata cache, and reads
+	 * the files served from the file content cache into it, the smallest first, up to the given
+	 * number of bytes. The time taken and the bytes preloaded are printed.
+	 *
+	 * @param maxBytes the maximum number of bytes of file content to preload
+	 * @param parallelism the number of threads walking the directories and reading the files
+	 * @return the index of the files
+	 */
+	public WarmupIndex warmUp(long maxBytes, int parallelism){
+		long startTime = System.nanoTime();
+		ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+		try{
+			WarmupIndex index = WarmupIndex.build(Paths.get(rootPath), fileMetadataCache, forkJoinPool);
+			List<FileMetadataCache.FileMetadata> preloadableFiles = new ArrayList<FileMetadataCache.FileMetadata>();
+			for(Map.Entry<String, FileMetadataCache.FileMetadata> entry: index.getFiles().entrySet()){
+				FileMetadataCache.FileMetadata metadata = entry.getValue();
+				fileMetadataCache.preload(entry.getKey(), metadata);
+				//Precompressed files are in the index themselves
+				if(isServedFromContentCache(metadata.length))
+					preloadableFiles.add(metadata);
+			}
+
+			//Preload as many files as the bytes allow
+			Collections.sort(preloadableFiles, new Comparator<FileMetadataCache.FileMetadata>(){
+				@Override
+				public int compare(FileMetadataCache.FileMetadata file1, FileMetadataCache.FileMetadata file2){
+					return Long.compare(file1.length, file2.length);
+				}
+			});
+			List<Callable<Long>> reads = new ArrayList<Callable<Long>>();
+			long preloadedBytes = 0;
+			for(final FileMetadataCache.FileMetadata metadata: preloadableFiles){
+				if(preloadedBytes+metadata.length>maxBytes)
+					break;
+				preloadedBytes += metadata.length;
+				reads.add(new Callable<Long>(){
+					@Override
+					public Long call(){
+						try{
+							return (long) getFileContent(metadata).length;
+						}
+						catch(IOException e){
+							System.out.println(e.getMessage());
+							return 0L;
+						}
+					}
+				});
+			}
+			preloadedBytes = 0;
+			for(Future<Long> read: forkJoinPool.invokeAll(reads)){
+				preloadedBytes += read.get();
+			}
+
+			System.out.println("Warm-up: "+index.getFileCount()+" files in "+index.getDirectoryCount()+" directories indexed, "
+					+reads.size()+" files preloaded, "+preloadedBytes+" bytes resident, in "
+					+TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-startTime)+" ms");
+			return index;
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch(ExecutionException e){
+			System.out.println(e.getMessage());
+			return null;
+		}
+		finally{
+			forkJoinPool.shutdown();
+		}
+	}
+
+	/**
+	 * Checks if files of the given size are sent from the file content cache.
+	 *
+	 * @param length the size of the file
+	 * @return true, if the file is neither memory-mapped nor sent straight from the file
+	 */
+	boolean isServedFromContentCache(long length){
+		return fileContentCache!=null && length<ZERO_COPY_MIN_BYTES && (mappedFileCache==null || length<MMAP_MIN_BYTES);
+	}
+
+	/**
+	 * Starts watching the server directory for changed files. From then on, the cached metadata
+	 * of a file is used until the file changes, instead of being looked up again periodically.
+	 *
+	 * @param scanIntervalMillis the time between the scans for changes whose watch events were lost, 0 disables the scans
+	 */
+	public void watchFiles(long scanIntervalMillis){
+		//If the directory cannot be watched, the cached metadata keeps expiring
+		try{
+			fileWatcher = new FileWatcher(Paths.get(rootPath), this, scanIntervalMillis);
+		}
+		catch(IOException e){
+			System.out.println("The server directory cannot be watched: "+e.getMessage());
+			return;
+		}
+		catch(UnsupportedOperationException e){
+			System.out.println("The server directory cannot be watched: "+e.getMessage());
+			return;
+		}
+		fileMetadataCache.setTimeToLive(Long.MAX_VALUE);
+		fileWatcher.start();
+	}
+
+	/**
+	 * Invalidates what is cached about a created, changed or deleted file or directory.
+	 *
+	 * @param file the file or directory
+	 */
+	public void invalidateFile(File file){
+		String path = file.getPath();
+		fileMetadataCache.invalidateFile(path);
+		invalidateFileContent(path);
+	}
+
+	/**
+	 * Invalidates the metadata of all files, as changes of the files may have been missed. The
+	 * cached contents are checked against the metadata, so they do not need to be invalidated.
+	 */
+	public void invalidateAllFiles(){
+		fileMetadataCache.invalidateAll();
+	}
+
+	/**
+	 * Looks up the files of the cached metadata again, and invalidates those which changed.
+	 *
+	 * @return the number of changed files
+	 */
+	public int revalidateFiles(){
+		List<File> changedFiles = fileMetadataCache.revalidate();
+		for(File file: changedFiles){
+			invalidateFileContent(file.getPath());
+			invalidateFileContent(file.getPath()+".gz");
+		}
+		return changedFiles.size();
+	}
+
+	/**
+	 * Removes the content of a file from the caches, so the memory of a deleted or changed file
+	 * is given back right away.
+	 *
+	 * @param path the resolved path of the file
+	 */
+	private void invalidateFileContent(String path){
+		if(fileContentCache!=null)
+			fileContentCache.invalidate(path);
+		if(mappedFileCache!=null)
+			mappedFileCache.invalidate(path);
+		if(compressedContentCache!=null)
+			compressedContentCache.invalidate(path);
+	}
+
+	/**
+	 * Gets the watcher invalidating the cached files when they change.
+	 *
+	 * @return the file watcher, or null if the files are not watched
+	 */
+	public FileWatcher getFileWatcher(){
+		return fileWatcher;
+	}
+
+	/**
+	 * Gets the metadata of the files of the requested paths.
+	 *
+	 * @return the file metadata cache
+	 */
+	public FileMetadataCache getFileMetadataCache(){
+		return fileMetadataCache;
+	}
+
+	/**
+	 * Gets the cache of the contents of the requested files.
+	 *
+	 * @return the file content cache, or null if it is disabled
+	 */
+	public FileContentCache getFileContentCache(){
+		return fileContentCache;
+	}
+
+	/**
+	 * Gets the timer wheel of the connection deadlines.
+	 *
+	 * @return the timer wheel
+	 */
+	public TimerWheel getTimerWheel(){
+		return timerWheel;
+	}
+
+	/**
+	 * Gets the pool of the buffers the requests are read into and the response headers are written from.
+	 *
+	 * @return the buffer pool
+	 */
+	public BufferPool getBufferPool(){
+		return bufferPool;
+	}
+
+	/**
+	 * Opens the access log, and starts its writer. If the log file cannot be opened, the answered
+	 * requests are not logged.
+	 */
+	public void openAccessLog(){
+		try{
+			accessLog = new AccessLog(ACCESS_LOG_FILE, ACCESS_LOG_FORMAT, ACCESS_LOG_BUFFER_SIZE,
+					ACCESS_LOG_BLOCK_WHEN_FULL, ACCESS_LOG_MAX_BYTES, ACCESS_LOG_MAX_FILES);
+			accessLog.start();
+		}
+		catch(IOException e){
+			System.out.println("The access log cannot be opened: "+e.getMessage());
+		}
+		catch(IllegalArgumentException e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Logs an answered request in the access log, if the requests are logged.
+	 *
+	 * @param remoteAddress the address of the Client
+	 * @param request the request, or null if it could not be parsed
+	 * @param response the response
+	 * @param startTime the System.nanoTime() the processing of the request started at
+	 */
+	public void logAccess(SocketAddress remoteAddress, HttpRequest request, HttpResponse response, long startTime){
+		if(accessLog!=null)
+			accessLog.log(remoteAddress, request, response, startTime);
+	}
+
+	/**
+	 * Decides whether the server takes on a new task of an executor, from the waits of its
+	 * queued tasks.
+	 *
+	 * @param executor the executor the task would run on
+	 * @return true, if the task is taken on; false, if it is shed
+	 */
+	public boolean admitWork(ExecutorService executor){
+		int queueLength = 0;
+		if(executor instanceof ThreadPoolExecutor)
+			queueLength = ((ThreadPoolExecutor) executor).getQueue().size();
+		else if(executor instanceof ForkJoinPool)
+			queueLength = ((ForkJoinPool) executor).getQueuedSubmissionCount();
+		return admissionController.admit(queueLength);
+	}
+
+	/**
+	 * Checks if a request is answered from memory, without waiting for the file system: the
+	 * metadata of its file is cached, and the file does not exist, or the content to be sent is
+	 * cached or already mapped. Files sent with zero-copy are read while the response is written,
+	 * so they are not answered from memory.
+	 *
+	 * @param request the request
+	 * @return true, if processing the request does not block on the file system
+	 */
+	public boolean isAnsweredFromMemory(HttpRequest request){
+		RequestLine requestLine = request.getRequestLine();
+		if(!requestLine.getHttpMethod().equals("GET") || requestLine.getURL().equals(METRICS_PATH))
+			return true;
+		FileMetadataCache.FileMetadata metadata = fileMetadataCache.peek(requestLine.getURL());
+		if(metadata==null)
+			return false;
+		if(!metadata.exists)
+			return true;
+
+		//The representation of the file which would be sent
+		String contentEncoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+		if(ContentEncoding.GZIP.equals(contentEncoding) && metadata.precompressed!=null)
+			metadata = metadata.precompressed;
+		else if(contentEncoding!=null && isCompressible(metadata.length))
+			return compressedContentCache.contains(metadata.file.getPath(), contentEncoding, metadata.lastModified, metadata.length);
+		else if(contentEncoding!=null && isStreamCompressible(request, metadata.length))
+			return false;
+
+		//A file which is not mapped yet is opened and mapped on its first request
+		long length = metadata.length;
+		if(mappedFileCache!=null && length>=MMAP_MIN_BYTES && mappedFileCache.isMappable(length))
+			return mappedFileCache.contains(metadata.file, metadata.lastModified, length);
+
+		//Large files are sent with transferTo, which blocks on the file system while it writes
+		if(length>=ZERO_COPY_MIN_BYTES || length>Integer.MAX_VALUE - 8)
+			return false;
+		return fileContentCache!=null && fileContentCache.contains(metadata.file, metadata.lastModified, length);
+	}
+
+	/**
+	 * Gets the controller shedding new work when the server is overloaded.
+	 *
+	 * @return the admission controller
+	 */
+	public AdmissionController getAdmissionController(){
+		return admissionController;
+	}
+
+	/**
+	 * Gets the log of the answered requests.
+	 *
+	 * @return the access log, or null if the requests are not logged
+	 */
+	public AccessLog getAccessLog(){
+		return accessLog;
+	}
+
+	/**
+	 * Gets the request counters, phase latencies and connection gauges of the server.
+	 *
+	 * @return the server metrics
+	 */
+	public ServerMetrics getMetrics(){
+		return metrics;
+	}
+
+	/**
+	 * Gets the compressed variants of the requested files.
+	 *
+	 * @return the compressed content cache, or null if the compression is disabled
+	 */
+	public CompressedContentCache getCompressedContentCache(){
+		return compressedContentCache;
+	}
+
+	/**
+	 * Gets the memory-mappings of large files.
+	 *
+	 * @return the mapped file cache, or null if it is disabled
+	 */
+	public MappedFileCache getMappedFileCache(){
+		return mappedFileCache;
 	}
 
 	/**
@@ -25,6 +25,19 @@ public class RequestLine {
 		this.httpProtocol = requestLineTokens[2];
 	}
 
+	/**
+	 * Instantiates a new RequestLine from its already tokenized parts.
+	 *
+	 * @param httpMethod the HTTP Method
+	 * @param URL the requested file's path
+	 * @param httpProtocol the request protocol
+	 */
+	RequestLine(String httpMethod, String URL, String httpProtocol){
+		this.httpMethod = httpMethod;
+		this.URL = URL;
+		this.httpProtocol = httpProtocol;
+	}
+
 	//Following are the HTTP Methods supported by HTTP/1.1
 	public static final Set<String> SUPPORTED_METHODS_SET = new HashSet<String>(Arrays.asList(
 			"GET", //Only this type of request can be handled at this time.
@@ -0,0 +1,56 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The Interface ResponseBody represents the body of an HTTP response as bytes, so that it can be
+ * written to the Client without turning it into a String. A body is written from an offset, so
+ * that writing can continue where a non-blocking socket stopped accepting bytes. A body whose
+ * length is not known before it is written, like a file compressed while it is sent, is sent
+ * with the chunked transfer coding, and tells the writer when it has ended.
+ */
+public interface ResponseBody {
+
+	/**
+	 * Gets the number of bytes of the body.
+	 *
+	 * @return the content length, or -1 if it is not known before the body is written
+	 */
+	long getContentLength();
+
+	/**
+	 * Gets the body as a buffer, if it is held in memory. The buffer can be written together
+	 * with the response header in a single gathering write.
+	 *
+	 * @return a new buffer over the whole body, or null if the body is not held in memory
+	 */
+	ByteBuffer getBuffer();
+
+	/**
+	 * Writes the bytes of the body from the offset on, as many as the channel accepts.
+	 *
+	 * @param channel the channel to the Client
+	 * @param offset the offset of the first byte to write
+	 * @return the number of bytes written, or -1 if a body of unknown length has been written completely
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	long writeTo(WritableByteChannel channel, long offset) throws IOException;
+
+	/**
+	 * Gets a body over a region of this body, eg. for a range request. The region is written
+	 * and closed on its own; this body still has to be closed when it is not written. Only
+	 * bodies of known length have regions.
+	 *
+	 * @param position the position of the first byte of the region in this body
+	 * @param count the number of bytes of the region
+	 * @return the body of the region
+	 */
+	ResponseBody getRegion(long position, long count);
+
+	/**
+	 * Releases the resources of the body after it was written.
+	 */
+	void close();
+}
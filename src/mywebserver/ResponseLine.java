@@ -1,5 +1,7 @@
 package mywebserver;
 
+import java.nio.ByteBuffer;
+
 /**
  * The Class MyResponseLine represents the first line of the HTTP Response which is of the format:
  * Eg. HTTP/1.1 200 OK
@@ -12,14 +14,25 @@ public class ResponseLine {
 	/**
 	 * Instantiates a new my response line.
 	 *
-	 * @param httpProtocol the HTTP protocol
+	 * @param httpProtocol the HTTP protocol of the request
 	 * @param status the status
 	 */
 	public ResponseLine(String httpProtocol, ResponseStatusCode status) {
 		super();
-		this.httpProtocol = httpProtocol;
+		this.httpProtocol = toResponseProtocol(httpProtocol);
 		this.status = status;
 	}
+
+	/**
+	 * Gets the protocol of the response to a request: HTTP/1.0 to an HTTP/1.0 request, and
+	 * HTTP/1.1 otherwise, so the string sent by the Client is never echoed back.
+	 *
+	 * @param httpProtocol the HTTP protocol of the request
+	 * @return the HTTP protocol of the response
+	 */
+	static String toResponseProtocol(String httpProtocol) {
+		return "HTTP/1.0".equals(httpProtocol) ? "HTTP/1.0" : "HTTP/1.1";
+	}
 	
 	/**
 	 * Gets the HTTP protocol.
@@ -36,7 +49,7 @@ public class ResponseLine {
 	 * @param httpProtocol the new HTTP protocol
 	 */
 	public void setHttpProtocol(String httpProtocol) {
-		this.httpProtocol = httpProtocol;
+		this.httpProtocol = toResponseProtocol(httpProtocol);
 	}
 	
 	/**
@@ -57,6 +70,38 @@ public class ResponseLine {
 		this.status = status;
 	}
 	
+	/**
+	 * Writes the ASCII bytes of the response line, including its CRLF terminator, to the buffer.
+	 * The status lines of the known status codes are written from pre-encoded bytes.
+	 *
+	 * @param buffer the buffer
+	 */
+	public void writeTo(ByteBuffer buffer){
+		byte[] statusLine = status.getStatusLineBytes(httpProtocol);
+		if(statusLine!=null){
+			buffer.put(statusLine);
+			return;
+		}
+		for(int i=0; i<httpProtocol.length(); i++){
+			buffer.put((byte) httpProtocol.charAt(i));
+		}
+		buffer.put((byte) ' ');
+		status.writeTo(buffer);
+		buffer.put((byte) '\r').put((byte) '\n');
+	}
+
+	/**
+	 * Gets the number of bytes written by writeTo.
+	 *
+	 * @return the length of the response line, including its CRLF terminator
+	 */
+	public int getEncodedLength(){
+		byte[] statusLine = status.getStatusLineBytes(httpProtocol);
+		if(statusLine!=null)
+			return statusLine.length;
+		return httpProtocol.length() + 1 + status.getEncodedLength() + 2;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
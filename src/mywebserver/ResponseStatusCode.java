@@ -1,5 +1,7 @@
 package mywebserver;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,6 +16,16 @@ public class ResponseStatusCode {
 	//Map of possible codes, and status in an HTTP Response
 	public static Map<Integer, String> statusCodeMap= new HashMap<Integer, String>();
 	
+	//Largest status code which can be pre-encoded
+	private static final int MAX_STATUS_CODE = 599;
+
+	//Pre-encoded ASCII bytes of "<code> <status>" of the known status codes, indexed by code
+	private static final byte[][] STATUS_BYTES = new byte[MAX_STATUS_CODE+1][];
+
+	//Pre-encoded ASCII bytes of the whole HTTP/1.1 and HTTP/1.0 status lines, including CRLF
+	private static final byte[][] HTTP_1_1_STATUS_LINES = new byte[MAX_STATUS_CODE+1][];
+	private static final byte[][] HTTP_1_0_STATUS_LINES = new byte[MAX_STATUS_CODE+1][];
+
 	//Static block to initialize status codes
 	static{
 		initializeStatusCodeMap();
@@ -58,10 +70,64 @@ public class ResponseStatusCode {
 		return code+" "+statusFormat;
 	}
 	
+	/**
+	 * Writes the ASCII bytes of "<code> <status>" to the buffer, without creating a String
+	 * for the known status codes.
+	 *
+	 * @param buffer the buffer
+	 */
+	public void writeTo(ByteBuffer buffer){
+		byte[] statusBytes = code>=0 && code<=MAX_STATUS_CODE ? STATUS_BYTES[code] : null;
+		if(statusBytes==null)
+			statusBytes = toString().getBytes(StandardCharsets.ISO_8859_1);
+		buffer.put(statusBytes);
+	}
+
+	/**
+	 * Gets the number of bytes written by writeTo.
+	 *
+	 * @return the length of "<code> <status>"
+	 */
+	public int getEncodedLength(){
+		byte[] statusBytes = code>=0 && code<=MAX_STATUS_CODE ? STATUS_BYTES[code] : null;
+		return statusBytes!=null ? statusBytes.length : toString().length();
+	}
+
+	/**
+	 * Gets the pre-encoded status line "<protocol> <code> <status>\r\n" of this status code.
+	 *
+	 * @param httpProtocol the HTTP protocol of the response
+	 * @return the bytes of the status line, or null if it is not pre-encoded
+	 */
+	public byte[] getStatusLineBytes(String httpProtocol){
+		if(code<0 || code>MAX_STATUS_CODE)
+			return null;
+		if("HTTP/1.1".equals(httpProtocol))
+			return HTTP_1_1_STATUS_LINES[code];
+		if("HTTP/1.0".equals(httpProtocol))
+			return HTTP_1_0_STATUS_LINES[code];
+		return null;
+	}
+
 	public static void initializeStatusCodeMap(){
 		statusCodeMap.put(200, "OK");
+		statusCodeMap.put(206, "Partial Content");
+		statusCodeMap.put(304, "Not Modified");
+		statusCodeMap.put(400, "Bad Request");
 		statusCodeMap.put(404, "Not Found");
+		statusCodeMap.put(416, "Range Not Satisfiable");
 		statusCodeMap.put(501, "Not Implemented");
+		statusCodeMap.put(503, "Service Unavailable");
+		statusCodeMap.put(505, "HTTP Version Not Supported");
 		//More status codes can be added....
+
+		//Pre-encode the status lines of the known status codes
+		for(Map.Entry<Integer, String> status: statusCodeMap.entrySet()){
+			int statusCode = status.getKey();
+			String statusFormat = statusCode+" "+status.getValue();
+			STATUS_BYTES[statusCode] = statusFormat.getBytes(StandardCharsets.ISO_8859_1);
+			HTTP_1_1_STATUS_LINES[statusCode] = ("HTTP/1.1 "+statusFormat+"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			HTTP_1_0_STATUS_LINES[statusCode] = ("HTTP/1.0 "+statusFormat+"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		}
 	}
 }
@@ -0,0 +1,797 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The Class SelectorServer is the non-blocking front end of the web server.
+ * A single acceptor thread accepts connections on a ServerSocketChannel and spreads them over
+ * a small number of event loops. Each event loop owns a Selector and performs all reads and
+ * writes of its connections, so idle Keep-Alive connections do not occupy any thread.
+ * The event loops parse the received bytes, and only fully parsed requests are handed to
+ * the worker pool for processing. Requests which a Client pipelines are processed together,
+ * and their responses are sent in order with as few writes as possible.
+ * The chunks of a body which is compressed while it is sent are read and compressed on the
+ * worker pool as well, and the event loop only writes them.
+ * The idle, header read and write deadlines of the connections are kept on the timer wheel of
+ * the request handler, and a connection whose deadline passes is closed by its event loop.
+ *
+ * In the sharded mode, there is an event loop per core, and each event loop also processes the
+ * requests of its connections which are answered from memory, so a connection is served by the
+ * thread of its event loop from accepting it to closing it, and its buffers are taken from and
+ * released to the cache of that thread. Only the requests which have to read a file are handed
+ * to the worker pool, a small work-stealing pool, whose threads take the reads queued by any
+ * event loop.
+ */
+public class SelectorServer implements Runnable{
+
+	//Size of the read buffer of each connection
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	//Names of the deadlines of a connection
+	private static final String IDLE_DEADLINE = "idle";
+	private static final String HEADER_READ_DEADLINE = "header read";
+	private static final String WRITE_DEADLINE = "write";
+
+	//Server port which is accepting client requests
+	private int serverPort;
+
+	//Handler which turns a Client request into an HTTP response
+	private MultithreadedServer requestHandler;
+
+	//Thread pool which processes the fully received requests
+	private ExecutorService workerPool;
+
+	//Check if the event loops process the requests which are answered from memory themselves
+	private boolean sharded;
+
+	//Event loops performing the reads and writes of the accepted connections
+	private EventLoop[] eventLoops;
+
+	//Index of the event loop which receives the next accepted connection
+	private int nextEventLoop = 0;
+
+	//Server socket channel which is accepting client requests
+	private ServerSocketChannel serverSocketChannel = null;
+
+	/**
+	 * Instantiates a new SelectorServer.
+	 *
+	 * @param serverPort is the port which is accepting client requests
+	 * @param requestHandler the handler processing each received request
+	 * @param workerPool the thread pool processing the received requests
+	 * @param eventLoopCount the number of event loop threads
+	 * @throws IOException Signals that an I/O exception has occurred, in case the channel fails.
+	 */
+	public SelectorServer(final int serverPort, final MultithreadedServer requestHandler,
+			final ExecutorService workerPool, final int eventLoopCount) throws IOException{
+		this(serverPort, requestHandler, workerPool, eventLoopCount, false);
+	}
+
+	/**
+	 * Instantiates a new SelectorServer, which processes the requests answered from memory on its
+	 * event loops if it is sharded.
+	 *
+	 * @param serverPort is the port which is accepting client requests
+	 * @param requestHandler the handler processing each received request
+	 * @param workerPool the thread pool processing the received requests, or only those reading a file if it is sharded
+	 * @param eventLoopCount the number of event loop threads
+	 * @param sharded true, if the event loops process the requests which are answered from memory
+	 * @throws IOException Signals that an I/O exception has occurred, in case the channel fails.
+	 */
+	public SelectorServer(final int serverPort, final MultithreadedServer requestHandler,
+			final ExecutorService workerPool, final int eventLoopCount, final boolean sharded) throws IOException{
+		this.serverPort = serverPort;
+		this.requestHandler = requestHandler;
+		this.workerPool = workerPool;
+		this.sharded = sharded;
+		this.serverSocketChannel = ServerSocketChannel.open();
+		this.serverSocketChannel.bind(new InetSocketAddress(this.serverPort));
+		this.eventLoops = new EventLoop[eventLoopCount];
+		for(int i=0; i<eventLoopCount; i++){
+			this.eventLoops[i] = new EventLoop();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+
+		//Start the event loops before accepting any connection
+		for(int i=0; i<eventLoops.length; i++){
+			Thread eventLoopThread = new Thread(eventLoops[i], "event-loop-"+i);
+			eventLoopThread.start();
+		}
+
+		//Accept client connections
+		acceptClientConnections();
+	}
+
+	/**
+	 * Stops accepting client connections, and stops the event loops and the worker pool.
+	 */
+	public void stop(){
+		try {
+			serverSocketChannel.close();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Accept client connections and register them with the event loops in a round robin way.
+	 */
+	public void acceptClientConnections(){
+		try{
+			while(true){
+				//Wait for connection from Client
+				SocketChannel clientChannel = serverSocketChannel.accept();
+				clientChannel.configureBlocking(false);
+				clientChannel.socket().setTcpNoDelay(true);
+
+				EventLoop eventLoop = eventLoops[nextEventLoop];
+				nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+				eventLoop.register(clientChannel);
+			}
+		}
+		catch(IOException e){
+			System.out.println(e.getMessage());
+		}
+		finally{
+			try {
+				serverSocketChannel.close();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+			for(EventLoop eventLoop: eventLoops){
+				eventLoop.shutdown();
+			}
+			workerPool.shutdown();
+		}
+	}
+
+	/**
+	 * The Class EventLoop waits for read/write readiness of its connections with a Selector.
+	 */
+	class EventLoop implements Runnable{
+
+		//Selector waiting for readiness of the connections
+		private Selector selector;
+
+		//Tasks submitted by other threads to be run on the event loop
+		private Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+
+		//Check if the event loop has to stop
+		private volatile boolean stopped = false;
+
+		/**
+		 * Instantiates a new event loop.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred, in case selector fails.
+		 */
+		EventLoop() throws IOException{
+			this.selector = Selector.open();
+		}
+
+		/**
+		 * Registers an accepted connection with this event loop.
+		 *
+		 * @param clientChannel the accepted client channel
+		 */
+		void register(final SocketChannel clientChannel){
+			execute(new Runnable(){
+				@Override
+				public void run(){
+					try{
+						SelectionKey key = clientChannel.register(selector, SelectionKey.OP_READ);
+						key.attach(new Connection(EventLoop.this, clientChannel, key));
+						requestHandler.getMetrics().connectionOpened();
+					}
+					catch(ClosedChannelException e){
+						System.out.println(e.getMessage());
+					}
+				}
+			});
+		}
+
+		/**
+		 * Runs the task on the event loop thread.
+		 *
+		 * @param task the task
+		 */
+		void execute(Runnable task){
+			pendingTasks.add(task);
+			selector.wakeup();
+		}
+
+		/**
+		 * Stops the event loop.
+		 */
+		void shutdown(){
+			stopped = true;
+			selector.wakeup();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run(){
+			try{
+				while(!stopped){
+					selector.select();
+
+					//Run the tasks submitted by the acceptor and the worker threads
+					Runnable task;
+					while((task = pendingTasks.poll())!=null){
+						task.run();
+					}
+
+					//Handle the connections which are ready
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						Connection connection = (Connection) key.attachment();
+						if(!key.isValid())
+							continue;
+						if(key.isReadable())
+							connection.read();
+						if(key.isValid() && key.isWritable())
+							connection.write();
+					}
+				}
+			}
+			catch(IOException e){
+				System.out.println(e.getMessage());
+			}
+			finally{
+				for(SelectionKey key: selector.keys()){
+					((Connection) key.attachment()).close();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The Class Connection holds the state of a single client connection.
+	 * It is only accessed by the thread of its event loop.
+	 */
+	class Connection{
+
+		//Event loop owning the connection
+		private EventLoop eventLoop;
+
+		//Channel of the connection
+		private SocketChannel clientChannel;
+
+		//Selection key of the channel
+		private SelectionKey key;
+
+		//Bytes received from the Client which are not parsed yet, only held while there are any
+		private BufferPool.PooledBuffer readBuffer = null;
+
+		//Parser reading the HTTP requests sent on this connection
+		private HttpRequestParser parser = new HttpRequestParser();
+
+		//Responses which are not being sent yet, in the order of their requests
+		private Queue<HttpResponse> pendingResponses = new ArrayDeque<HttpResponse>();
+
+		//Response headers, and the bodies held in memory, which are being sent with one gathering write
+		private ByteBuffer[] writeBuffers = null;
+
+		//Buffer holding the response headers which are being sent
+		private BufferPool.PooledBuffer headerBuffer = null;
+
+		//Number of bytes of the write buffers which are not sent yet
+		private long writeRemaining = 0;
+
+		//Bodies of the responses which are being sent
+		private List<ResponseBody> responseBodies = new ArrayList<ResponseBody>();
+
+		//Body which is not held in memory, sent after the gathering write
+		private ResponseBody fileBody = null;
+
+		//Number of bytes of the body which is not held in memory which were already sent
+		private long bodyOffset = 0;
+
+		//Check if the connection is of type Keep-Alive
+		private boolean keepAlive = false;
+
+		//Status code of the response to a request which cannot be parsed
+		private int badRequestStatus = 400;
+
+		//Deadline of the current wait for a request or for the Client to accept response bytes
+		private TimerWheel.Timeout deadline = null;
+
+		//Name of the current deadline
+		private String deadlineName = null;
+
+		//Time the sending of the pending responses started at
+		private long writeStartTime = 0;
+
+		/**
+		 * Instantiates a new connection.
+		 *
+		 * @param eventLoop the event loop owning the connection
+		 * @param clientChannel the client channel
+		 * @param key the selection key of the channel
+		 */
+		Connection(EventLoop eventLoop, SocketChannel clientChannel, SelectionKey key){
+			this.eventLoop = eventLoop;
+			this.clientChannel = clientChannel;
+			this.key = key;
+			setDeadline(IDLE_DEADLINE, MultithreadedServer.KEEP_ALIVE_TIMEOUT);
+		}
+
+		/**
+		 * Reads the available bytes and dispatches the requests once they are fully received.
+		 */
+		void read(){
+			try{
+				if(readBuffer==null)
+					readBuffer = requestHandler.getBufferPool().acquire(READ_BUFFER_SIZE);
+				int bytesRead = clientChannel.read(readBuffer.getBuffer());
+				if(bytesRead==-1){
+					//Stop when Client is terminated
+					close();
+					return;
+				}
+				processReceivedBytes();
+			}
+			catch(IOException e){
+				System.out.println(e.getMessage());
+				close();
+			}
+		}
+
+		/**
+		 * Parses the received bytes, and dispatches all complete requests among them, so that
+		 * the responses to pipelined requests are sent together.
+		 * A request which cannot be parsed is answered with 400 Bad Request.
+		 */
+		void processReceivedBytes(){
+			if(readBuffer==null){
+				awaitRestOfRequest();
+				return;
+			}
+			List<HttpRequest> requestsFromClient = new ArrayList<HttpRequest>();
+			boolean badRequest = false;
+			ByteBuffer receivedBytes = readBuffer.getBuffer();
+			receivedBytes.flip();
+			try{
+				while(requestsFromClient.size()<MultithreadedServer.MAX_PIPELINED_REQUESTS){
+					long parseStartTime = System.nanoTime();
+					HttpRequest requestFromClient = parser.parse(receivedBytes);
+					if(requestFromClient==null)
+						break;
+					requestHandler.getMetrics().recordPhase(ServerMetrics.READ, parseStartTime);
+					requestsFromClient.add(requestFromClient);
+
+					//No further request is read after one which closes the connection
+					if(!requestFromClient.isKeepAlive())
+						break;
+				}
+			}
+			catch(HttpParseException e){
+				System.out.println(e.getMessage());
+				badRequest = true;
+				badRequestStatus = e.getStatusCode();
+			}
+			finally{
+				//Keep the bytes of the next request, or give the buffer back while there are none
+				receivedBytes.compact();
+				if(receivedBytes.position()==0){
+					readBuffer.release();
+					readBuffer = null;
+				}
+			}
+			if(!requestsFromClient.isEmpty() || badRequest){
+				dispatch(requestsFromClient, badRequest);
+				return;
+			}
+
+			awaitRestOfRequest();
+		}
+
+		/**
+		 * Sets the header read deadline, if a request started to arrive: the rest of it has to
+		 * arrive within the header read timeout.
+		 */
+		private void awaitRestOfRequest(){
+			if(parser.isReadingRequest() && !HEADER_READ_DEADLINE.equals(deadlineName))
+				setDeadline(HEADER_READ_DEADLINE, MultithreadedServer.HEADER_READ_TIMEOUT);
+		}
+
+		/**
+		 * Hands the requests to the worker pool and stops reading until the responses are sent.
+		 *
+		 * @param requestsFromClient the requests from client, in the order they were received
+		 * @param badRequest true, if the requests are followed by one which cannot be parsed
+		 */
+		void dispatch(final List<HttpRequest> requestsFromClient, final boolean badRequest){
+			key.interestOps(0);
+			cancelDeadline();
+
+			//Check if the last request is of type Keep-Alive
+			keepAlive = !badRequest && requestsFromClient.get(requestsFromClient.size()-1).isKeepAlive();
+
+			//Answer the requests on the event loop, if none of them waits for the file system
+			if(sharded && isAnsweredFromMemory(requestsFromClient)){
+				try{
+					send(processRequests(requestsFromClient, badRequest));
+				}
+				catch(IOException e){
+					System.out.println(e.getMessage());
+					close();
+				}
+				return;
+			}
+
+			//Answer with 503 Service Unavailable right away, if the server is overloaded
+			if(!requestHandler.admitWork(workerPool)){
+				shed(requestsFromClient);
+				return;
+			}
+			final long dispatchTime = System.nanoTime();
+			try{
+				workerPool.execute(newRequestTask(requestsFromClient, badRequest, dispatchTime));
+			}
+			catch(RejectedExecutionException e){
+				requestHandler.getAdmissionController().queueFull();
+				shed(requestsFromClient);
+			}
+		}
+
+		/**
+		 * Answers requests which the server is too busy for with 503 Service Unavailable, and
+		 * closes the connection after it was sent.
+		 *
+		 * @param requestsFromClient the requests from client
+		 */
+		private void shed(List<HttpRequest> requestsFromClient){
+			HttpRequest requestFromClient = requestsFromClient.isEmpty() ? null : requestsFromClient.get(0);
+			HttpResponse response = requestHandler.createServiceUnavailableResponse(requestFromClient!=null ?
+					requestFromClient.getRequestLine().getHttpProtocol() : "HTTP/1.1");
+			requestHandler.logAccess(clientChannel.socket().getRemoteSocketAddress(), requestFromClient, response,
+					System.nanoTime());
+			keepAlive = false;
+			send(Collections.singletonList(response));
+		}
+
+		/**
+		 * Creates the task of the worker pool which processes the requests, and hands the responses
+		 * back to the event loop.
+		 *
+		 * @param requestsFromClient the requests from client, in the order they were received
+		 * @param badRequest true, if the requests are followed by one which cannot be parsed
+		 * @param dispatchTime the System.nanoTime() the requests were handed to the worker pool at
+		 * @return the task
+		 */
+		private Runnable newRequestTask(final List<HttpRequest> requestsFromClient, final boolean badRequest,
+				final long dispatchTime){
+			return new Runnable(){
+				@Override
+				public void run(){
+					requestHandler.getAdmissionController().dequeued(System.nanoTime() - dispatchTime);
+					try{
+						final List<HttpResponse> responses = processRequests(requestsFromClient, badRequest);
+
+						//Send the responses from the event loop thread
+						eventLoop.execute(new Runnable(){
+							@Override
+							public void run(){
+								send(responses);
+							}
+						});
+					}
+					catch(IOException e){
+						System.out.println(e.getMessage());
+						eventLoop.execute(new Runnable(){
+							@Override
+							public void run(){
+								close();
+							}
+						});
+					}
+				}
+			};
+		}
+
+		/**
+		 * Process the Client's requests and return HTTP response objects, closing the connection
+		 * after the last response if the Client asked for it.
+		 *
+		 * @param requestsFromClient the requests parsed from the Client
+		 * @param badRequest true, if a malformed request follows the requests
+		 * @return the responses in the order of the requests
+		 * @throws IOException Signals that an I/O exception has occurred, the bodies of the responses processed so far are closed.
+		 */
+		private List<HttpResponse> processRequests(List<HttpRequest> requestsFromClient, boolean badRequest) throws IOException{
+			List<HttpResponse> responses = new ArrayList<HttpResponse>();
+			try{
+				SocketAddress remoteAddress = clientChannel.socket().getRemoteSocketAddress();
+				for(HttpRequest requestFromClient: requestsFromClient){
+					long processStartTime = System.nanoTime();
+					HttpResponse response = requestHandler.processRequest(requestFromClient);
+					requestHandler.logAccess(remoteAddress, requestFromClient, response, processStartTime);
+					responses.add(response);
+				}
+				if(badRequest){
+					HttpResponse response = requestHandler.createBadRequestResponse(badRequestStatus);
+					requestHandler.logAccess(remoteAddress, null, response, System.nanoTime());
+					responses.add(response);
+				}
+				else if(!keepAlive)
+					responses.get(responses.size()-1).getHttpResponseHeader().put("Connection", "close");
+				return responses;
+			}
+			catch(IOException e){
+				for(HttpResponse response: responses){
+					response.getBody().close();
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Checks if all requests are answered without waiting for the file system, so the event
+		 * loop can process them itself.
+		 *
+		 * @param requestsFromClient the requests parsed from the Client
+		 * @return true, if every response is answered from memory
+		 */
+		private boolean isAnsweredFromMemory(List<HttpRequest> requestsFromClient){
+			for(HttpRequest requestFromClient: requestsFromClient){
+				if(!requestHandler.isAnsweredFromMemory(requestFromClient))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Starts sending the responses to the Client.
+		 *
+		 * @param responses the HTTP responses
+		 */
+		void send(List<HttpResponse> responses){
+			writeStartTime = System.nanoTime();
+			pendingResponses.addAll(responses);
+			if(!key.isValid()){
+				close();
+				return;
+			}
+			write();
+		}
+
+		/**
+		 * Takes the next responses to be sent from the pending responses. Their headers and bodies
+		 * held in memory are gathered up to the first body which is sent from its file.
+		 *
+		 * @return true, if there is a response to be sent
+		 */
+		private boolean nextWriteBuffers(){
+			if(pendingResponses.isEmpty())
+				return false;
+			List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+			headerBuffer = requestHandler.acquireHeaderBuffer(pendingResponses);
+			ByteBuffer headers = headerBuffer.getBuffer();
+			while(!pendingResponses.isEmpty() && fileBody==null){
+				HttpResponse response = pendingResponses.poll();
+				ResponseBody body = response.getBody();
+				responseBodies.add(body);
+				long serializeStartTime = System.nanoTime();
+				buffers.add(MultithreadedServer.writeHeader(response, headers));
+				requestHandler.getMetrics().recordPhase(ServerMetrics.SERIALIZE, serializeStartTime);
+				ByteBuffer bodyBuffer = body.getBuffer();
+				if(bodyBuffer!=null)
+					buffers.add(bodyBuffer);
+				else
+					fileBody = body;
+			}
+			writeBuffers = buffers.toArray(new ByteBuffer[buffers.size()]);
+			writeRemaining = 0;
+			for(ByteBuffer buffer: writeBuffers){
+				writeRemaining += buffer.remaining();
+			}
+			bodyOffset = 0;
+			return true;
+		}
+
+		/**
+		 * Writes the pending responses as far as the socket allows. The headers and the bodies held
+		 * in memory are written with a gathering write, a file body is transferred from the file.
+		 */
+		void write(){
+			try{
+				while(writeBuffers!=null || nextWriteBuffers()){
+					long bytesWritten = clientChannel.write(writeBuffers);
+					writeRemaining -= bytesWritten;
+					requestHandler.getMetrics().recordBytesSent(bytesWritten);
+					if(writeRemaining>0){
+						waitForWritable();
+						return;
+					}
+					while(fileBody!=null && bodyOffset!=fileBody.getContentLength()){
+						if(fileBody instanceof ChunkedBody && ((ChunkedBody) fileBody).needsChunk()){
+							readChunk((ChunkedBody) fileBody);
+							return;
+						}
+						bytesWritten = fileBody.writeTo(clientChannel, bodyOffset);
+						if(bytesWritten<0)
+							break;
+						if(bytesWritten==0){
+							waitForWritable();
+							return;
+						}
+						bodyOffset += bytesWritten;
+						requestHandler.getMetrics().recordBytesSent(bytesWritten);
+					}
+					closeResponseBodies();
+					writeBuffers = null;
+				}
+				requestHandler.getMetrics().recordPhase(ServerMetrics.WRITE, writeStartTime);
+				if(!keepAlive){
+					close();
+					return;
+				}
+
+				//Continue with a request which was already received, or wait for the next one
+				setDeadline(IDLE_DEADLINE, MultithreadedServer.KEEP_ALIVE_TIMEOUT);
+				key.interestOps(SelectionKey.OP_READ);
+				processReceivedBytes();
+			}
+			catch(IOException e){
+				System.out.println(e.getMessage());
+				close();
+			}
+		}
+
+		/**
+		 * Reads and compresses the next chunk of a body on the worker pool, so the event loop does
+		 * not wait for the file system, and continues writing on the event loop when it is ready.
+		 *
+		 * @param body the body whose chunk is written
+		 */
+		private void readChunk(final ChunkedBody body){
+			key.interestOps(0);
+			cancelDeadline();
+			try{
+				workerPool.execute(new Runnable(){
+					@Override
+					public void run(){
+						try{
+							body.readChunk();
+							eventLoop.execute(new Runnable(){
+								@Override
+								public void run(){
+									write();
+								}
+							});
+						}
+						catch(IOException e){
+							System.out.println(e.getMessage());
+							eventLoop.execute(new Runnable(){
+								@Override
+								public void run(){
+									close();
+								}
+							});
+						}
+					}
+				});
+			}
+			catch(RejectedExecutionException e){
+				close();
+			}
+		}
+
+		/**
+		 * Waits till the socket can accept more bytes. The Client has to accept some of them
+		 * within the write timeout.
+		 */
+		private void waitForWritable(){
+			key.interestOps(SelectionKey.OP_WRITE);
+			setDeadline(WRITE_DEADLINE, MultithreadedServer.WRITE_TIMEOUT);
+		}
+
+		/**
+		 * Replaces the deadline of the connection. The connection is closed when the deadline
+		 * passes before it is replaced or cancelled.
+		 *
+		 * @param name the name of the deadline
+		 * @param timeoutMillis the time until the deadline in milliseconds
+		 */
+		private void setDeadline(final String name, int timeoutMillis){
+			cancelDeadline();
+			deadlineName = name;
+			deadline = requestHandler.getTimerWheel().schedule(new Runnable(){
+				@Override
+				public void run(){
+					eventLoop.execute(new Runnable(){
+						@Override
+						public void run(){
+							//The deadline may have been replaced while this task was queued
+							if(!name.equals(deadlineName) || deadline==null || !deadline.isExpired() || !key.isValid())
+								return;
+							System.out.println("Closing connection with client "+clientChannel.socket().getRemoteSocketAddress()
+									+" after its "+name+" deadline passed");
+							close();
+						}
+					});
+				}
+			}, timeoutMillis);
+		}
+
+		/**
+		 * Cancels the deadline of the connection.
+		 */
+		private void cancelDeadline(){
+			if(deadline!=null)
+				deadline.cancel();
+			deadline = null;
+			deadlineName = null;
+		}
+
+		/**
+		 * Closes the bodies of the responses which were sent.
+		 */
+		private void closeResponseBodies(){
+			for(ResponseBody body: responseBodies){
+				body.close();
+			}
+			responseBodies.clear();
+			fileBody = null;
+			if(headerBuffer!=null){
+				headerBuffer.release();
+				headerBuffer = null;
+			}
+		}
+
+		/**
+		 * Closes the connection.
+		 */
+		void close(){
+			cancelDeadline();
+			closeResponseBodies();
+			writeBuffers = null;
+			HttpResponse response;
+			while((response = pendingResponses.poll())!=null){
+				response.getBody().close();
+			}
+			if(readBuffer!=null){
+				readBuffer.release();
+				readBuffer = null;
+			}
+			key.cancel();
+			if(clientChannel.isOpen())
+				requestHandler.getMetrics().connectionClosed();
+			try {
+				clientChannel.close();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+}
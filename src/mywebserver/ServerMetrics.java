@@ -0,0 +1,388 @@
+package mywebserver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Class ServerMetrics counts the requests by method and status code and the bytes sent,
+ * measures the time of each phase of a request in latency histograms, and reads the gauges of
+ * the open connections and the thread pool. The counters are LongAdders, which threads update
+ * without contending with each other, so recording costs little on the request path; they are
+ * only summed up when the metrics are read.
+ *
+ * The metrics are exposed through JMX and in the text exposition format of Prometheus at the
+ * metrics URL of the server.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+	//Methods the requests are counted by, any other method is counted as OTHER
+	private static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "OTHER"};
+
+	//Largest status code which is counted
+	private static final int MAX_STATUS_CODE = 599;
+
+	//Phases of a request which are measured
+	static final int READ = 0;
+	static final int PROCESS = 1;
+	static final int SERIALIZE = 2;
+	static final int WRITE = 3;
+	private static final String[] PHASES = {"read", "process", "serialize", "write"};
+
+	//Request counters by method, each by status code, created with the first request of the combination
+	private final AtomicReferenceArray<LongAdder>[] requestCounts;
+
+	//Number of bytes sent to the Clients
+	private final LongAdder bytesSent = new LongAdder();
+
+	//Number of open client connections
+	private final LongAdder activeConnections = new LongAdder();
+
+	//Latency histograms of the phases
+	private final PhaseHistogram[] phaseLatencies = new PhaseHistogram[PHASES.length];
+
+	//Executors whose queue depths and active threads are read
+	private volatile ExecutorService[] executors = new ExecutorService[0];
+
+	/**
+	 * Instantiates a new ServerMetrics.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ServerMetrics(){
+		this.requestCounts = new AtomicReferenceArray[METHODS.length];
+		for(int i=0; i<METHODS.length; i++){
+			this.requestCounts[i] = new AtomicReferenceArray<LongAdder>(MAX_STATUS_CODE+1);
+		}
+		for(int i=0; i<PHASES.length; i++){
+			this.phaseLatencies[i] = new PhaseHistogram();
+		}
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, as mywebserver:type=ServerMetrics.
+	 */
+	public void registerMBean(){
+		try{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("mywebserver:type=ServerMetrics"));
+		}
+		catch(JMException e){
+			System.out.println("The server metrics cannot be registered with JMX: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets the executors whose queue depths and active threads are read, and added up.
+	 *
+	 * @param executors the executors
+	 */
+	public void setExecutors(ExecutorService... executors){
+		this.executors = executors.clone();
+	}
+
+	/**
+	 * Counts an answered request.
+	 *
+	 * @param method the method of the request, or null if it could not be parsed
+	 * @param statusCode the status code of the response
+	 */
+	public void recordRequest(String method, int statusCode){
+		if(statusCode<0 || statusCode>MAX_STATUS_CODE)
+			return;
+		AtomicReferenceArray<LongAdder> countsByStatus = requestCounts[methodIndex(method)];
+		LongAdder count = countsByStatus.get(statusCode);
+		if(count==null){
+			countsByStatus.compareAndSet(statusCode, null, new LongAdder());
+			count = countsByStatus.get(statusCode);
+		}
+		count.increment();
+	}
+
+	/**
+	 * Records the time of a phase of a request.
+	 *
+	 * @param phase the phase: READ, PROCESS, SERIALIZE or WRITE
+	 * @param startTime the System.nanoTime() the phase started at
+	 */
+	public void recordPhase(int phase, long startTime){
+		phaseLatencies[phase].record(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Counts bytes sent to a Client.
+	 *
+	 * @param bytes the number of bytes
+	 */
+	public void recordBytesSent(long bytes){
+		bytesSent.add(bytes);
+	}
+
+	/**
+	 * Counts a client connection which was opened.
+	 */
+	public void connectionOpened(){
+		activeConnections.increment();
+	}
+
+	/**
+	 * Counts a client connection which was closed.
+	 */
+	public void connectionClosed(){
+		activeConnections.decrement();
+	}
+
+	/**
+	 * Gets the index of the counters of a method.
+	 *
+	 * @param method the method
+	 * @return the index in METHODS
+	 */
+	private static int methodIndex(String method){
+		for(int i=0; i<METHODS.length-1; i++){
+			if(METHODS[i].equals(method))
+				return i;
+		}
+		return METHODS.length-1;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getRequestCount()
+	 */
+	public long getRequestCount(){
+		return sumRequestCounts(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getErrorCount()
+	 */
+	public long getErrorCount(){
+		return sumRequestCounts(400);
+	}
+
+	/**
+	 * Sums up the request counters of all methods from a status code on.
+	 *
+	 * @param minStatusCode the smallest status code summed up
+	 * @return the number of requests
+	 */
+	private long sumRequestCounts(int minStatusCode){
+		long sum = 0;
+		for(AtomicReferenceArray<LongAdder> countsByStatus: requestCounts){
+			for(int statusCode=minStatusCode; statusCode<=MAX_STATUS_CODE; statusCode++){
+				LongAdder count = countsByStatus.get(statusCode);
+				if(count!=null)
+					sum += count.sum();
+			}
+		}
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getBytesSent()
+	 */
+	public long getBytesSent(){
+		return bytesSent.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getActiveConnections()
+	 */
+	public long getActiveConnections(){
+		return activeConnections.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getPoolQueueDepth()
+	 */
+	public int getPoolQueueDepth(){
+		int queueDepth = -1;
+		for(ExecutorService executor: executors){
+			if(executor instanceof ThreadPoolExecutor)
+				queueDepth = Math.max(queueDepth, 0) + ((ThreadPoolExecutor) executor).getQueue().size();
+			else if(executor instanceof ForkJoinPool)
+				queueDepth = Math.max(queueDepth, 0) + ((ForkJoinPool) executor).getQueuedSubmissionCount();
+		}
+		return queueDepth;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getPoolActiveThreads()
+	 */
+	public int getPoolActiveThreads(){
+		int activeThreads = -1;
+		for(ExecutorService executor: executors){
+			if(executor instanceof ThreadPoolExecutor)
+				activeThreads = Math.max(activeThreads, 0) + ((ThreadPoolExecutor) executor).getActiveCount();
+			else if(executor instanceof ForkJoinPool)
+				activeThreads = Math.max(activeThreads, 0) + ((ForkJoinPool) executor).getActiveThreadCount();
+		}
+		return activeThreads;
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getReadMeanMicros()
+	 */
+	public double getReadMeanMicros(){
+		return phaseLatencies[READ].getMeanMicros();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getProcessMeanMicros()
+	 */
+	public double getProcessMeanMicros(){
+		return phaseLatencies[PROCESS].getMeanMicros();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getSerializeMeanMicros()
+	 */
+	public double getSerializeMeanMicros(){
+		return phaseLatencies[SERIALIZE].getMeanMicros();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getWriteMeanMicros()
+	 */
+	public double getWriteMeanMicros(){
+		return phaseLatencies[WRITE].getMeanMicros();
+	}
+
+	/* (non-Javadoc)
+	 * @see mywebserver.ServerMetricsMBean#getMetricsText()
+	 */
+	public String getMetricsText(){
+		StringBuilder text = new StringBuilder(4096);
+		text.append("# HELP mywebserver_requests_total Requests answered, by method and status code.\n");
+		text.append("# TYPE mywebserver_requests_total counter\n");
+		for(int i=0; i<METHODS.length; i++){
+			for(int statusCode=0; statusCode<=MAX_STATUS_CODE; statusCode++){
+				LongAdder count = requestCounts[i].get(statusCode);
+				if(count!=null)
+					text.append("mywebserver_requests_total{method=\"").append(METHODS[i]).append("\",status=\"")
+						.append(statusCode).append("\"} ").append(count.sum()).append('\n');
+			}
+		}
+		text.append("# HELP mywebserver_sent_bytes_total Bytes sent to the Clients.\n");
+		text.append("# TYPE mywebserver_sent_bytes_total counter\n");
+		text.append("mywebserver_sent_bytes_total ").append(getBytesSent()).append('\n');
+		text.append("# HELP mywebserver_phase_duration_seconds Time of the phases of a request.\n");
+		text.append("# TYPE mywebserver_phase_duration_seconds histogram\n");
+		for(int i=0; i<PHASES.length; i++){
+			phaseLatencies[i].format(text, "mywebserver_phase_duration_seconds", "phase=\""+PHASES[i]+"\"");
+		}
+		text.append("# HELP mywebserver_active_connections Open client connections.\n");
+		text.append("# TYPE mywebserver_active_connections gauge\n");
+		text.append("mywebserver_active_connections ").append(getActiveConnections()).append('\n');
+		if(getPoolQueueDepth()>=0){
+			text.append("# HELP mywebserver_pool_queue_depth Tasks waiting for a thread of the pool.\n");
+			text.append("# TYPE mywebserver_pool_queue_depth gauge\n");
+			text.append("mywebserver_pool_queue_depth ").append(getPoolQueueDepth()).append('\n');
+			text.append("# HELP mywebserver_pool_active_threads Threads of the pool running a task.\n");
+			text.append("# TYPE mywebserver_pool_active_threads gauge\n");
+			text.append("mywebserver_pool_active_threads ").append(getPoolActiveThreads()).append('\n');
+		}
+		return text.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return String.format(Locale.ROOT, "Metrics: %d requests, %d errors, %d bytes sent, mean read %.1f us, process %.1f us, "
+				+"serialize %.1f us, write %.1f us", getRequestCount(), getErrorCount(), getBytesSent(),
+				getReadMeanMicros(), getProcessMeanMicros(), getSerializeMeanMicros(), getWriteMeanMicros());
+	}
+
+	/**
+	 * The Class PhaseHistogram counts the durations of a phase in buckets whose upper bounds are the powers of
+	 * two of microseconds, from 1 us to about 17 s, and one bucket for the longer ones.
+	 */
+	static class PhaseHistogram {
+
+		//Number of buckets with an upper bound
+		private static final int BOUNDED_BUCKET_COUNT = 25;
+
+		//Counters of the buckets, the last one for the durations above all bounds
+		private final LongAdder[] buckets = new LongAdder[BOUNDED_BUCKET_COUNT+1];
+
+		//Sum of the durations in nanoseconds
+		private final LongAdder sum = new LongAdder();
+
+		/**
+		 * Instantiates a new phase histogram.
+		 */
+		PhaseHistogram(){
+			for(int i=0; i<buckets.length; i++){
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Records a duration.
+		 *
+		 * @param nanos the duration in nanoseconds
+		 */
+		void record(long nanos){
+			//The duration in microseconds rounded up, which is at most 2^index exactly when the
+			//duration in nanoseconds is at most 2^index*1000, so a duration never lands in a bucket
+			//whose bound is below it
+			long micros = (Math.max(0, nanos) + 999) / 1000;
+
+			//The smallest bucket whose bound 2^index us is not below the duration
+			int index = micros<=1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+			buckets[Math.min(index, BOUNDED_BUCKET_COUNT)].increment();
+			sum.add(nanos);
+		}
+
+		/**
+		 * Gets the number of recorded durations.
+		 *
+		 * @return the count
+		 */
+		long getCount(){
+			long count = 0;
+			for(LongAdder bucket: buckets){
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		/**
+		 * Gets the mean of the recorded durations.
+		 *
+		 * @return the mean in microseconds, 0 if none was recorded
+		 */
+		double getMeanMicros(){
+			long count = getCount();
+			return count==0 ? 0 : sum.sum() / 1000.0 / count;
+		}
+
+		/**
+		 * Appends the histogram in the text exposition format: the cumulative count of each bucket,
+		 * the sum and the count.
+		 *
+		 * @param text the text
+		 * @param name the metric name
+		 * @param labels the labels of the histogram, eg. phase="read"
+		 */
+		void format(StringBuilder text, String name, String labels){
+			long cumulativeCount = 0;
+			for(int i=0; i<buckets.length; i++){
+				cumulativeCount += buckets[i].sum();
+				String bound = i<BOUNDED_BUCKET_COUNT ? Double.toString((1L << i) / 1e6) : "+Inf";
+				text.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+					.append(cumulativeCount).append('\n');
+			}
+			text.append(name).append("_sum{").append(labels).append("} ")
+				.append(Double.toString(sum.sum() / (double) TimeUnit.SECONDS.toNanos(1))).append('\n');
+			text.append(name).append("_count{").append(labels).append("} ").append(cumulativeCount).append('\n');
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package mywebserver;
+
+/**
+ * The Interface ServerMetricsMBean is the management interface of the server metrics, which
+ * are shown by JMX clients such as JConsole under mywebserver:type=ServerMetrics.
+ */
+public interface ServerMetricsMBean {
+
+	/**
+	 * Gets the number of requests answered.
+	 *
+	 * @return the request count
+	 */
+	long getRequestCount();
+
+	/**
+	 * Gets the number of requests answered with a 4xx or 5xx status code.
+	 *
+	 * @return the error count
+	 */
+	long getErrorCount();
+
+	/**
+	 * Gets the number of bytes sent to the Clients.
+	 *
+	 * @return the bytes sent
+	 */
+	long getBytesSent();
+
+	/**
+	 * Gets the number of open client connections.
+	 *
+	 * @return the active connection count
+	 */
+	long getActiveConnections();
+
+	/**
+	 * Gets the number of tasks waiting in the queue of the thread pool.
+	 *
+	 * @return the queue depth, or -1 if the executor has no queue
+	 */
+	int getPoolQueueDepth();
+
+	/**
+	 * Gets the number of threads of the thread pool which are running a task.
+	 *
+	 * @return the active thread count, or -1 if the executor is not a thread pool
+	 */
+	int getPoolActiveThreads();
+
+	/**
+	 * Gets the mean time of reading and parsing a request.
+	 *
+	 * @return the mean time in microseconds
+	 */
+	double getReadMeanMicros();
+
+	/**
+	 * Gets the mean time of processing a request into its response, including getting the file content.
+	 *
+	 * @return the mean time in microseconds
+	 */
+	double getProcessMeanMicros();
+
+	/**
+	 * Gets the mean time of writing a response header into its buffer.
+	 *
+	 * @return the mean time in microseconds
+	 */
+	double getSerializeMeanMicros();
+
+	/**
+	 * Gets the mean time of sending a batch of responses to the Client.
+	 *
+	 * @return the mean time in microseconds
+	 */
+	double getWriteMeanMicros();
+
+	/**
+	 * Gets all metrics in the text exposition format, as served at the metrics URL.
+	 *
+	 * @return the metrics text
+	 */
+	String getMetricsText();
+}
@@ -0,0 +1,325 @@
+package mywebserver;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class TimerWheel runs tasks after a delay, with the precision of one tick. It is used for
+ * the deadlines of the client connections, which are scheduled and cancelled far more often than
+ * they fire. A timeout is put into the bucket of the wheel of the tick it expires in, and a
+ * single ticker thread advances the wheel one bucket per tick and runs the expired tasks.
+ * Scheduling and cancelling a timeout only add it to a queue, and moving it into or out of its
+ * bucket is O(1) on the ticker thread, so the cost does not grow with the number of timeouts.
+ * Delays longer than one turn of the wheel wait for the given number of rounds in their bucket.
+ */
+public class TimerWheel implements Runnable{
+
+	//Maximum number of timeouts moved into the wheel per tick, so that a tick is not delayed
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	//Duration of one tick in nanoseconds
+	private long tickDuration;
+
+	//Buckets of the wheel, one per tick of a turn
+	private Bucket[] wheel;
+
+	//Mask of the bucket index, the number of buckets is a power of two
+	private int mask;
+
+	//Timeouts which were scheduled and are not in the wheel yet
+	private Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	//Timeouts which were cancelled and are not removed from the wheel yet
+	private Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	//Time the wheel was created, the deadlines are relative to it
+	private long startTime = System.nanoTime();
+
+	//Number of ticks since the wheel was started
+	private long tick = 0;
+
+	//Thread advancing the wheel, started with the first timeout
+	private volatile Thread ticker = null;
+
+	//Check if the wheel has to stop
+	private volatile boolean stopped = false;
+
+	/**
+	 * Instantiates a new TimerWheel.
+	 *
+	 * @param tickMillis the duration of one tick in milliseconds
+	 * @param wheelSize the number of buckets, rounded up to a power of two
+	 */
+	public TimerWheel(long tickMillis, int wheelSize){
+		if(tickMillis<=0 || wheelSize<=0)
+			throw new IllegalArgumentException("Invalid timer wheel: tick "+tickMillis+" ms, "+wheelSize+" buckets");
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		int bucketCount = Integer.highestOneBit(wheelSize);
+		if(bucketCount<wheelSize)
+			bucketCount <<= 1;
+		this.wheel = new Bucket[bucketCount];
+		for(int i=0; i<bucketCount; i++){
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = bucketCount - 1;
+	}
+
+	/**
+	 * Schedules the task to run on the ticker thread after the delay. The task must be short,
+	 * as all expired tasks run one after the other.
+	 *
+	 * @param task the task
+	 * @param delayMillis the delay in milliseconds
+	 * @return the timeout, which can be cancelled
+	 */
+	public Timeout schedule(Runnable task, long delayMillis){
+		start();
+		Timeout timeout = new Timeout(task, System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Starts the ticker thread, if it is not running yet.
+	 */
+	private void start(){
+		if(ticker!=null)
+			return;
+		synchronized(this){
+			if(ticker!=null)
+				return;
+			Thread thread = new Thread(this, "timer-wheel");
+			thread.setDaemon(true);
+			thread.start();
+			ticker = thread;
+		}
+	}
+
+	/**
+	 * Stops the ticker thread. The timeouts which did not expire yet are not run.
+	 */
+	public void stop(){
+		stopped = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run(){
+		while(!stopped){
+			waitForNextTick();
+			removeCancelledTimeouts();
+			transferPendingTimeouts();
+			wheel[(int) (tick & mask)].expireTimeouts();
+			tick++;
+		}
+	}
+
+	/**
+	 * Sleeps until the end of the current tick.
+	 */
+	private void waitForNextTick(){
+		long deadline = tickDuration * (tick + 1);
+		while(true){
+			long sleepTime = deadline - (System.nanoTime() - startTime);
+			if(sleepTime<=0)
+				return;
+			try{
+				TimeUnit.NANOSECONDS.sleep(sleepTime);
+			}
+			catch(InterruptedException e){
+				if(stopped)
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Moves the scheduled timeouts into the buckets of the ticks they expire in.
+	 */
+	private void transferPendingTimeouts(){
+		for(int i=0; i<MAX_TRANSFERS_PER_TICK; i++){
+			Timeout timeout = pendingTimeouts.poll();
+			if(timeout==null)
+				return;
+			if(timeout.isCancelled())
+				continue;
+			long expiryTick = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+
+			//A timeout whose tick has passed expires with the current tick
+			wheel[(int) (Math.max(expiryTick, tick) & mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * Removes the cancelled timeouts from their buckets.
+	 */
+	private void removeCancelledTimeouts(){
+		Timeout timeout;
+		while((timeout = cancelledTimeouts.poll())!=null){
+			if(timeout.bucket!=null)
+				timeout.bucket.remove(timeout);
+		}
+	}
+
+	/**
+	 * The Class Timeout is a task scheduled on the TimerWheel.
+	 */
+	public class Timeout{
+
+		//The timeout is waiting to expire
+		private static final int WAITING = 0;
+
+		//The timeout was cancelled
+		private static final int CANCELLED = 1;
+
+		//The timeout expired and its task was run
+		private static final int EXPIRED = 2;
+
+		//Task run when the timeout expires
+		private Runnable task;
+
+		//Time the timeout expires, relative to the start time of the wheel
+		private long deadline;
+
+		//Number of turns of the wheel left before the timeout expires
+		private long remainingRounds;
+
+		//State of the timeout
+		private AtomicInteger state = new AtomicInteger(WAITING);
+
+		//Bucket holding the timeout, and its neighbours in the bucket
+		private Bucket bucket;
+		private Timeout next;
+		private Timeout previous;
+
+		/**
+		 * Instantiates a new timeout.
+		 *
+		 * @param task the task
+		 * @param deadline the deadline, relative to the start time of the wheel
+		 */
+		Timeout(Runnable task, long deadline){
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timeout, so that its task is not run.
+		 *
+		 * @return true, if the timeout was cancelled before it expired
+		 */
+		public boolean cancel(){
+			if(!state.compareAndSet(WAITING, CANCELLED))
+				return false;
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		/**
+		 * Checks if the timeout was cancelled.
+		 *
+		 * @return true, if the timeout was cancelled
+		 */
+		public boolean isCancelled(){
+			return state.get()==CANCELLED;
+		}
+
+		/**
+		 * Checks if the timeout expired.
+		 *
+		 * @return true, if the task of the timeout was run
+		 */
+		public boolean isExpired(){
+			return state.get()==EXPIRED;
+		}
+
+		/**
+		 * Runs the task, unless the timeout was cancelled.
+		 */
+		void expire(){
+			if(!state.compareAndSet(WAITING, EXPIRED))
+				return;
+			try{
+				task.run();
+			}
+			catch(RuntimeException e){
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * The Class Bucket is the doubly linked list of the timeouts of one tick of the wheel.
+	 * It is only accessed by the ticker thread.
+	 */
+	private class Bucket{
+
+		//First and last timeout of the bucket
+		private Timeout head;
+		private Timeout tail;
+
+		/**
+		 * Adds the timeout to the bucket.
+		 *
+		 * @param timeout the timeout
+		 */
+		void add(Timeout timeout){
+			timeout.bucket = this;
+			if(head==null){
+				head = tail = timeout;
+				return;
+			}
+			tail.next = timeout;
+			timeout.previous = tail;
+			tail = timeout;
+		}
+
+		/**
+		 * Removes the timeout from the bucket.
+		 *
+		 * @param timeout the timeout
+		 * @return the timeout which followed the removed one
+		 */
+		Timeout remove(Timeout timeout){
+			Timeout next = timeout.next;
+			if(timeout.previous!=null)
+				timeout.previous.next = next;
+			if(next!=null)
+				next.previous = timeout.previous;
+			if(timeout==head)
+				head = next;
+			if(timeout==tail)
+				tail = timeout.previous;
+			timeout.bucket = null;
+			timeout.next = null;
+			timeout.previous = null;
+			return next;
+		}
+
+		/**
+		 * Runs the timeouts of the bucket which expire in the current turn of the wheel, and
+		 * counts down the rounds of the others.
+		 */
+		void expireTimeouts(){
+			Timeout timeout = head;
+			while(timeout!=null){
+				if(timeout.isCancelled()){
+					timeout = remove(timeout);
+				}
+				else if(timeout.remainingRounds<=0){
+					Timeout next = remove(timeout);
+					timeout.expire();
+					timeout = next;
+				}
+				else{
+					timeout.remainingRounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package mywebserver;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class WarmupIndex is the immutable index of the files of the server directory, built at
+ * startup before client connections are accepted. It maps the path of each file in the server
+ * directory, eg. /subDir/index.html, which is the normalized path it is requested with, to the
+ * metadata of the file, with its header values already rendered.
+ * The directories are walked in parallel, one fork-join task per directory.
+ */
+public final class WarmupIndex {
+
+	//Metadata of the files by the path they are requested with
+	private final Map<String, FileMetadataCache.FileMetadata> files;
+
+	//Number of directories walked
+	private final int directoryCount;
+
+	/**
+	 * Instantiates a new WarmupIndex.
+	 *
+	 * @param files the metadata of the files by request path
+	 * @param directoryCount the number of directories walked
+	 */
+	private WarmupIndex(Map<String, FileMetadataCache.FileMetadata> files, int directoryCount) {
+		this.files = Collections.unmodifiableMap(files);
+		this.directoryCount = directoryCount;
+	}
+
+	/**
+	 * Builds the index of the files of a directory and all directories below it.
+	 *
+	 * @param root the server directory
+	 * @param metadataCache the cache which looks up the files
+	 * @param forkJoinPool the pool walking the directories
+	 * @return the index
+	 */
+	public static WarmupIndex build(Path root, FileMetadataCache metadataCache, ForkJoinPool forkJoinPool) {
+		Map<String, FileMetadataCache.FileMetadata> files = new ConcurrentHashMap<String, FileMetadataCache.FileMetadata>();
+		AtomicInteger directoryCount = new AtomicInteger();
+		forkJoinPool.invoke(new DirectoryScan(root, "/", metadataCache, files, directoryCount));
+		return new WarmupIndex(new HashMap<String, FileMetadataCache.FileMetadata>(files), directoryCount.get());
+	}
+
+	/**
+	 * Gets the metadata of the files by the path they are requested with.
+	 *
+	 * @return the unmodifiable map of the files
+	 */
+	public Map<String, FileMetadataCache.FileMetadata> getFiles() {
+		return files;
+	}
+
+	/**
+	 * Gets the number of files.
+	 *
+	 * @return the file count
+	 */
+	public int getFileCount() {
+		return files.size();
+	}
+
+	/**
+	 * Gets the number of directories walked.
+	 *
+	 * @return the directory count
+	 */
+	public int getDirectoryCount() {
+		return directoryCount;
+	}
+
+	/**
+	 * The Class DirectoryScan looks up the files of one directory, and forks a scan for each
+	 * directory in it.
+	 */
+	private static class DirectoryScan extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		//The directory
+		private final Path directory;
+
+		//The path the directory is requested with, ending with /
+		private final String requestPath;
+
+		//Cache which looks up the files
+		private final FileMetadataCache metadataCache;
+
+		//Metadata of the files found so far
+		private final Map<String, FileMetadataCache.FileMetadata> files;
+
+		//Number of directories walked so far
+		private final AtomicInteger directoryCount;
+
+		/**
+		 * Instantiates a new directory scan.
+		 *
+		 * @param directory the directory
+		 * @param requestPath the path the directory is requested with
+		 * @param metadataCache the cache which looks up the files
+		 * @param files the metadata of the files found so far
+		 * @param directoryCount the number of directories walked so far
+		 */
+		DirectoryScan(Path directory, String requestPath, FileMetadataCache metadataCache,
+				Map<String, FileMetadataCache.FileMetadata> files, AtomicInteger directoryCount) {
+			this.directory = directory;
+			this.requestPath = requestPath;
+			this.metadataCache = metadataCache;
+			this.files = files;
+			this.directoryCount = directoryCount;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			directoryCount.incrementAndGet();
+			List<DirectoryScan> subdirectoryScans = new ArrayList<DirectoryScan>();
+			try{
+				DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+				try{
+					for(Path entry: entries){
+						String entryPath = requestPath + entry.getFileName();
+						if(Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)){
+							subdirectoryScans.add(new DirectoryScan(entry, entryPath+"/", metadataCache, files,
+									directoryCount));
+							continue;
+						}
+						FileMetadataCache.FileMetadata metadata = metadataCache.lookUp(entry.toFile(), entryPath);
+						if(metadata.exists)
+							files.put(entryPath, metadata);
+					}
+				}
+				finally{
+					entries.close();
+				}
+			}
+			catch(IOException e){
+				//A directory which cannot be read is left out
+				System.out.println(e.getMessage());
+			}
+			invokeAll(subdirectoryScans);
+		}
+	}
+}